@@ -0,0 +1,206 @@
+package kx;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Deserialiser of a compressed message. The message is decompressed incrementally from the
+ * source as the decoder advances; the whole decompressed message including 8 bytes of the header is kept,
+ * as the compression refers back to any earlier position.
+ * Messages which decompress to more than spillThreshold bytes, or which don't fit in an array, are decompressed
+ * into a memory-mapped temporary file instead of the heap. The file is mapped in chunks of 1 GB; each mapping
+ * also covers the start of the next chunk, so that b can be a single mapping for values across the chunk border.
+ */
+class CompressedDeserialiser extends Deserialiser {
+    private final static int CHUNK = 64 * 1024;
+    private final static int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    private final Deserialiser in;
+    private final long length;
+    private final byte[] dst;
+    private final int chunkShift;
+    private final long chunkMask;
+    private ByteBuffer[] chunks;
+    private File spillFile;
+    // the position in the message of the start of b, and the chunk which b maps or -1 for a copy of the bytes
+    private long base = 0;
+    private int window = -1;
+    private final long[] aa = new long[256];
+    private long s = 8, p = 8;
+    private int f = 0, i = 0;
+
+    CompressedDeserialiser(Deserialiser in, String encoding) throws IOException {
+        this(in, encoding, 0);
+    }
+
+    CompressedDeserialiser(Deserialiser in, String encoding, long spillThreshold) throws IOException {
+        this(in, encoding, spillThreshold, 30, 1 << 20);
+    }
+
+    // chunks of the file are 1 << chunkShift bytes and each mapping covers overlap bytes of the next one
+    CompressedDeserialiser(Deserialiser in, String encoding, long spillThreshold, int chunkShift, int overlap) throws IOException {
+        super(encoding);
+        this.in = in;
+        this.chunkShift = chunkShift;
+        chunkMask = (1L << chunkShift) - 1;
+        a = in.a;
+        // the uncompressed size is an unsigned 32-bit field
+        length = in.ri() & 0xffffffffL;
+        if (length < 8) throw new IOException("Invalid size of compressed message: " + length);
+        if (spillThreshold > 0 && length > spillThreshold || length > MAX_ARRAY) {
+            dst = null;
+            spillFile = File.createTempFile("studio", ".kipc");
+            try (RandomAccessFile file = new RandomAccessFile(spillFile, "rw")) {
+                FileChannel channel = file.getChannel();
+                chunks = new ByteBuffer[(int) ((length + chunkMask) >>> chunkShift)];
+                for (int k = 0; k < chunks.length; k++) {
+                    long start = (long) k << chunkShift;
+                    long end = Math.min(length, start + chunkMask + 1 + overlap);
+                    chunks[k] = channel.map(FileChannel.MapMode.READ_WRITE, start, end - start);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+            b = chunks[0].duplicate();
+            window = 0;
+        } else {
+            dst = new byte[(int) length];
+            b = ByteBuffer.wrap(dst);
+        }
+        b.order(order(a));
+        b.position(8).limit(8);
+    }
+
+    @Override
+    int window() {
+        if (dst != null) return b.capacity() - b.position();
+        long position = base + b.position();
+        int k = Math.min(chunks.length - 1, (int) (position >>> chunkShift));
+        return (int) (((long) k << chunkShift) + chunks[k].capacity() - position);
+    }
+
+    @Override
+    void fill(int n) throws IOException {
+        if (b.remaining() >= n) return;
+        long position = base + b.position();
+        if (position + n > length) throw new EOFException("Unexpected end of message");
+        long target = Math.min(length, Math.max(position + n, base + b.limit() + CHUNK));
+        if (dst != null) {
+            u(dst, (int) target);
+            b.limit((int) s);
+            return;
+        }
+
+        u(target);
+        int k = (int) (position >>> chunkShift);
+        long start = (long) k << chunkShift;
+        if (position + n <= start + chunks[k].capacity()) {
+            if (window != k) {
+                b = chunks[k].duplicate().order(order(a));
+                base = start;
+                window = k;
+                b.position((int) (position - start));
+            }
+            b.limit((int) Math.min(b.capacity(), s - base));
+        } else {
+            // a value longer than the overlap of the chunks is copied
+            byte[] bytes = new byte[n];
+            for (int j = 0; j < n; j++) {
+                bytes[j] = get(position + j);
+            }
+            b = ByteBuffer.wrap(bytes).order(order(a));
+            base = position;
+            window = -1;
+        }
+    }
+
+    @Override
+    void close() {
+        if (spillFile == null) return;
+        b = null;
+        chunks = null;
+        // on some platforms the file can't be deleted until the mapping is garbage collected;
+        // deleteOnExit() takes care of it then
+        if (!spillFile.delete()) spillFile.deleteOnExit();
+        spillFile = null;
+    }
+
+    private void u(byte[] dst, int target) throws IOException {
+        int s = (int) this.s, p = (int) this.p;
+        while (s < target) {
+            if (i == 0) {
+                f = 0xff & (int) in.rx();
+                i = 1;
+            }
+            int n = 0;
+            if ((f & i) != 0) {
+                int r = (int) aa[0xff & (int) in.rx()];
+                dst[s++] = dst[r++];
+                dst[s++] = dst[r++];
+                n = 0xff & (int) in.rx();
+                for (int m = 0; m < n; m++) {
+                    dst[s + m] = dst[r + m];
+                }
+            } else {
+                dst[s++] = in.rx();
+            }
+            while (p < s - 1) {
+                aa[(0xff & (int) dst[p]) ^ (0xff & (int) dst[p + 1])] = p++;
+            }
+            if ((f & i) != 0) {
+                p = s += n;
+            }
+            i *= 2;
+            if (i == 256) {
+                i = 0;
+            }
+        }
+        this.s = s;
+        this.p = p;
+    }
+
+    private byte get(long index) {
+        return chunks[(int) (index >>> chunkShift)].get((int) (index & chunkMask));
+    }
+
+    private void put(long index, byte value) {
+        chunks[(int) (index >>> chunkShift)].put((int) (index & chunkMask), value);
+    }
+
+    // the same as above for the chunks of the file
+    private void u(long target) throws IOException {
+        while (s < target) {
+            if (i == 0) {
+                f = 0xff & (int) in.rx();
+                i = 1;
+            }
+            int n = 0;
+            if ((f & i) != 0) {
+                long r = aa[0xff & (int) in.rx()];
+                put(s++, get(r++));
+                put(s++, get(r++));
+                n = 0xff & (int) in.rx();
+                for (int m = 0; m < n; m++) {
+                    put(s + m, get(r + m));
+                }
+            } else {
+                put(s++, in.rx());
+            }
+            while (p < s - 1) {
+                aa[(0xff & (int) get(p)) ^ (0xff & (int) get(p + 1))] = p++;
+            }
+            if ((f & i) != 0) {
+                p = s += n;
+            }
+            i *= 2;
+            if (i == 256) {
+                i = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package kx;
+
+import java.util.Arrays;
+
+/**
+ * Compresses IPC messages with the kdb+ algorithm; the counterpart of CompressedDeserialiser.
+ * Both sides keep a table of the last position of every 2-byte hash. The table has to be
+ * updated in exactly the same way as the decompressor does it.
+ */
+class Compressor {
+
+    // messages below this size are sent as is; the same limit is used by kdb+
+    final static int THRESHOLD = 2000;
+
+    // msg is a big-endian message including 8 bytes of the header.
+    // Returns null if the compressed message would not be at least twice as short
+    static byte[] compress(byte[] msg, int length) {
+        byte[] out = new byte[length / 2];
+        if (out.length < 12) return null;
+        int[] aa = new int[256];
+
+        System.arraycopy(msg, 0, out, 0, 4);
+        out[2] = 1;
+        putInt(out, 8, length);
+
+        int c = 12; // position of the current flag byte
+        int d = 12; // position in the output
+        int f = 0, i = 0;
+        int last = 0, lastHash = 0; // the last literal; it is hashed once the next byte is known
+        for (int s = 8; s < length; i = (i * 2) & 0xff) {
+            if (i == 0) {
+                // a group of 8 items takes up to 17 bytes
+                if (d > out.length - 17) return null;
+                out[c] = (byte) f;
+                c = d++;
+                f = 0;
+                i = 1;
+            }
+            int h = 0, p = 0;
+            boolean literal = s > length - 3;
+            if (!literal) {
+                h = 0xff & (msg[s] ^ msg[s + 1]);
+                p = aa[h];
+                literal = p == 0 || msg[s] != msg[p];
+            }
+            if (last > 0) {
+                aa[lastHash] = last;
+                last = 0;
+            }
+            if (literal) {
+                lastHash = h;
+                last = s;
+                out[d++] = msg[s++];
+            } else {
+                aa[h] = s;
+                f |= i;
+                p += 2;
+                s += 2;
+                int r = s, q = Math.min(s + 255, length);
+                while (s < q && msg[p] == msg[s]) {
+                    p++;
+                    s++;
+                }
+                out[d++] = (byte) h;
+                out[d++] = (byte) (s - r);
+            }
+        }
+        out[c] = (byte) f;
+        putInt(out, 4, d);
+        return Arrays.copyOf(out, d);
+    }
+
+    private static void putInt(byte[] b, int off, int i) {
+        b[off] = (byte) (i >> 24);
+        b[off + 1] = (byte) (i >> 16);
+        b[off + 2] = (byte) (i >> 8);
+        b[off + 3] = (byte) i;
+    }
+}
@@ -0,0 +1,844 @@
+package kx;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import studio.kdb.K;
+import studio.kdb.LazyColumns;
+import studio.kdb.OffHeapArray;
+
+/**
+ * Builds K objects from the body of an IPC message. Bytes are consumed from the window b
+ * (from the position up to the limit) which subclasses refill on demand, so that objects can be decoded
+ * while the rest of the message is still arriving. Vectors of primitives are copied in bulk
+ * through view buffers in the byte order of the message.
+ */
+class Deserialiser {
+    ByteBuffer b;
+    boolean a;
+    private final String encoding;
+    // symbol vectors are dictionary-encoded if set
+    SymbolInterner symbols = null;
+    // vectors of fixed-width values larger than that are kept off-heap; 0 disables it
+    long offHeapThreshold = 0;
+    // columns of tables with at least that many columns are decoded on first access; 0 disables it
+    int lazyColumnThreshold = 0;
+    // columns of tables with at least that many rows are decoded in parallel; 0 disables it
+    int parallelRowThreshold = 0;
+
+    // columns of a table are decoded right away once that many bytes of it were copied
+    int maxRawSize = 1 << 30;
+    final static int PARALLEL_ROWS = 1 << 16;
+    // bytes copied by skim()
+    private byte[] raw;
+    private int rawSize;
+
+    Deserialiser(String encoding) {
+        this.encoding = encoding;
+    }
+
+    Deserialiser(ByteBuffer b, boolean a, String encoding) {
+        this(encoding);
+        this.b = b.order(order(a));
+        this.a = a;
+    }
+
+    static ByteOrder order(boolean a) {
+        return a ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    }
+
+    // makes sure that at least n bytes are available from the position of b
+    void fill(int n) throws IOException {
+        if (b.remaining() < n) throw new EOFException("Unexpected end of message");
+    }
+
+    // releases resources held by the deserialiser, if any
+    void close() {
+    }
+
+    // the largest number of bytes which fill() can make available at once
+    int window() {
+        return b.remaining();
+    }
+
+    // the number of bytes to request for a bulk read: as much as needed, but not more than the window
+    private int bulk(int count, int size) {
+        return (int) Math.max(size, Math.min((long)count * size, window()));
+    }
+
+    K.KBase readResponse() throws c.K4Exception, IOException {
+        fill(1);
+        if (b.get(b.position()) == -128) {
+            b.get();
+            //showType=false because an error is NOT a symbol, this would cause confusion with novice users who can't tell the difference
+            throw new c.K4Exception(rs().toString(false));
+        }
+        return r();
+    }
+
+    byte rx() throws IOException {
+        fill(1);
+        return b.get();
+    }
+
+    boolean rb() throws IOException {
+        return 1 == rx();
+    }
+
+    short rh() throws IOException {
+        fill(2);
+        return b.getShort();
+    }
+
+    int ri() throws IOException {
+        fill(4);
+        return b.getInt();
+    }
+
+    long rj() throws IOException {
+        fill(8);
+        return b.getLong();
+    }
+
+    float re() throws IOException {
+        fill(4);
+        return b.getFloat();
+    }
+
+    double rf() throws IOException {
+        fill(8);
+        return b.getDouble();
+    }
+
+    UUID rg() throws IOException {
+        long hi = rj(), lo = rj();
+        return a ? new UUID(Long.reverseBytes(hi), Long.reverseBytes(lo)) : new UUID(hi, lo);
+    }
+
+    char rc() throws IOException {
+        return (char) (rx() & 0xff);
+    }
+
+    void rbytes(byte[] dst) throws IOException {
+        for (int off = 0; off < dst.length; ) {
+            fill(bulk(dst.length - off, 1));
+            int count = Math.min(b.remaining(), dst.length - off);
+            b.get(dst, off, count);
+            off += count;
+        }
+    }
+
+    void rbytes(ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            fill(bulk(dst.remaining(), 1));
+            int count = Math.min(b.remaining(), dst.remaining());
+            ByteBuffer src = b.duplicate();
+            src.limit(src.position() + count);
+            dst.put(src);
+            b.position(b.position() + count);
+        }
+    }
+
+    void rshorts(short[] dst) throws IOException {
+        for (int off = 0; off < dst.length; ) {
+            fill(bulk(dst.length - off, 2));
+            int count = Math.min(b.remaining() / 2, dst.length - off);
+            b.asShortBuffer().get(dst, off, count);
+            b.position(b.position() + 2 * count);
+            off += count;
+        }
+    }
+
+    void rints(int[] dst) throws IOException {
+        for (int off = 0; off < dst.length; ) {
+            fill(bulk(dst.length - off, 4));
+            int count = Math.min(b.remaining() / 4, dst.length - off);
+            b.asIntBuffer().get(dst, off, count);
+            b.position(b.position() + 4 * count);
+            off += count;
+        }
+    }
+
+    void rlongs(long[] dst) throws IOException {
+        for (int off = 0; off < dst.length; ) {
+            fill(bulk(dst.length - off, 8));
+            int count = Math.min(b.remaining() / 8, dst.length - off);
+            b.asLongBuffer().get(dst, off, count);
+            b.position(b.position() + 8 * count);
+            off += count;
+        }
+    }
+
+    void rfloats(float[] dst) throws IOException {
+        for (int off = 0; off < dst.length; ) {
+            fill(bulk(dst.length - off, 4));
+            int count = Math.min(b.remaining() / 4, dst.length - off);
+            b.asFloatBuffer().get(dst, off, count);
+            b.position(b.position() + 4 * count);
+            off += count;
+        }
+    }
+
+    void rdoubles(double[] dst) throws IOException {
+        for (int off = 0; off < dst.length; ) {
+            fill(bulk(dst.length - off, 8));
+            int count = Math.min(b.remaining() / 8, dst.length - off);
+            b.asDoubleBuffer().get(dst, off, count);
+            b.position(b.position() + 8 * count);
+            off += count;
+        }
+    }
+
+    private String rstring(int n) throws IOException {
+        fill(n);
+        String s;
+        if (b.hasArray()) {
+            s = new String(b.array(), b.arrayOffset() + b.position(), n, encoding);
+            b.position(b.position() + n);
+        } else {
+            byte[] bytes = new byte[n];
+            b.get(bytes);
+            s = new String(bytes, encoding);
+        }
+        return s;
+    }
+
+    K.KSymbol rs() throws IOException {
+        int n = 0;
+        for (; ; n++) {
+            fill(n + 1);
+            if (b.get(b.position() + n) == 0) break;
+        }
+        String s = rstring(n);
+        b.get();
+        return new K.KSymbol(s);
+    }
+
+    private K.KSymbolVector rsymbols(int count) throws IOException {
+        int[] codes = new int[count];
+        symbols.startVector();
+        for (int i = 0; i < count; i++) {
+            int n = 0;
+            for (; ; n++) {
+                fill(n + 1);
+                if (b.get(b.position() + n) == 0) break;
+            }
+            codes[i] = symbols.code(b, b.position(), n);
+            b.position(b.position() + n + 1);
+        }
+        return new K.KSymbolVector(codes, symbols.endVector());
+    }
+
+    K.UnaryPrimitive rup() throws IOException {
+        return new K.UnaryPrimitive(rx());
+    }
+
+    K.BinaryPrimitive rbp() throws IOException {
+        return new K.BinaryPrimitive(rx());
+    }
+
+    K.TernaryOperator rternary() throws IOException {
+        return new K.TernaryOperator(rx());
+    }
+
+    K.Function rfn() throws IOException {
+        K.KSymbol s = rs();
+        return new K.Function((K.KCharacterVector) r());
+    }
+
+    K.Feach rfeach() throws IOException {
+        return new K.Feach(r());
+    }
+
+    K.Fover rfover() throws IOException {
+        return new K.Fover(r());
+    }
+
+    K.Fscan rfscan() throws IOException {
+        return new K.Fscan(r());
+    }
+
+    K.FComposition rcomposition() throws IOException {
+        int n = ri();
+        K.KBase[] objs = new K.KBase[n];
+        for (int i = 0; i < n; i++)
+            objs[i] = r();
+
+        return new K.FComposition(objs);
+    }
+
+    K.FPrior rfPrior() throws IOException {
+        return new K.FPrior(r());
+    }
+
+    K.FEachRight rfEachRight() throws IOException {
+        return new K.FEachRight(r());
+    }
+
+    K.FEachLeft rfEachLeft() throws IOException {
+        return new K.FEachLeft(r());
+    }
+
+    K.Projection rproj() throws IOException {
+        int n = ri();
+        K.KBase[] array = new K.KBase[n];
+        for (int i = 0; i < n; i++)
+            array[i] = r();
+        return new K.Projection(array);
+    }
+
+    K.Minute ru() throws IOException {
+        return new K.Minute(ri());
+    }
+
+    K.Month rm() throws IOException {
+        return new K.Month(ri());
+    }
+
+    K.Second rv() throws IOException {
+        return new K.Second(ri());
+    }
+
+    K.KTimespan rn() throws IOException {
+        return new K.KTimespan(rj());
+    }
+
+    K.KTime rt() throws IOException {
+        return new K.KTime(ri());
+    }
+
+    K.KDate rd() throws IOException {
+        return new K.KDate(ri());
+    }
+
+    K.KDatetime rz() throws IOException {
+        return new K.KDatetime(rf());
+    }
+
+    K.KTimestamp rp() throws IOException {
+        return new K.KTimestamp(rj());
+    }
+
+    K.KBase r() throws IOException {
+        int i = 0, n, t = rx();
+        if (t < 0)
+            switch (t) {
+                case -1:
+                    return new K.KBoolean(rb());
+                case -2:
+                    return new K.KGuid(rg());
+                case -4:
+                    return new K.KByte(rx());
+                case -5:
+                    return new K.KShort(rh());
+                case -6:
+                    return new K.KInteger(ri());
+                case -7:
+                    return new K.KLong(rj());
+                case -8:
+                    return new K.KFloat(re());
+                case -9:
+                    return new K.KDouble(rf());
+                case -10:
+                    return new K.KCharacter(rc());
+                case -11:
+                    return rs();
+                case -12:
+                    return rp();
+                case -13:
+                    return rm();
+                case -14:
+                    return rd();
+                case -15:
+                    return rz();
+                case -16:
+                    return rn();
+                case -17:
+                    return ru();
+                case -18:
+                    return rv();
+                case -19:
+                    return rt();
+            }
+
+        if (t == 100)
+            return rfn(); // fn - lambda
+        if (t == 101)
+            return rup();  // unary primitive
+        if (t == 102)
+            return rbp();  // binary primitive
+        if (t == 103)
+            return rternary();
+        if (t == 104)
+            return rproj(); // fn projection
+        if (t == 105)
+            return rcomposition();
+
+        if (t == 106)
+            return rfeach(); // f'
+        if (t == 107)
+            return rfover(); // f/
+        if (t == 108)
+            return rfscan(); //f\
+        if (t == 109)
+            return rfPrior(); // f':
+        if (t == 110)
+            return rfEachRight(); // f/:
+        if (t == 111)
+            return rfEachLeft(); // f\:
+        if (t == 112) {
+            // dynamic load
+            rx();
+            return null;
+        }
+        if (t == 127) {
+            K.Dict d = new K.Dict(r(), r());
+            d.setAttr((byte) 1);
+            return d;
+        }
+        if (t > 99) {
+            rx();
+            return null;
+        }
+        if (t == 99)
+            return new K.Dict(r(), r());
+        byte attr = rx();
+        if (t == 98) {
+            if (lazyColumnThreshold > 0 || parallelRowThreshold > 0) return rtable();
+            return table((K.Dict) r());
+        }
+        n = ri();
+        if (n < 0) throw new IOException("Vector with more than " + Integer.MAX_VALUE + " elements is not supported");
+        int width = width(t);
+        if (offHeapThreshold > 0 && width > 0 && (long) n * width > offHeapThreshold) {
+            K.KBaseVector<? extends K.KBase> vector = roffheap(t, n);
+            vector.setAttr(attr);
+            return vector;
+        }
+        switch (t) {
+            case 0: {
+                K.KBase[] array = new K.KBase[n];
+                for (; i < n; i++)
+                    array[i] = r();
+                K.KList L = new K.KList(array);
+                L.setAttr(attr);
+                return L;
+            }
+            case 1: {
+                byte[] bytes = new byte[n];
+                rbytes(bytes);
+                long[] bits = new long[(n + 63) / 64];
+                for (; i < n; i++)
+                    if (bytes[i] == 1) bits[i >>> 6] |= 1L << i;
+                K.KBooleanVector B = new K.KBooleanVector(bits, n);
+                B.setAttr(attr);
+                return B;
+            }
+            case 2: {
+                long[] bits = new long[2 * n];
+                rlongs(bits);
+                // guids are big endian whichever the byte order of the message
+                if (a) {
+                    for (i = 0; i < bits.length; i++)
+                        bits[i] = Long.reverseBytes(bits[i]);
+                }
+                K.KGuidVector B = new K.KGuidVector(bits);
+                B.setAttr(attr);
+                return B;
+            }
+            case 4: {
+                byte[] array = new byte[n];
+                rbytes(array);
+                K.KByteVector G = new K.KByteVector(array);
+                G.setAttr(attr);
+                return G;
+            }
+            case 5: {
+                short[] array = new short[n];
+                rshorts(array);
+                K.KShortVector H = new K.KShortVector(array);
+                H.setAttr(attr);
+                return H;
+            }
+            case 6: {
+                int[] array = new int[n];
+                rints(array);
+                K.KIntVector I = new K.KIntVector(array);
+                I.setAttr(attr);
+                return I;
+            }
+            case 7: {
+                long[] array = new long[n];
+                rlongs(array);
+                K.KLongVector J = new K.KLongVector(array);
+                J.setAttr(attr);
+                return J;
+            }
+            case 8: {
+                float[] array = new float[n];
+                rfloats(array);
+                K.KFloatVector E = new K.KFloatVector(array);
+                E.setAttr(attr);
+                return E;
+            }
+            case 9: {
+                double[] array = new double[n];
+                rdoubles(array);
+                K.KDoubleVector F = new K.KDoubleVector(array);
+                F.setAttr(attr);
+                return F;
+            }
+            case 10: {
+                K.KCharacterVector C = new K.KCharacterVector(rstring(n));
+                C.setAttr(attr);
+                return C;
+            }
+            case 11: {
+                if (symbols != null) {
+                    K.KSymbolVector S = rsymbols(n);
+                    S.setAttr(attr);
+                    return S;
+                }
+                String[] array = new String[n];
+                for (; i < n; i++)
+                    array[i] = rs().s;
+                K.KSymbolVector S = new K.KSymbolVector(array);
+                S.setAttr(attr);
+                return S;
+            }
+            case 12: {
+                long[] array = new long[n];
+                rlongs(array);
+                K.KTimestampVector P = new K.KTimestampVector(array);
+                P.setAttr(attr);
+                return P;
+            }
+            case 13: {
+                int[] array = new int[n];
+                rints(array);
+                K.KMonthVector M = new K.KMonthVector(array);
+                M.setAttr(attr);
+                return M;
+            }
+            case 14: {
+                int[] array = new int[n];
+                rints(array);
+                K.KDateVector D = new K.KDateVector(array);
+                D.setAttr(attr);
+                return D;
+            }
+            case 15: {
+                double[] array = new double[n];
+                rdoubles(array);
+                K.KDatetimeVector Z = new K.KDatetimeVector(array);
+                Z.setAttr(attr);
+                return Z;
+            }
+            case 16: {
+                long[] array = new long[n];
+                rlongs(array);
+                K.KTimespanVector N = new K.KTimespanVector(array);
+                N.setAttr(attr);
+                return N;
+            }
+            case 17: {
+                int[] array = new int[n];
+                rints(array);
+                K.KMinuteVector U = new K.KMinuteVector(array);
+                U.setAttr(attr);
+                return U;
+            }
+            case 18: {
+                int[] array = new int[n];
+                rints(array);
+                K.KSecondVector V = new K.KSecondVector(array);
+                V.setAttr(attr);
+                return V;
+            }
+            case 19: {
+                int[] array = new int[n];
+                rints(array);
+                K.KTimeVector T = new K.KTimeVector(array);
+                T.setAttr(attr);
+                return T;
+            }
+        }
+        return null;
+    }
+
+    private static K.KBase table(K.Dict d) {
+        if (d.x instanceof K.KSymbolVector && d.y instanceof K.KBaseVector) {
+            return new K.Flip((K.KSymbolVector)d.x, (K.KBaseVector<? extends K.KBase>)d.y);
+        } else {
+            return new K.MappedTable(d);
+        }
+    }
+
+    // Reads a table after its attribute. The columns of a table with at least lazyColumnThreshold columns are only
+    // copied here and decoded on first access, except for those which are kept off-heap. Symbol and list columns
+    // of a table with at least parallelRowThreshold rows are copied and then decoded concurrently.
+    private K.KBase rtable() throws IOException {
+        fill(1);
+        if (b.get(b.position()) != 99) return table((K.Dict) r());
+        rx();
+        K.KBase names = r();
+        fill(1);
+        if (!(names instanceof K.KSymbolVector) || b.get(b.position()) != 0) return table(new K.Dict(names, r()));
+        rx();
+        byte attr = rx();
+        int n = ri();
+        K.KBase[] columns = new K.KBase[n];
+        boolean lazy = lazyColumnThreshold > 0 && n >= lazyColumnThreshold;
+        boolean parallel = !lazy && parallelRowThreshold > 0 && n > 1 && peekLength() >= parallelRowThreshold;
+        if (!lazy && !parallel) {
+            for (int i = 0; i < n; i++)
+                columns[i] = r();
+            K.KList list = new K.KList(columns);
+            list.setAttr(attr);
+            return table(new K.Dict(names, list));
+        }
+
+        // a column decoded by r() may contain a table which is copied in turn
+        byte[] outerRaw = raw;
+        int outerRawSize = rawSize;
+        raw = new byte[1024];
+        rawSize = 0;
+        int[] offsets = new int[n + 1];
+        byte[] bytes;
+        try {
+            for (int i = 0; i < n; i++) {
+                offsets[i] = rawSize;
+                if (rawSize > maxRawSize || decodeInScan(lazy)) {
+                    columns[i] = r();
+                } else {
+                    skim();
+                }
+                offsets[i + 1] = rawSize;
+            }
+            bytes = rawSize == raw.length ? raw : Arrays.copyOf(raw, rawSize);
+        } finally {
+            raw = outerRaw;
+            rawSize = outerRawSize;
+        }
+
+        if (lazy) {
+            LazyColumns list = new LazyColumns(columns, bytes, offsets, columnDecoder(a, encoding, symbols != null, true));
+            list.setAttr(attr);
+            return new K.Flip((K.KSymbolVector) names, list);
+        }
+
+        LazyColumns.Decoder decoder = columnDecoder(a, encoding, symbols != null, false);
+        List<ForkJoinTask<K.KBase>> tasks = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int offset = offsets[i];
+            int length = offsets[i + 1] - offset;
+            tasks.add(columns[i] != null ? null : ForkJoinPool.commonPool().submit(() -> decoder.decode(bytes, offset, length)));
+        }
+        for (int i = 0; i < n; i++) {
+            if (tasks.get(i) == null) continue;
+            try {
+                columns[i] = tasks.get(i).get();
+            } catch (InterruptedException e) {
+                for (ForkJoinTask<K.KBase> task : tasks) {
+                    if (task != null) task.cancel(false);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while decoding columns");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw new IOException("Can't decode column " + i, e.getCause());
+            }
+        }
+        K.KList list = new K.KList(columns);
+        list.setAttr(attr);
+        return new K.Flip((K.KSymbolVector) names, list);
+    }
+
+    // the length of the next object if it is a vector, otherwise 0
+    private int peekLength() throws IOException {
+        fill(1);
+        int t = b.get(b.position());
+        if (t < 0 || t >= 20) return 0;
+        fill(6);
+        return b.getInt(b.position() + 2);
+    }
+
+    // whether the next column is decoded right away rather than copied by skim()
+    private boolean decodeInScan(boolean lazy) throws IOException {
+        fill(1);
+        int t = b.get(b.position());
+        if (t <= 0 || t >= 20 || t == 11) return false;
+        // a vector of a fixed width is copied in bulk anyway
+        if (!lazy) return true;
+        fill(6);
+        long size = (long) b.getInt(b.position() + 2) * elementWidth(t);
+        return rawSize + size > maxRawSize || offHeapThreshold > 0 && width(t) > 0 && size > offHeapThreshold;
+    }
+
+    // Decodes columns which were copied by skim(), maybe on another thread than the one of the connection.
+    // It doesn't refer to the deserialiser which may hold a large buffer. Symbols are shared by the columns
+    // if they are decoded one at a time.
+    private static LazyColumns.Decoder columnDecoder(boolean a, String encoding, boolean encodeSymbols, boolean shareSymbols) {
+        SymbolInterner shared = encodeSymbols && shareSymbols ? new SymbolInterner(encoding) : null;
+        return (buffer, offset, length) -> {
+            Deserialiser d = new Deserialiser(ByteBuffer.wrap(buffer, offset, length), a, encoding);
+            if (encodeSymbols) d.symbols = shareSymbols ? shared : new SymbolInterner(encoding);
+            return d.r();
+        };
+    }
+
+    // copies count bytes to raw
+    private void copy(long count) throws IOException {
+        if (rawSize + count > Integer.MAX_VALUE - 8) throw new IOException("Table is too large to be copied for decoding");
+        int size = (int) (rawSize + count);
+        if (size > raw.length) {
+            raw = Arrays.copyOf(raw, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(size, 2L * raw.length)));
+        }
+        if (b.remaining() >= count) {
+            b.get(raw, rawSize, (int) count);
+            rawSize = size;
+            return;
+        }
+        while (rawSize < size) {
+            fill(bulk(size - rawSize, 1));
+            int n = Math.min(b.remaining(), size - rawSize);
+            b.get(raw, rawSize, n);
+            rawSize += n;
+        }
+    }
+
+    private int rawInt() {
+        return ByteBuffer.wrap(raw, rawSize - 4, 4).order(b.order()).getInt();
+    }
+
+    private void skimSymbol() throws IOException {
+        int n = 0;
+        for (; ; n++) {
+            fill(n + 1);
+            if (b.get(b.position() + n) == 0) break;
+        }
+        copy(n + 1);
+    }
+
+    // copies the next object to raw; consumes the same bytes as r()
+    private void skim() throws IOException {
+        copy(1);
+        int t = raw[rawSize - 1];
+        if (t == -11) {
+            skimSymbol();
+            return;
+        }
+        if (t < 0 && elementWidth(-t) > 0) {
+            copy(elementWidth(-t));
+            return;
+        }
+        if (t == 100) {
+            skimSymbol();
+            skim();
+            return;
+        }
+        if (t == 104 || t == 105) {
+            copy(4);
+            int n = rawInt();
+            for (int i = 0; i < n; i++)
+                skim();
+            return;
+        }
+        if (t >= 106 && t <= 111) {
+            skim();
+            return;
+        }
+        if (t == 99 || t == 127) {
+            skim();
+            skim();
+            return;
+        }
+        if (t > 99) {
+            copy(1);
+            return;
+        }
+        if (t == 98) {
+            copy(1);
+            skim();
+            return;
+        }
+        // attribute and length
+        copy(5);
+        int n = rawInt();
+        if (n < 0) throw new IOException("Vector with more than " + Integer.MAX_VALUE + " elements is not supported");
+        if (t == 0) {
+            for (int i = 0; i < n; i++)
+                skim();
+        } else if (t == 11) {
+            for (int i = 0; i < n; i++)
+                skimSymbol();
+        } else {
+            copy((long) n * elementWidth(t));
+        }
+    }
+
+    // bytes per element of vectors and atoms of the type, 0 for types which are not of a fixed width
+    private static int elementWidth(int t) {
+        if (t == 1 || t == 10) return 1;
+        return width(t);
+    }
+
+    // bytes per element of vectors which can be kept off-heap, 0 for others
+    private static int width(int t) {
+        switch (t) {
+            case 4:
+                return 1;
+            case 5:
+                return 2;
+            case 6: case 8: case 13: case 14: case 17: case 18: case 19:
+                return 4;
+            case 7: case 9: case 12: case 15: case 16:
+                return 8;
+            case 2:
+                return 16;
+            default:
+                return 0;
+        }
+    }
+
+    private OffHeapArray roffheap(int length, int width, ByteOrder order) throws IOException {
+        OffHeapArray array = OffHeapArray.allocate(length, width, order);
+        for (int k = 0; k < array.getChunkCount(); k++) {
+            rbytes(array.getChunk(k));
+        }
+        return array;
+    }
+
+    private K.KBaseVector<? extends K.KBase> roffheap(int t, int n) throws IOException {
+        if (t == 2) {
+            // guids are big endian whichever the byte order of the message
+            return new K.KGuidVector(roffheap(2 * n, 8, ByteOrder.BIG_ENDIAN));
+        }
+        OffHeapArray array = roffheap(n, width(t), b.order());
+        switch (t) {
+            case 4: return new K.KByteVector(array);
+            case 5: return new K.KShortVector(array);
+            case 6: return new K.KIntVector(array);
+            case 7: return new K.KLongVector(array);
+            case 8: return new K.KFloatVector(array);
+            case 9: return new K.KDoubleVector(array);
+            case 12: return new K.KTimestampVector(array);
+            case 13: return new K.KMonthVector(array);
+            case 14: return new K.KDateVector(array);
+            case 15: return new K.KDatetimeVector(array);
+            case 16: return new K.KTimespanVector(array);
+            case 17: return new K.KMinuteVector(array);
+            case 18: return new K.KSecondVector(array);
+            default: return new K.KTimeVector(array);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package kx;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Delivers the async messages of a listening connection served by NioTransport. The selector thread passes whole
+ * messages; a task on a shared pool decodes them and calls the listener, one message at a time per connection,
+ * so no thread is kept per listening connection. The channel isn't read while capacity messages wait.
+ */
+class MessageDispatcher implements NioChannel.MessageSink {
+
+    private final static ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "kdb+ dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final c connection;
+    private final NioChannel channel;
+    private final MessageListener listener;
+    private final int capacity;
+
+    // guarded by this
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+    private boolean running = false;
+    private boolean ended = false;
+    private IOException endError = null;
+
+    // the failure of the listener or of decoding; accessed by the running task only
+    private Throwable error = null;
+
+    MessageDispatcher(c connection, NioChannel channel, MessageListener listener, int capacity) {
+        this.connection = connection;
+        this.channel = channel;
+        this.listener = listener;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    @Override
+    public synchronized boolean message(byte[] message) {
+        queue.add(message);
+        schedule();
+        return queue.size() < capacity;
+    }
+
+    @Override
+    public synchronized void closed(IOException error) {
+        ended = true;
+        endError = error;
+        schedule();
+    }
+
+    private void schedule() {
+        if (running) return;
+        running = true;
+        executor.execute(this::run);
+    }
+
+    private void run() {
+        while (true) {
+            byte[] message;
+            synchronized (this) {
+                message = queue.poll();
+                if (message == null) {
+                    running = false;
+                    if (!ended) return;
+                }
+            }
+            if (message == null) {
+                listener.closed(error != null ? error : endError);
+                return;
+            }
+            channel.resumeMessages();
+            // after a failure the queue is only drained
+            if (error != null) continue;
+            try {
+                listener.message(connection.decode(message));
+            } catch (Throwable e) {
+                error = e;
+                connection.close();
+            }
+        }
+    }
+}
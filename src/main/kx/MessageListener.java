@@ -0,0 +1,10 @@
+package kx;
+
+import studio.kdb.K;
+
+public interface MessageListener {
+    // called on the dispatcher thread for every async message in the order of arrival
+    void message(K.KBase message);
+    // called once after the last message; error is null if the connection was closed with c.close()
+    void closed(Throwable error);
+}
@@ -0,0 +1,314 @@
+package kx;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking streams over a non-blocking channel served by NioTransport. The selector thread reads into
+ * a buffer and stops reading while the buffer is full, so a slow reader pushes back on the server.
+ * A listening channel isn't read through the stream: the selector thread passes whole messages to a sink
+ * and stops reading while the sink is full.
+ */
+class NioChannel {
+
+    final static int BUFFER_SIZE = 256 * 1024;
+
+    interface MessageSink {
+        // a whole message including the header; false pauses reading until resumeMessages()
+        boolean message(byte[] message);
+
+        // called once after the last message; the error is null if the channel was closed with close()
+        void closed(IOException error);
+    }
+
+    private final NioTransport transport;
+    private final SocketChannel channel;
+
+    // all fields below are guarded by this
+    private SelectionKey key = null;
+    // in the fill mode; the bytes from readStart to the position aren't read yet
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private int readStart = 0;
+    private boolean readPaused = false;
+    private boolean writeWaiting = false;
+    private boolean eof = false;
+    private boolean closed = false;
+    private IOException error = null;
+    // set once the channel listens; the message which is being received and how much of it is there
+    private MessageSink sink = null;
+    private boolean sinkPaused = false;
+    private boolean sinkClosed = false;
+    private byte[] message = null;
+    private int messageFill = 0;
+
+    final InputStream in = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return NioChannel.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            synchronized (NioChannel.this) {
+                return readBuffer.position() - readStart;
+            }
+        }
+
+        @Override
+        public void close() {
+            NioChannel.this.close();
+        }
+    };
+
+    final OutputStream out = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            NioChannel.this.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            NioChannel.this.close();
+        }
+    };
+
+    NioChannel(NioTransport transport, SocketChannel channel) {
+        this.transport = transport;
+        this.channel = channel;
+    }
+
+    private int interestOps() {
+        return (readPaused || sinkPaused ? 0 : SelectionKey.OP_READ) | (writeWaiting ? SelectionKey.OP_WRITE : 0);
+    }
+
+    // called on the selector thread
+    synchronized void register(Selector selector) {
+        try {
+            key = channel.register(selector, interestOps(), this);
+        } catch (ClosedChannelException e) {
+            fail(e);
+        }
+    }
+
+    // called on the selector thread
+    private synchronized void updateInterestOps() {
+        if (key == null || !key.isValid()) return;
+        key.interestOps(interestOps());
+    }
+
+    // blocked readers and writers get the error; the channel isn't served anymore
+    synchronized void fail(IOException e) {
+        if (error == null && !closed) error = e;
+        readPaused = true;
+        writeWaiting = false;
+        if (key != null) key.cancel();
+        notifyAll();
+        closeSink(error);
+    }
+
+    private void closeSink(IOException e) {
+        if (sink == null || sinkClosed) return;
+        sinkClosed = true;
+        sink.closed(e);
+    }
+
+    // passes the messages which arrive from now on to the sink instead of the input stream
+    void listen(MessageSink sink) {
+        transport.execute(this, () -> {
+            synchronized (this) {
+                this.sink = sink;
+                if (closed) {
+                    closeSink(null);
+                } else if (error != null) {
+                    closeSink(error);
+                } else {
+                    deliver();
+                }
+            }
+        });
+    }
+
+    // the sink has room again
+    synchronized void resumeMessages() {
+        if (!sinkPaused) return;
+        sinkPaused = false;
+        transport.execute(this, () -> {
+            synchronized (this) {
+                deliver();
+            }
+        });
+    }
+
+    // copies count bytes from readStart
+    private void take(byte[] b, int off, int count) {
+        int position = readBuffer.position();
+        readBuffer.position(readStart);
+        readBuffer.get(b, off, count);
+        readBuffer.position(position);
+        readStart += count;
+        if (readStart == position) {
+            readBuffer.clear();
+            readStart = 0;
+        }
+    }
+
+    // called on the selector thread; moves the unread bytes to the start of the buffer
+    private void compact() {
+        if (readStart == 0) return;
+        readBuffer.limit(readBuffer.position()).position(readStart);
+        readBuffer.compact();
+        readStart = 0;
+    }
+
+    // called on the selector thread; passes the whole messages in the buffer to the sink
+    private void deliver() {
+        if (closed || sinkClosed) return;
+        while (!sinkPaused) {
+            int available = readBuffer.position() - readStart;
+            if (message == null) {
+                if (available < 8) break;
+                byte[] header = new byte[8];
+                take(header, 0, 8);
+                long length = 8 + c.getMsgLength(header);
+                if (length < 8 || length > Integer.MAX_VALUE - 8) {
+                    fail(new IOException("Invalid length of message: " + length));
+                    return;
+                }
+                message = new byte[(int) length];
+                System.arraycopy(header, 0, message, 0, 8);
+                messageFill = 8;
+                available -= 8;
+            }
+            int count = Math.min(available, message.length - messageFill);
+            take(message, messageFill, count);
+            messageFill += count;
+            if (messageFill < message.length) break;
+            byte[] complete = message;
+            message = null;
+            if (!sink.message(complete)) sinkPaused = true;
+        }
+        compact();
+        if (eof && !sinkPaused) {
+            closeSink(new EOFException("Connection is closed by the server"));
+        }
+        readPaused = eof || !readBuffer.hasRemaining();
+        updateInterestOps();
+    }
+
+    // called on the selector thread
+    synchronized void ready(SelectionKey key) {
+        try {
+            if (key.isReadable()) {
+                if (!readBuffer.hasRemaining()) compact();
+                int count = channel.read(readBuffer);
+                if (count < 0) {
+                    eof = true;
+                    readPaused = true;
+                } else if (!readBuffer.hasRemaining()) {
+                    readPaused = true;
+                }
+                if (sink != null) {
+                    deliver();
+                } else {
+                    notifyAll();
+                }
+            }
+            if (key.isWritable()) {
+                writeWaiting = false;
+                notifyAll();
+            }
+            key.interestOps(interestOps());
+        } catch (IOException e) {
+            fail(e);
+        } catch (CancelledKeyException e) {
+            fail(new IOException("Connection is closed"));
+        }
+    }
+
+    private void await() throws IOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (sink != null) throw new IOException("Connection is listening");
+        while (readBuffer.position() == readStart) {
+            if (closed) throw new IOException("Connection is closed");
+            if (error != null) throw error;
+            if (eof) return -1;
+            await();
+        }
+        int count = Math.min(len, readBuffer.position() - readStart);
+        take(b, off, count);
+        // the selector thread compacts the buffer once it is full
+        if (readPaused && !eof && error == null) {
+            readPaused = false;
+            transport.execute(this, this::updateInterestOps);
+        }
+        return count;
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        int end = off + len;
+        while (buffer.position() < end) {
+            // the JDK copies heap buffers into a temporary direct buffer of the same size, so write in chunks
+            buffer.limit(Math.min(end, buffer.position() + BUFFER_SIZE));
+            if (channel.write(buffer) > 0) continue;
+
+            synchronized (this) {
+                writeWaiting = true;
+                transport.execute(this, this::updateInterestOps);
+                while (writeWaiting) {
+                    await();
+                }
+                if (closed) throw new IOException("Connection is closed");
+                if (error != null) throw error;
+            }
+        }
+    }
+
+    synchronized boolean isOpen() {
+        return !closed && !eof && error == null;
+    }
+
+    void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            writeWaiting = false;
+            notifyAll();
+            closeSink(null);
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {}
+        // the socket is released once the selector drops the cancelled key
+        transport.execute(this, () -> {});
+    }
+}
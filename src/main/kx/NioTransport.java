@@ -0,0 +1,100 @@
+package kx;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Single selector thread which does the socket I/O of all plain connections. Callers of c.k() still see
+ * blocking streams, but no thread is parked in a socket read per open connection.
+ */
+class NioTransport implements Runnable {
+
+    private static final Logger log = LogManager.getLogger();
+
+    private static NioTransport instance = null;
+
+    static synchronized NioTransport getInstance() throws IOException {
+        if (instance == null) {
+            instance = new NioTransport();
+        }
+        return instance;
+    }
+
+    private final Selector selector;
+    // changes of registrations and interest ops are done on the selector thread
+    private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+
+    private static class Task {
+        final NioChannel channel;
+        final Runnable action;
+
+        Task(NioChannel channel, Runnable action) {
+            this.channel = channel;
+            this.action = action;
+        }
+    }
+
+    private NioTransport() throws IOException {
+        selector = Selector.open();
+        Thread thread = new Thread(this, "kdb+ I/O");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    NioChannel register(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        NioChannel nioChannel = new NioChannel(this, channel);
+        execute(nioChannel, () -> nioChannel.register(selector));
+        return nioChannel;
+    }
+
+    // runs the task of the channel on the selector thread; the channel fails if the task throws an exception
+    void execute(NioChannel channel, Runnable task) {
+        tasks.add(new Task(channel, task));
+        selector.wakeup();
+    }
+
+    private static void fail(NioChannel channel, RuntimeException e) {
+        log.error("Unexpected error in I/O of a connection", e);
+        channel.fail(new IOException("Unexpected error in I/O of the connection", e));
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                log.error("Failed to select connections for I/O", e);
+            }
+            // a failure of one channel is reported to its streams; keep serving the others
+            Task task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.action.run();
+                } catch (RuntimeException e) {
+                    fail(task.channel, e);
+                }
+            }
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                NioChannel channel = (NioChannel) key.attachment();
+                try {
+                    channel.ready(key);
+                } catch (RuntimeException e) {
+                    fail(channel, e);
+                }
+            }
+        }
+    }
+}
@@ -2,6 +2,6 @@ package kx;
 
 public interface ProgressCallback {
     void setCompressed(boolean compressed);
-    void setMsgLength(int msgLength);
-    void setCurrentProgress(int total);
+    void setMsgLength(long msgLength);
+    void setCurrentProgress(long total);
 }
@@ -0,0 +1,8 @@
+package kx;
+
+import studio.kdb.K;
+
+public interface ResponseHandler {
+    // error is not null if the query failed on the server
+    void response(int index, K.KBase result, c.K4Exception error);
+}
@@ -0,0 +1,73 @@
+package kx;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Deserialiser which reads the message body from the stream as the decoder advances.
+ * Only a window of the message is kept in memory.
+ */
+class StreamDeserialiser extends Deserialiser {
+    private final InputStream in;
+    private final long msgLength;
+    private long remaining;
+    private final ProgressCallback progress;
+    private final long progressStep;
+    private long nextProgress;
+
+    StreamDeserialiser(InputStream in, long msgLength, int bufferSize, boolean a, String encoding, ProgressCallback progress) {
+        super(encoding);
+        this.in = in;
+        this.msgLength = msgLength;
+        this.remaining = msgLength;
+        this.a = a;
+        this.progress = progress;
+        b = ByteBuffer.allocate((int) Math.max(16, Math.min(msgLength, bufferSize))).order(order(a));
+        b.limit(0);
+        progressStep = 1 + msgLength / 100;
+        nextProgress = progressStep;
+    }
+
+    @Override
+    int window() {
+        return b.capacity();
+    }
+
+    @Override
+    void fill(int n) throws IOException {
+        if (b.remaining() >= n) return;
+        if (b.remaining() + remaining < n) throw new EOFException("Unexpected end of message");
+
+        b.compact();
+        if (b.capacity() < n) {
+            ByteBuffer window = ByteBuffer.allocate((int) Math.max(n, Math.min(2L * b.capacity(), b.position() + remaining)));
+            b.flip();
+            b = window.put(b).order(order(a));
+        }
+        while (b.position() < n) {
+            b.position(b.position() + read(b.position(), (int) Math.min(b.remaining(), remaining)));
+        }
+        b.flip();
+    }
+
+    void skipRemaining() throws IOException {
+        while (remaining > 0) {
+            read(0, (int) Math.min(b.capacity(), remaining));
+        }
+        b.clear().limit(0);
+    }
+
+    private int read(int off, int len) throws IOException {
+        int count = in.read(b.array(), off, len);
+        if (count < 0) throw new EOFException("Connection is broken");
+        remaining -= count;
+        long total = msgLength - remaining;
+        if (progress != null && (total >= nextProgress || remaining == 0)) {
+            nextProgress = total + progressStep;
+            progress.setCurrentProgress(total);
+        }
+        return count;
+    }
+}
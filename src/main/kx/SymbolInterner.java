@@ -0,0 +1,157 @@
+package kx;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Symbols decoded on a connection. Symbols are looked up by their bytes, so a repeated symbol doesn't create
+ * a String. While a vector is decoded, its symbols get codes from 0 in the order of the first occurrence;
+ * endVector() returns the distinct symbols by code. The table is cleared before a vector once it is too large,
+ * and at the end of a message once it is larger than what is kept between messages, so that idle connections
+ * in the pool hold only a small table.
+ */
+class SymbolInterner {
+
+    private final static int MAX_SIZE = 1 << 20;
+    private final static int KEEP_SIZE = 1 << 14;
+    private final static int INITIAL_CAPACITY = 1024;
+
+    private final String encoding;
+
+    // by id
+    private byte[][] keys;
+    private String[] strings;
+    private int[] hashes;
+    // code + 1 in the current vector or 0
+    private int[] codes;
+    private int size;
+    // open addressing by hash, id + 1 or 0 if the slot is empty
+    private int[] table;
+
+    // ids of the symbols of the current vector by code
+    private int[] vectorIds = new int[INITIAL_CAPACITY];
+    private int vectorSize = 0;
+
+    SymbolInterner(String encoding) {
+        this.encoding = encoding;
+        clear();
+    }
+
+    private void clear() {
+        keys = new byte[INITIAL_CAPACITY][];
+        strings = new String[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        codes = new int[INITIAL_CAPACITY];
+        table = new int[2 * INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    String getEncoding() {
+        return encoding;
+    }
+
+    void startVector() {
+        if (size > MAX_SIZE) clear();
+        vectorSize = 0;
+    }
+
+    void endMessage() {
+        if (size > KEEP_SIZE) clear();
+        if (vectorIds.length > INITIAL_CAPACITY) vectorIds = new int[INITIAL_CAPACITY];
+    }
+
+    // code in the current vector of the symbol in length bytes of b from the position
+    int code(ByteBuffer b, int position, int length) throws UnsupportedEncodingException {
+        int id = intern(b, position, length);
+        int code = codes[id] - 1;
+        if (code == -1) {
+            if (vectorSize == vectorIds.length) {
+                int[] newIds = new int[2 * vectorIds.length];
+                System.arraycopy(vectorIds, 0, newIds, 0, vectorSize);
+                vectorIds = newIds;
+            }
+            code = vectorSize++;
+            vectorIds[code] = id;
+            codes[id] = code + 1;
+        }
+        return code;
+    }
+
+    // distinct symbols of the current vector by code
+    String[] endVector() {
+        String[] symbols = new String[vectorSize];
+        for (int code = 0; code < vectorSize; code++) {
+            int id = vectorIds[code];
+            symbols[code] = strings[id];
+            codes[id] = 0;
+        }
+        vectorSize = 0;
+        return symbols;
+    }
+
+    private int intern(ByteBuffer b, int position, int length) throws UnsupportedEncodingException {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + b.get(position + i);
+        }
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        for (; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && equals(keys[id], b, position, length)) return id;
+        }
+
+        byte[] key = new byte[length];
+        for (int i = 0; i < length; i++) {
+            key[i] = b.get(position + i);
+        }
+        if (size == keys.length) grow();
+        int id = size++;
+        keys[id] = key;
+        strings[id] = new String(key, encoding);
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        if (2 * size > table.length) rehash();
+        return id;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(byte[] key, ByteBuffer b, int position, int length) {
+        if (key.length != length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != b.get(position + i)) return false;
+        }
+        return true;
+    }
+
+    private void grow() {
+        int capacity = 2 * keys.length;
+        byte[][] newKeys = new byte[capacity][];
+        String[] newStrings = new String[capacity];
+        int[] newHashes = new int[capacity];
+        int[] newCodes = new int[capacity];
+        System.arraycopy(keys, 0, newKeys, 0, size);
+        System.arraycopy(strings, 0, newStrings, 0, size);
+        System.arraycopy(hashes, 0, newHashes, 0, size);
+        System.arraycopy(codes, 0, newCodes, 0, size);
+        keys = newKeys;
+        strings = newStrings;
+        hashes = newHashes;
+        codes = newCodes;
+    }
+
+    private void rehash() {
+        table = new int[2 * table.length];
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+}
@@ -23,7 +23,13 @@ types
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.util.UUID;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import studio.kdb.K;
@@ -32,19 +38,30 @@ public class c {
     DataInputStream inputStream;
     OutputStream outputStream;
     Socket s;
-    byte[] b, B;
-    int j;
-    int J;
-    boolean a;
+    // null for TLS connections which use blocking sockets
+    private volatile NioChannel nioChannel;
+    byte[] header = new byte[8];
     private volatile boolean cancelled;
     int rxBufferSize;
+    int txBufferSize;
     private String encoding = "UTF-8";
-
-    void io(Socket s) throws IOException {
+    // decoded symbols are shared by the messages of the connection, as long as there are few of them
+    private SymbolInterner symbols = new SymbolInterner(encoding);
+    private long spillThreshold = 0;
+    private long offHeapThreshold = 0;
+    private int lazyColumnThreshold = 0;
+    // decoding in parallel doesn't pay off on a single core
+    private final int parallelRowThreshold = ForkJoinPool.getCommonPoolParallelism() > 1 ? Deserialiser.PARALLEL_ROWS : 0;
+    // IPC capability agreed with the server during the handshake: 6 means that messages over 2 GB are supported
+    private int capability = 0;
+
+    void io(Socket s, InputStream in, OutputStream out) throws IOException {
         s.setTcpNoDelay(true);
-        inputStream = new DataInputStream(s.getInputStream());
-        outputStream = s.getOutputStream();
+        s.setKeepAlive(true);
+        inputStream = new DataInputStream(in);
+        outputStream = out;
         rxBufferSize = s.getReceiveBufferSize();
+        txBufferSize = s.getSendBufferSize();
     }
 
     public void close() {
@@ -69,6 +86,23 @@ public class c {
 
     public void setEncoding(String encoding) {
         this.encoding = encoding;
+        if (!symbols.getEncoding().equals(encoding)) symbols = new SymbolInterner(encoding);
+    }
+
+    // compressed responses which decompress to more than the threshold are decoded from a memory-mapped temp file;
+    // 0 disables it
+    public void setSpillThreshold(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    // vectors of fixed-width values larger than the threshold are kept in memory-mapped temp files; 0 disables it
+    public void setOffHeapThreshold(long offHeapThreshold) {
+        this.offHeapThreshold = offHeapThreshold;
+    }
+
+    // columns of tables with at least that many columns are decoded on first access; 0 disables it
+    public void setLazyColumnThreshold(int lazyColumnThreshold) {
+        this.lazyColumnThreshold = lazyColumnThreshold;
     }
 
     public static class K4AccessException extends K4Exception {
@@ -77,18 +111,19 @@ public class c {
         }
     }
 
-    boolean closed = true;
+    volatile boolean closed = true;
+    private volatile boolean listening = false;
 
     public boolean isClosed() {
         return closed;
     }
 
     private void connect(boolean retry) throws IOException, K4AccessException {
-        s = new Socket();
-        s.setReceiveBufferSize(1024 * 1024);
-        s.connect(new InetSocketAddress(host, port));
-
         if (useTLS) {
+            // TLS connections keep blocking sockets
+            s = new Socket();
+            s.setReceiveBufferSize(1024 * 1024);
+            s.connect(new InetSocketAddress(host, port));
             try {
                 s = ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(s, host, port, true);
                 ((SSLSocket) s).startHandshake();
@@ -96,23 +131,54 @@ public class c {
                 s.close();
                 throw e;
             }
+            nioChannel = null;
+            io(s, s.getInputStream(), s.getOutputStream());
+        } else {
+            SocketChannel channel = SocketChannel.open();
+            s = channel.socket();
+            try {
+                s.setReceiveBufferSize(1024 * 1024);
+                channel.connect(new InetSocketAddress(host, port));
+                nioChannel = NioTransport.getInstance().register(channel);
+                io(s, nioChannel.in, nioChannel.out);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
         }
-        io(s);
         java.io.ByteArrayOutputStream baos = new ByteArrayOutputStream();
         java.io.DataOutputStream dos = new DataOutputStream(baos);
-        dos.write((up + (retry ? "\3" : "")).getBytes());
+        dos.write((up + (retry ? "\6" : "")).getBytes());
         dos.writeByte(0);
         dos.flush();
         outputStream.write(baos.toByteArray());
         byte[] bytes = new byte[2 + up.getBytes().length];
-        if (1 != inputStream.read(bytes, 0, 1))
-            if (retry)
+        if (1 != inputStream.read(bytes, 0, 1)) {
+            if (retry) {
                 connect(false);
-            else
-                throw new K4AccessException();
+                return;
+            }
+            throw new K4AccessException();
+        }
+        capability = bytes[0];
         closed = false;
     }
 
+    // opens the connection ahead of the first query
+    public synchronized void connect() throws IOException, K4AccessException {
+        if (isClosed()) connect(true);
+    }
+
+    // false if the connection is closed or the server is known to have closed it; doesn't block
+    public boolean isAlive() {
+        if (isClosed()) return false;
+        return nioChannel == null || nioChannel.isOpen();
+    }
+
+    public int getCapability() {
+        return capability;
+    }
+
     private String host;
     private int port;
     private String up;
@@ -125,530 +191,206 @@ public class c {
         this.useTLS = useTLS;
     }
 
-    boolean rb() {
-        return 1 == b[j++];
-    }
-
-    short rh() {
-        int x = b[j++], y = b[j++];
-        return (short) (a ? x & 0xff | y << 8 : x << 8 | y & 0xff);
-    }
-
-    int ri() {
-        int x = rh(), y = rh();
-        return a ? x & 0xffff | y << 16 : x << 16 | y & 0xffff;
-    }
-
-    long rj() {
-        int x = ri(), y = ri();
-        return a ? x & 0xffffffffL | (long) y << 32 : (long) x << 32 | y & 0xffffffffL;
-    }
-
-    float re() {
-        return Float.intBitsToFloat(ri());
-    }
-
-    double rf() {
-        return Double.longBitsToDouble(rj());
-    }
-
-    UUID rg() {
-        boolean oa = a;
-        a = false;
-        UUID g = new UUID(rj(), rj());
-        a = oa;
-        return g;
-    }
-
-    char rc() {
-        return (char) (b[j++] & 0xff);
+    // like kdb+, compress only if the server supports it and is not on the same host
+    private boolean isCompressionEnabled(int msgSize) {
+        return capability > 0 && msgSize > Compressor.THRESHOLD && !s.getInetAddress().isLoopbackAddress();
     }
 
-    K.KSymbol rs() throws UnsupportedEncodingException {
-        int n = j;
-        for (; b[n] != 0; )
-            ++n;
-        String s = new String(b, j, n - j, encoding);
-        j = n;
-        ++j;
-        return new K.KSymbol(s);
-    }
-
-    K.UnaryPrimitive rup() {
-        return new K.UnaryPrimitive(b[j++]);
-    }
-
-    K.BinaryPrimitive rbp() {
-        return new K.BinaryPrimitive(b[j++]);
-    }
-
-    K.TernaryOperator rternary() {
-        return new K.TernaryOperator(b[j++]);
-    }
-
-    K.Function rfn() throws UnsupportedEncodingException {
-        K.KSymbol s = rs();
-        return new K.Function((K.KCharacterVector) r());
-    }
-
-    K.Feach rfeach() throws UnsupportedEncodingException {
-        return new K.Feach(r());
-    }
-
-    K.Fover rfover() throws UnsupportedEncodingException {
-        return new K.Fover(r());
-    }
-
-    K.Fscan rfscan() throws UnsupportedEncodingException {
-        return new K.Fscan(r());
-    }
-
-    K.FComposition rcomposition() throws UnsupportedEncodingException {
-        int n = ri();
-        K.KBase[] objs = new K.KBase[n];
-        for (int i = 0; i < n; i++)
-            objs[i] = r();
-
-        return new K.FComposition(objs);
-    }
+    // buffers up to this size are kept for the next message
+    private final static int MAX_KEPT_BUFFER_SIZE = 1024 * 1024;
+    private ByteBuffer writeBuffer;
 
-    K.FPrior rfPrior() throws UnsupportedEncodingException {
-        return new K.FPrior(r());
-    }
+    // returns the number of bytes written
+    int w(int i, K.KBase x) throws IOException {
+        long size = 8 + x.getSerialisedSize();
+        if (size > Integer.MAX_VALUE) throw new IOException("Message is too large: " + size + " bytes");
+        int msgSize = (int) size;
 
-    K.FEachRight rfEachRight() throws UnsupportedEncodingException {
-        return new K.FEachRight(r());
-    }
-
-    K.FEachLeft rfEachLeft() throws UnsupportedEncodingException {
-        return new K.FEachLeft(r());
-    }
-
-    K.Projection rproj() throws UnsupportedEncodingException {
-        int n = ri();
-        K.KBase[] array = new K.KBase[n];
-        for (int i = 0; i < n; i++)
-            array[i] = r();
-        return new K.Projection(array);
-    }
+        ByteBuffer b = writeBuffer;
+        if (b == null || b.capacity() < msgSize) {
+            b = ByteBuffer.allocate(msgSize);
+            if (msgSize <= MAX_KEPT_BUFFER_SIZE) writeBuffer = b;
+        }
+        b.clear();
+        b.put((byte) 0).put((byte) i).put((byte) 0).put((byte) 0).putInt(msgSize);
+        x.serialise(b);
 
-    K.Minute ru() {
-        return new K.Minute(ri());
+        if (isCompressionEnabled(msgSize)) {
+            byte[] compressed = Compressor.compress(b.array(), msgSize);
+            if (compressed != null) {
+                outputStream.write(compressed);
+                return compressed.length;
+            }
+        }
+        outputStream.write(b.array(), 0, msgSize);
+        return msgSize;
     }
 
-    K.Month rm() {
-        return new K.Month(ri());
+    public static class K4Exception extends Exception {
+        K4Exception(String s) {
+            super(s);
+        }
     }
 
-    K.Second rv() {
-        return new K.Second(ri());
-    }
 
-    K.KTimespan rn() {
-        return new K.KTimespan(rj());
+    private long getMsgLength() {
+        return getMsgLength(header);
     }
 
-    K.KTime rt() {
-        return new K.KTime(ri());
+    // the length of the body; the length in the header is unsigned and messages over 4 GB keep its upper bits
+    // in the 4th byte of the header
+    static long getMsgLength(byte[] header) {
+        int length = ByteBuffer.wrap(header, 4, 4).order(Deserialiser.order(header[0] == 1)).getInt();
+        return (length & 0xffffffffL) + ((header[3] & 0xffL) << 32) - 8;
     }
 
-    K.KDate rd() {
-        return new K.KDate(ri());
+    // decodes the body of the message which header was just read
+    private K.KBase readMessage(ProgressCallback progress) throws K4Exception, IOException {
+        return readMessage(inputStream, header, progress);
     }
 
-    K.KDatetime rz() {
-        return new K.KDatetime(rf());
+    // decodes an async message which was received as a whole
+    K.KBase decode(byte[] message) throws K4Exception, IOException {
+        if (message[1] == 1) throw new IOException("Cannot process sync msg from remote");
+        return readMessage(new ByteArrayInputStream(message, 8, message.length - 8), message, null);
     }
 
-    K.KTimestamp rp() {
-        return new K.KTimestamp(rj());
-    }
+    private K.KBase readMessage(InputStream input, byte[] header, ProgressCallback progress) throws K4Exception, IOException {
+        boolean a = header[0] == 1;
+        boolean c = header[2] == 1;
+        final long msgLength = getMsgLength(header);
 
-    K.KBase r() throws UnsupportedEncodingException {
-        int i = 0, n, t = b[j++];
-        if (t < 0)
-            switch (t) {
-                case -1:
-                    return new K.KBoolean(rb());
-                case -2:
-                    return new K.KGuid(rg());
-                case -4:
-                    return new K.KByte(b[j++]);
-                case -5:
-                    return new K.KShort(rh());
-                case -6:
-                    return new K.KInteger(ri());
-                case -7:
-                    return new K.KLong(rj());
-                case -8:
-                    return new K.KFloat(re());
-                case -9:
-                    return new K.KDouble(rf());
-                case -10:
-                    return new K.KCharacter(rc());
-                case -11:
-                    return rs();
-                case -12:
-                    return rp();
-                case -13:
-                    return rm();
-                case -14:
-                    return rd();
-                case -15:
-                    return rz();
-                case -16:
-                    return rn();
-                case -17:
-                    return ru();
-                case -18:
-                    return rv();
-                case -19:
-                    return rt();
-            }
-
-        if (t == 100)
-            return rfn(); // fn - lambda
-        if (t == 101)
-            return rup();  // unary primitive
-        if (t == 102)
-            return rbp();  // binary primitive
-        if (t == 103)
-            return rternary();
-        if (t == 104)
-            return rproj(); // fn projection
-        if (t == 105)
-            return rcomposition();
-
-        if (t == 106)
-            return rfeach(); // f'
-        if (t == 107)
-            return rfover(); // f/
-        if (t == 108)
-            return rfscan(); //f\
-        if (t == 109)
-            return rfPrior(); // f':
-        if (t == 110)
-            return rfEachRight(); // f/:
-        if (t == 111)
-            return rfEachLeft(); // f\:
-        if (t == 112) {
-            // dynamic load
-            j++;
-            return null;
-        }
-        if (t == 127) {
-            K.Dict d = new K.Dict(r(), r());
-            d.setAttr((byte) 1);
-            return d;
-        }
-        if (t > 99) {
-            j++;
-            return null;
-        }
-        if (t == 99)
-            return new K.Dict(r(), r());
-        byte attr = b[j++];
-        if (t == 98) {
-            K.Dict d = (K.Dict)r();
-            if (d.x instanceof K.KSymbolVector && d.y instanceof K.KBaseVector) {
-                return new K.Flip((K.KSymbolVector)d.x, (K.KBaseVector<? extends K.KBase>)d.y);
-            } else {
-                return new K.MappedTable(d);
-            }
-        }        n = ri();
-        switch (t) {
-            case 0: {
-                K.KBase[] array = new K.KBase[n];
-                for (; i < n; i++)
-                    array[i] = r();
-                K.KList L = new K.KList(array);
-                L.setAttr(attr);
-                return L;
-            }
-            case 1: {
-                boolean[] array = new boolean[n];
-                for (; i < n; i++)
-                    array[i] = rb();
-                K.KBooleanVector B = new K.KBooleanVector(array);
-                B.setAttr(attr);
-                return B;
-            }
-            case 2: {
-                UUID[] array = new UUID[n];
-                for (; i < n; i++)
-                    array[i] = rg();
-                K.KGuidVector B = new K.KGuidVector(array);
-                B.setAttr(attr);
-                return B;
-            }
-            case 4: {
-                byte[] array = new byte[n];
-                for (; i < n; i++)
-                    array[i] = b[j++];
-                K.KByteVector G = new K.KByteVector(array);
-                G.setAttr(attr);
-                return G;
-            }
-            case 5: {
-                short[] array = new short[n];
-                for (; i < n; i++)
-                    array[i] = rh();
-                K.KShortVector H = new K.KShortVector(array);
-                H.setAttr(attr);
-                return H;
-            }
-            case 6: {
-                int[] array = new int[n];
-                for (; i < n; i++)
-                    array[i] = ri();
-                K.KIntVector I = new K.KIntVector(array);
-                I.setAttr(attr);
-                return I;
-            }
-            case 7: {
-                long[] array = new long[n];
-                for (; i < n; i++)
-                    array[i] = rj();
-                K.KLongVector J = new K.KLongVector(array);
-                J.setAttr(attr);
-                return J;
-            }
-            case 8: {
-                float[] array = new float[n];
-                for (; i < n; i++)
-                    array[i] = re();
-                K.KFloatVector E = new K.KFloatVector(array);
-                E.setAttr(attr);
-                return E;
-            }
-            case 9: {
-                double[] array = new double[n];
-                for (; i < n; i++)
-                    array[i] = rf();
-                K.KDoubleVector F = new K.KDoubleVector(array);
-                F.setAttr(attr);
-                return F;
-            }
-            case 10: {
-                String value = new String(b, j, n, encoding);
-                K.KCharacterVector C = new K.KCharacterVector(value);
-                C.setAttr(attr);
-                j += n;
-                return C;
-            }
-            case 11: {
-                String[] array = new String[n];
-                for (; i < n; i++)
-                    array[i] = rs().s;
-                K.KSymbolVector S = new K.KSymbolVector(array);
-                S.setAttr(attr);
-                return S;
-            }
-            case 12: {
-                long[] array = new long[n];
-                for (; i < n; i++) {
-                    array[i] = rj();
-                }
-                K.KTimestampVector P = new K.KTimestampVector(array);
-                P.setAttr(attr);
-                return P;
-            }
-            case 13: {
-                int[] array = new int[n];
-                for (; i < n; i++)
-                    array[i] = ri();
-                K.KMonthVector M = new K.KMonthVector(array);
-                M.setAttr(attr);
-                return M;
-            }
-            case 14: {
-                int[] array = new int[n];
-                for (; i < n; i++)
-                    array[i] = ri();
-                K.KDateVector D = new K.KDateVector(array);
-                D.setAttr(attr);
-                return D;
-            }
-            case 15: {
-                double[] array = new double[n];
-                for (; i < n; i++)
-                    array[i] = rf();
-                K.KDatetimeVector Z = new K.KDatetimeVector(array);
-                Z.setAttr(attr);
-                return Z;
-            }
-            case 16: {
-                long[] array = new long[n];
-                for (; i < n; i++) {
-                    array[i] = rj();
-                }
-                K.KTimespanVector N = new K.KTimespanVector(array);
-                N.setAttr(attr);
-                return N;
-            }
-            case 17: {
-                int[] array = new int[n];
-                for (; i < n; i++)
-                    array[i] = ri();
-                K.KMinuteVector U = new K.KMinuteVector(array);
-                U.setAttr(attr);
-                return U;
-            }
-            case 18: {
-                int[] array = new int[n];
-                for (; i < n; i++)
-                    array[i] = ri();
-                K.KSecondVector V = new K.KSecondVector(array);
-                V.setAttr(attr);
-                return V;
-            }
-            case 19: {
-                int[] array = new int[n];
-                for (; i < n; i++)
-                    array[i] = ri();
-                K.KTimeVector T = new K.KTimeVector(array);
-                T.setAttr(attr);
-                return T;
-            }
+        if (progress!=null) {
+            progress.setCompressed(c);
+            progress.setMsgLength(msgLength);
         }
-        return null;
-    }
-
-    void w(int i, K.KBase x) throws IOException {
-        java.io.ByteArrayOutputStream baosBody = new ByteArrayOutputStream();
-        java.io.DataOutputStream dosBody = new DataOutputStream(baosBody);
-        x.serialise(dosBody);
-
-        java.io.ByteArrayOutputStream baosHeader = new ByteArrayOutputStream();
-        java.io.DataOutputStream dosHeader = new DataOutputStream(baosHeader);
-        dosHeader.writeByte(0);
-        dosHeader.writeByte(i);
-        dosHeader.writeByte(0);
-        dosHeader.writeByte(0);
-        int msgSize = 8 + dosBody.size();
-        K.write(dosHeader, msgSize);
-        byte[] b = baosHeader.toByteArray();
-        outputStream.write(b);
-        b = baosBody.toByteArray();
-        outputStream.write(b);
-    }
 
-    public static class K4Exception extends Exception {
-        K4Exception(String s) {
-            super(s);
+        StreamDeserialiser in = new StreamDeserialiser(input, msgLength, rxBufferSize, a, encoding, progress);
+        Deserialiser d = c ? new CompressedDeserialiser(in, encoding, spillThreshold) : in;
+        d.symbols = symbols;
+        d.offHeapThreshold = offHeapThreshold;
+        d.lazyColumnThreshold = lazyColumnThreshold;
+        d.parallelRowThreshold = parallelRowThreshold;
+        K.KBase result;
+        try {
+            result = d.readResponse();
+        } catch (K4Exception e) {
+            in.skipRemaining();
+            throw e;
+        } finally {
+            d.close();
+            symbols.endMessage();
         }
+        in.skipRemaining();
+        return result;
     }
 
-
     private K.KBase k(ProgressCallback progress) throws K4Exception, IOException {
-        boolean firstMessage = true;
-        boolean responseMsg = false;
-        boolean c = false;
-        while (!responseMsg) { // throw away incoming aync, and error out on incoming sync
-            if (firstMessage) {
-                firstMessage = false;
-            } else {
-                inputStream.readFully(b = new byte[8]);
-            }
-            a = b[0] == 1;
-            c = b[2] == 1;
-            byte msgType = b[1];
+        while (true) { // throw away incoming aync, and error out on incoming sync
+            byte msgType = header[1];
             if (msgType == 1) {
                 close();
                 throw new IOException("Cannot process sync msg from remote");
             }
-            responseMsg = msgType == 2;
-            j = 4;
-
-            final int msgLength = ri() - 8;
 
-            if (progress!=null) {
-                progress.setCompressed(c);
-                progress.setMsgLength(msgLength);
+            if (msgType != 2) {
+                new StreamDeserialiser(inputStream, getMsgLength(), rxBufferSize, header[0] == 1, encoding, null).skipRemaining();
+                inputStream.readFully(header);
+                continue;
             }
 
-            b = new byte[msgLength];
-            int total = 0;
-            int packetSize = 1 + msgLength / 100;
-            if (packetSize < rxBufferSize)
-                packetSize = rxBufferSize;
-
-            while (total < msgLength) {
-                int remainder = msgLength - total;
-                if (remainder < packetSize)
-                    packetSize = remainder;
-
-                int count = inputStream.read(b, total, packetSize);
-                if (count < 0) throw new EOFException("Connection is broken");
-                total += count;
-                if (progress != null) progress.setCurrentProgress(total);
-            }
-        }
-        if (c)
-            u();
-        else
-            j = 0;
-
-        if (b[0] == -128) {
-            j = 1;
-            //showType=false because an error is NOT a symbol, this would cause confusion with novice users who can't tell the difference
-            throw new K4Exception(rs().toString(false));
+            return readMessage(progress);
         }
-        return r();
     }
 
-    private void u() {
-        int n = 0, r = 0, f = 0, s = 8, p = s;
-        short i = 0;
-        j = 0;
-        byte[] dst = new byte[ri()];
-        int d = j;
-        int[] aa = new int[256];
-        while (s < dst.length) {
-            if (i == 0) {
-                f = 0xff & (int) b[d++];
-                i = 1;
-            }
-            if ((f & i) != 0) {
-                r = aa[0xff & (int) b[d++]];
-                dst[s++] = dst[r++];
-                dst[s++] = dst[r++];
-                n = 0xff & (int) b[d++];
-                for (int m = 0; m < n; m++) {
-                    dst[s + m] = dst[r + m];
+    private static final K.KBase END_OF_STREAM = new K.KList();
+
+    /**
+     * Delivers async messages sent by the server, e.g. updates of a tickerplant subscription, to the listener.
+     * At most queueCapacity messages wait for the listener; then the socket isn't read, so a slow listener
+     * pushes back on the server over TCP instead of growing the heap.
+     * Plain connections keep no thread of their own: the selector thread of NioTransport receives whole messages
+     * and a shared pool decodes them and calls the listener. TLS connections use blocking sockets, so a reader
+     * thread decodes messages into the queue and a dispatcher thread passes them to the listener.
+     * The connection can't be used for queries afterwards; close() stops the delivery.
+     */
+    public synchronized void listen(MessageListener listener, int queueCapacity) throws K4AccessException, IOException {
+        if (listening) throw new IllegalStateException("The connection is already listening");
+        if (isClosed()) connect(true);
+        listening = true;
+
+        if (nioChannel != null) {
+            nioChannel.listen(new MessageDispatcher(this, nioChannel, listener, queueCapacity));
+            return;
+        }
+
+        BlockingQueue<K.KBase> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Throwable> readError = new AtomicReference<>();
+        String name = host + ":" + port;
+
+        Thread reader = new Thread(() -> {
+            try {
+                while (true) {
+                    inputStream.readFully(header);
+                    if (header[1] == 1) throw new IOException("Cannot process sync msg from remote");
+                    queue.put(readMessage(null));
                 }
-            } else {
-                dst[s++] = b[d++];
-            }
-            while (p < s - 1) {
-                aa[(0xff & (int) dst[p]) ^ (0xff & (int) dst[p + 1])] = p++;
-            }
-            if ((f & i) != 0) {
-                p = s += n;
+            } catch (Throwable e) {
+                // reading fails once the connection is closed with close()
+                if (!closed) readError.set(e);
+                close();
             }
-            i *= 2;
-            if (i == 256) {
-                i = 0;
+            while (true) {
+                try {
+                    queue.put(END_OF_STREAM);
+                    return;
+                } catch (InterruptedException e) {}
+            }
+        }, "kdb+ reader " + name);
+
+        Thread dispatcher = new Thread(() -> {
+            Throwable error = null;
+            while (true) {
+                K.KBase message;
+                try {
+                    message = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (message == END_OF_STREAM) break;
+                // after a failure of the listener the queue is only drained to let the reader finish
+                if (error != null) continue;
+                try {
+                    listener.message(message);
+                } catch (Throwable e) {
+                    error = e;
+                    close();
+                }
             }
-        }
-        b = dst;
-        j = 8;
+            listener.closed(error != null ? error : readError.get());
+        }, "kdb+ dispatcher " + name);
+
+        reader.setDaemon(true);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        reader.start();
     }
 
     public synchronized K.KBase k(K.KBase x, ProgressCallback progress) throws K4Exception, IOException {
+        if (listening) throw new IllegalStateException("The connection is listening to async messages");
         try {
             cancelled = false;
             if (isClosed()) connect(true);
             try {
                 w(1, x);
-                inputStream.readFully(b = new byte[8]);
+                inputStream.readFully(header);
             } catch (IOException e) {
                 close();
                 if (!cancelled) {
                     // maybe the socket was closed on the server side?
                     connect(true);
                     w(1, x);
-                    inputStream.readFully(b = new byte[8]);
+                    inputStream.readFully(header);
                 } else {
                     return null;
                 }
@@ -661,6 +403,60 @@ public class c {
         }
     }
 
+    /**
+     * Sends the queries without waiting for responses and reads the responses, which kdb+ sends in the order
+     * of the queries, so the batch takes about one round trip instead of one per query. A query is written only
+     * while the queries without a response fit in the send buffer, otherwise the oldest response is read first:
+     * the server doesn't read the next query while it writes a response, so writing more could block both sides.
+     */
+    public synchronized void k(List<K.KBase> queries, ProgressCallback progress, ResponseHandler handler) throws K4AccessException, IOException {
+        if (listening) throw new IllegalStateException("The connection is listening to async messages");
+        try {
+            cancelled = false;
+            if (isClosed()) connect(true);
+            int[] sizes = new int[queries.size()];
+            int written = 0;
+            long inFlight = 0;
+            boolean retried = false;
+            int index = 0;
+            while (index < queries.size()) {
+                try {
+                    while (written < queries.size() && (written == index || inFlight + 8 + queries.get(written).getSerialisedSize() <= txBufferSize)) {
+                        sizes[written] = w(1, queries.get(written));
+                        inFlight += sizes[written];
+                        written++;
+                    }
+                    inputStream.readFully(header);
+                } catch (IOException e) {
+                    // the same as for a single query: maybe the socket was closed on the server side, which shows
+                    // up until the first response; then the batch is sent again on a new connection
+                    if (index > 0 || retried) throw e;
+                    close();
+                    if (cancelled) return;
+                    connect(true);
+                    retried = true;
+                    written = 0;
+                    inFlight = 0;
+                    continue;
+                }
+
+                K.KBase result = null;
+                K4Exception error = null;
+                try {
+                    result = k(progress);
+                } catch (K4Exception e) {
+                    error = e;
+                }
+                inFlight -= sizes[index];
+                handler.response(index, result, error);
+                index++;
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
     public K.KBase k(K.KBase x) throws K4Exception, IOException {
         return k(x, null);
     }
@@ -669,4 +465,9 @@ public class c {
         cancelled = true;
     }
 
+    // whether cancel() was called during the current query
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
 }
@@ -0,0 +1,110 @@
+package studio.kdb;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+
+/**
+ * Formatted cells of a table model in one format. Cells are kept by chunks of rows of a column, so that repainting
+ * and copying the same cells doesn't format them again. At most MAX_CHUNKS chunks are kept and the garbage collector
+ * can drop them; the chunks of a column are dropped when the model returns another vector for it.
+ * Accessed on the EDT only.
+ */
+public class CellTextCache {
+
+    private final static int CHUNK = 256;
+    private final static int MAX_CHUNKS = 1024;
+
+    private final KFormatContext formatContextWithType;
+    private final KFormatContext formatContextNoType;
+    // 0 for the whole text
+    private final int maxChars;
+    private final int maxFractionDigits;
+
+    // the vectors which the chunks of the columns were formatted from
+    private K.KBaseVector<? extends K.KBase>[] vectors = new K.KBaseVector<?>[0];
+    private SoftReference<String[]>[][] chunks = newColumns(0);
+    // in the order of creation; the oldest chunk is dropped first
+    private final ArrayDeque<SoftReference<String[]>> order = new ArrayDeque<>();
+    private final StringBuilder builder = new StringBuilder();
+
+    // arrays of a generic type are created with a wildcard
+    @SuppressWarnings("unchecked")
+    private static SoftReference<String[]>[][] newColumns(int count) {
+        return (SoftReference<String[]>[][]) new SoftReference<?>[count][];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SoftReference<String[]>[] newChunks(int count) {
+        return (SoftReference<String[]>[]) new SoftReference<?>[count];
+    }
+
+    // vectors in lists are formatted with the type if the context shows it; other cells without the type
+    public CellTextCache(KFormatContext formatContext, int maxChars) {
+        formatContextWithType = new KFormatContext(formatContext).setRange(null);
+        formatContextNoType = new KFormatContext(formatContextWithType).setShowType(false);
+        this.maxChars = Math.max(0, maxChars);
+        maxFractionDigits = KFormatContext.getMaxFractionDigits();
+    }
+
+    public boolean matches(KFormatContext formatContext, int maxChars) {
+        return formatContext.showType() == formatContextWithType.showType() &&
+                formatContext.showThousandsComma() == formatContextWithType.showThousandsComma() &&
+                Math.max(0, maxChars) == this.maxChars &&
+                KFormatContext.getMaxFractionDigits() == maxFractionDigits;
+    }
+
+    // the cell at the index of the column vector, i.e. the row in the original order
+    public String get(KTableModel model, int column, int index) {
+        K.KBaseVector<? extends K.KBase> vector = model.getColumn(column);
+        if (column >= vectors.length) {
+            int count = Math.max(column + 1, model.getColumnCount());
+            K.KBaseVector<? extends K.KBase>[] newVectors = new K.KBaseVector<?>[count];
+            System.arraycopy(vectors, 0, newVectors, 0, vectors.length);
+            SoftReference<String[]>[][] newChunks = newColumns(count);
+            System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+            vectors = newVectors;
+            chunks = newChunks;
+        }
+        if (vectors[column] != vector) {
+            vectors[column] = vector;
+            chunks[column] = newChunks((vector.getLength() + CHUNK - 1) / CHUNK);
+        }
+
+        SoftReference<String[]>[] columnChunks = chunks[column];
+        int chunkIndex = index / CHUNK;
+        String[] chunk = columnChunks[chunkIndex] == null ? null : columnChunks[chunkIndex].get();
+        if (chunk == null) {
+            chunk = new String[CHUNK];
+            SoftReference<String[]> reference = new SoftReference<>(chunk);
+            columnChunks[chunkIndex] = reference;
+            order.add(reference);
+            if (order.size() > MAX_CHUNKS) {
+                order.remove().clear();
+            }
+        }
+
+        String text = chunk[index % CHUNK];
+        if (text == null) {
+            text = format(vector, index);
+            chunk[index % CHUNK] = text;
+        }
+        return text;
+    }
+
+    private String format(K.KBaseVector<? extends K.KBase> vector, int index) {
+        builder.setLength(0);
+        if (vector instanceof K.KList) {
+            K.KBase value = vector.at(index);
+            KFormatContext context = value instanceof K.KBaseVector ? formatContextWithType : formatContextNoType;
+            if (maxChars == 0) value.format(builder, context);
+            else value.formatLimited(builder, context, maxChars);
+        } else {
+            vector.formatTo(index, builder, formatContextNoType);
+            if (maxChars > 0 && builder.length() > maxChars) {
+                builder.setLength(maxChars);
+                builder.append(KFormatContext.ELLIPSIS);
+            }
+        }
+        return builder.toString();
+    }
+}
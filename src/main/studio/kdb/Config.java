@@ -45,6 +45,10 @@ public class Config {
     public static final String SAVE_ON_EXIT = configDefault("isSaveOnExit", ConfigType.BOOLEAN, true);
     public static final String FILE_WATCHER_ENABLED = configDefault("isFileWatcherEnabled", ConfigType.BOOLEAN, true);
     public static final String ALLOW_PARALLEL_QUERY = configDefault("allowParallelQuery", ConfigType.BOOLEAN, false);
+    public static final String MAX_CONNECTIONS_PER_SERVER = configDefault("maxConnectionsPerServer", ConfigType.INT, 8);
+    public static final String RESPONSE_SPILL_THRESHOLD_MB = configDefault("responseSpillThresholdMB", ConfigType.INT, 512);
+    public static final String OFF_HEAP_VECTOR_THRESHOLD_MB = configDefault("offHeapVectorThresholdMB", ConfigType.INT, 256);
+    public static final String LAZY_TABLE_COLUMNS = configDefault("lazyTableColumns", ConfigType.INT, 100);
     public static final String SERVER_LIST_BOUNDS = configDefault("serverList", ConfigType.BOUNDS, new Dimension(ServerList.DEFAULT_WIDTH, ServerList.DEFAULT_HEIGHT));
     public static final String CHART_BOUNDS = configDefault("chartBounds", ConfigType.BOUNDS, 0.5);
     public static final String CELL_RIGHT_PADDING = configDefault("cellRightPadding", ConfigType.DOUBLE, 0.5);
@@ -7,91 +7,331 @@ import studio.core.Credentials;
 import studio.core.IAuthenticationMechanism;
 import java.util.*;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
 import kx.c.K4Exception;
 
+/**
+ * Pool of connections with a separate lock per server. Every server has at most maxConnectionsPerServer
+ * connections; further leases wait until a connection is freed. A background task closes connections
+ * which are idle for too long or were closed by the server.
+ */
 public class ConnectionPool {
 
     private static final Logger log = LogManager.getLogger();
 
+    private final static long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+    private final static long CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
     private final static ConnectionPool instance = new ConnectionPool();
-    private final Map<Server,List<kx.c>> freeMap = new HashMap<>();
-    private final Map<Server,List<kx.c>> busyMap = new HashMap<>();
+    private final Map<Server, ServerPool> pools = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    private final AtomicLong leaseCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong leaseWaitNanos = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
 
     public static ConnectionPool getInstance() {
         return instance;
     }
 
-    private ConnectionPool() {}
+    private ConnectionPool() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Connection pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::evictIdle, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
 
-    public synchronized void purge(Server s) {
-        List<kx.c> list = freeMap.computeIfAbsent(s, k -> new LinkedList<>());
-        for (kx.c c: list) {
-            c.close();
-        }
-        list.clear();
-        busyMap.put(s,new LinkedList<>());
+    private ServerPool getPool(Server s) {
+        return pools.computeIfAbsent(s, ServerPool::new);
+    }
+
+    public void purge(Server s) {
+        ServerPool pool = pools.get(s);
+        if (pool != null) pool.purge();
     }
 
-    public synchronized kx.c leaseConnection(Server s) throws IOException, K4Exception {
-        List<kx.c> list =  freeMap.computeIfAbsent(s, k -> new LinkedList<>());
-        List<kx.c> dead = new LinkedList<>();
+    public kx.c leaseConnection(Server s) throws IOException, K4Exception {
+        ServerPool pool = getPool(s);
+        long start = System.nanoTime();
+        kx.c c = pool.lease();
+        leaseWaitNanos.addAndGet(System.nanoTime() - start);
+        leaseCount.incrementAndGet();
 
-        kx.c c = null;
-        for (kx.c value : list) {
-            if (!value.isClosed()) {
-                c = value;
-                break;
+        if (c != null) {
+            hitCount.incrementAndGet();
+        } else {
+            try {
+                c = pool.create();
+            } catch (RuntimeException e) {
+                pool.release(null);
+                throw e;
             }
-            dead.add(c);
+            if (c == null) {
+                pool.release(null);
+                return null;
+            }
+            pool.leased(c);
         }
 
-        list.removeAll(dead);
+        c.setSpillThreshold(Config.getInstance().getInt(Config.RESPONSE_SPILL_THRESHOLD_MB) * 1024L * 1024L);
+        c.setOffHeapThreshold(Config.getInstance().getInt(Config.OFF_HEAP_VECTOR_THRESHOLD_MB) * 1024L * 1024L);
+        c.setLazyColumnThreshold(Config.getInstance().getInt(Config.LAZY_TABLE_COLUMNS));
+        return c;
+    }
+
+    public void freeConnection(Server s,kx.c c) {
+        if (c == null) return;
+        getPool(s).release(c);
+    }
+
+    // creates a connection which isn't tracked by the pool, e.g. for subscriptions; the caller closes it
+    public kx.c createConnection(Server s) {
+        return getPool(s).create();
+    }
 
-        if (c == null) {
+    // opens a connection in the background, so that the first query to the server doesn't wait for it
+    public void prewarm(Server s) {
+        ServerPool pool = getPool(s);
+        if (!pool.reserveWarmUp()) return;
+        executor.execute(() -> {
+            kx.c c = null;
             try {
-                String mech = s.getAuthenticationMechanism();
+                c = pool.create();
+                if (c != null) c.connect();
+            } catch (IOException | K4Exception | RuntimeException e) {
+                log.info("Failed to pre-warm connection to {}: {}", s.getConnectionString(), e.getMessage());
+                if (c != null) c.close();
+            } finally {
+                pool.warmedUp(c);
+            }
+        });
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (ServerPool pool: pools.values()) {
+            count += pool.evict(now - IDLE_TIMEOUT);
+        }
+        if (count > 0) {
+            evictedCount.addAndGet(count);
+            log.info("Closed {} idle connections; {}", count, getStats());
+        }
+    }
+
+    public Stats getStats() {
+        int open = 0;
+        int busy = 0;
+        for (ServerPool pool: pools.values()) {
+            synchronized (pool) {
+                open += pool.free.size() + pool.busy.size();
+                busy += pool.busy.size();
+            }
+        }
+        return new Stats(leaseCount.get(), hitCount.get(), leaseWaitNanos.get(), evictedCount.get(), open, busy);
+    }
+
+    public static class Stats {
+        private final long leaseCount;
+        private final long hitCount;
+        private final long leaseWaitNanos;
+        private final long evictedCount;
+        private final int openCount;
+        private final int busyCount;
+
+        Stats(long leaseCount, long hitCount, long leaseWaitNanos, long evictedCount, int openCount, int busyCount) {
+            this.leaseCount = leaseCount;
+            this.hitCount = hitCount;
+            this.leaseWaitNanos = leaseWaitNanos;
+            this.evictedCount = evictedCount;
+            this.openCount = openCount;
+            this.busyCount = busyCount;
+        }
+
+        public long getLeaseCount() {
+            return leaseCount;
+        }
+
+        // share of leases which reused an open connection
+        public double getHitRate() {
+            return leaseCount == 0 ? 0 : (double) hitCount / leaseCount;
+        }
+
+        public double getAverageLeaseWaitMillis() {
+            return leaseCount == 0 ? 0 : leaseWaitNanos / 1e6 / leaseCount;
+        }
+
+        public long getEvictedCount() {
+            return evictedCount;
+        }
+
+        public int getOpenCount() {
+            return openCount;
+        }
+
+        public int getBusyCount() {
+            return busyCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("leases: %d, hit rate: %.1f%%, avg wait: %.2f ms, open: %d, busy: %d, evicted: %d",
+                    leaseCount, 100 * getHitRate(), getAverageLeaseWaitMillis(), openCount, busyCount, evictedCount);
+        }
+    }
+
+    static class ServerPool {
+        private final Server server;
+        private final IntSupplier maxSize;
+        // the most recently freed connection is the first one
+        private final Deque<kx.c> free = new ArrayDeque<>();
+        private final Map<kx.c, Long> freeSince = new HashMap<>();
+        private final Set<kx.c> busy = new HashSet<>();
+        // slots taken by connections which are being created
+        private int reserved = 0;
+        private IAuthenticationMechanism authenticationMechanism = null;
+
+        ServerPool(Server server) {
+            this(server, () -> Config.getInstance().getInt(Config.MAX_CONNECTIONS_PER_SERVER));
+        }
+
+        ServerPool(Server server, IntSupplier maxSize) {
+            this.server = server;
+            this.maxSize = maxSize;
+        }
+
+        private int getMaxSize() {
+            return Math.max(1, maxSize.getAsInt());
+        }
+
+        private int size() {
+            return free.size() + busy.size() + reserved;
+        }
+
+        // returns a free connection or null if the caller should create a new one in the reserved slot
+        synchronized kx.c lease() throws IOException {
+            while (true) {
+                while (!free.isEmpty()) {
+                    kx.c c = free.pollFirst();
+                    freeSince.remove(c);
+                    if (c.isAlive()) {
+                        busy.add(c);
+                        return c;
+                    }
+                    c.close();
+                }
+                if (size() < getMaxSize()) {
+                    reserved++;
+                    return null;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a connection to " + server.getConnectionString());
+                }
+            }
+        }
+
+        synchronized void leased(kx.c c) {
+            reserved--;
+            busy.add(c);
+        }
+
+        synchronized void release(kx.c c) {
+            if (c == null) {
+                reserved--;
+            } else if (!busy.remove(c)) {
+                // it was purged
+                c.close();
+            } else if (c.isClosed()) {
+                // drop it
+            } else {
+                free.addFirst(c);
+                freeSince.put(c, System.currentTimeMillis());
+            }
+            notifyAll();
+        }
+
+        synchronized boolean reserveWarmUp() {
+            if (!free.isEmpty() || size() >= getMaxSize()) return false;
+            reserved++;
+            return true;
+        }
+
+        synchronized void warmedUp(kx.c c) {
+            reserved--;
+            if (c != null && c.isAlive()) {
+                free.addFirst(c);
+                freeSince.put(c, System.currentTimeMillis());
+            }
+            notifyAll();
+        }
+
+        synchronized void purge() {
+            for (kx.c c: free) {
+                c.close();
+            }
+            free.clear();
+            freeSince.clear();
+            busy.clear();
+            authenticationMechanism = null;
+            notifyAll();
+        }
+
+        // closes connections which are free since before the time or were closed by the server
+        synchronized int evict(long time) {
+            int count = 0;
+            for (Iterator<kx.c> iterator = free.iterator(); iterator.hasNext(); ) {
+                kx.c c = iterator.next();
+                if (!c.isAlive() || freeSince.get(c) < time) {
+                    c.close();
+                    iterator.remove();
+                    freeSince.remove(c);
+                    count++;
+                }
+            }
+            if (count > 0) notifyAll();
+            return count;
+        }
+
+        private synchronized IAuthenticationMechanism getAuthenticationMechanism() throws InstantiationException, IllegalAccessException {
+            if (authenticationMechanism == null) {
+                String mech = server.getAuthenticationMechanism();
                 Class<?> clazz = AuthenticationManager.getInstance().lookup(mech);
                 if(clazz == null) throw new RuntimeException("Can't find authentication mechanism: "+mech);
-                IAuthenticationMechanism authenticationMechanism = (IAuthenticationMechanism) clazz.newInstance();
+                authenticationMechanism = (IAuthenticationMechanism) clazz.newInstance();
+                authenticationMechanism.setProperties(server.getAsProperties());
+            }
+            return authenticationMechanism;
+        }
 
-                authenticationMechanism.setProperties(s.getAsProperties());
-                Credentials credentials = authenticationMechanism.getCredentials();
+        kx.c create() {
+            kx.c c;
+            try {
+                Credentials credentials = getAuthenticationMechanism().getCredentials();
                 if (credentials.getUsername().length() > 0) {
                     String p = credentials.getPassword();
-                    c = new kx.c(s.getHost(), s.getPort(), credentials.getUsername() + ((p.length() == 0) ? "" : ":" + p), s.getUseTLS());
+                    c = new kx.c(server.getHost(), server.getPort(), credentials.getUsername() + ((p.length() == 0) ? "" : ":" + p), server.getUseTLS());
                 } else {
-                    c = new kx.c(s.getHost(), s.getPort(), "", s.getUseTLS());
+                    c = new kx.c(server.getHost(), server.getPort(), "", server.getUseTLS());
                 }
                 c.setEncoding(Config.getInstance().getEncoding());
             } catch (InstantiationException | IllegalAccessException | IllegalArgumentException ex) {
                 log.error("Failed to initialize connection", ex);
                 return null;
             }
-        } else {
-            list.remove(c);
-        }
-
-        list = busyMap.computeIfAbsent(s, k -> new LinkedList<>());
-        list.add(c);
-
-        return c;
-    }
-
-    public synchronized void freeConnection(Server s,kx.c c) {
-        if (c == null) return;
-
-        List<kx.c> list = busyMap.computeIfAbsent(s, k -> new LinkedList<>());
-
-        // If c not in our busy list it has been purged, so close it
-        if (!list.remove(c))
-            c.close();
-
-        if (!c.isClosed()) {
-            list = freeMap.get(s);
-            if (list == null)
-                c.close();
-            else
-                list.add(c);
+            return c;
         }
     }
 
@@ -1,6 +1,8 @@
 package studio.kdb;
 
 public class DictTableModel extends KTableModel {
+    private static final long serialVersionUID = 1L;
+
     private final K.Dict dict;
 
     private final boolean keyFlip;
@@ -38,6 +40,13 @@ public class DictTableModel extends KTableModel {
         }
     }
 
+    @Override
+    public boolean isColumnLoaded(int col) {
+        boolean keyColumn = col < keyCount;
+        K.KBase obj = keyColumn ? dict.x : dict.y;
+        return !(obj instanceof K.Flip) || LazyColumns.isDecoded((K.Flip) obj, keyColumn ? col : col - keyCount);
+    }
+
     public K.KBaseVector<? extends K.KBase> getColumn(int col) {
         boolean keyColumn = col < keyCount;
         K.KBase obj = keyColumn ? dict.x : dict.y;
@@ -2,6 +2,8 @@ package studio.kdb;
 
 public class FlipTableModel extends KTableModel {
 
+    private static final long serialVersionUID = 1L;
+
     private final K.Flip flip;
 
     public FlipTableModel(K.Flip obj) {
@@ -21,6 +23,11 @@ public class FlipTableModel extends KTableModel {
         return flip.x.at(i).s;
     }
 
+    @Override
+    public boolean isColumnLoaded(int col) {
+        return LazyColumns.isDecoded(flip, col);
+    }
+
     public K.KBaseVector<? extends K.KBase> getColumn(int col) {
         return (K.KBaseVector<? extends K.KBase>) flip.y.at(col);
     }
@@ -3,54 +3,53 @@ package studio.kdb;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.text.DateFormat;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.TimeZone;
 import java.util.UUID;
-import java.util.stream.Stream;
 
 public class K {
-    private final static DecimalFormat nsFormatter = new DecimalFormat("000000000");
-    private final static SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy.MM.dd");
-    private final static SimpleDateFormat dateTimeFormatter =
-        new SimpleDateFormat("yyyy.MM.dd'T'HH:mm:ss.SSS");
-    private final static SimpleDateFormat timestampFormatter =
-        new SimpleDateFormat("yyyy.MM.dd'D'HH:mm:ss.");
-
-
-    static {
-        TimeZone gmtTimeZone = java.util.TimeZone.getTimeZone("GMT");
-        Stream.of(dateFormatter, dateTimeFormatter, timestampFormatter)
-            .forEach(f -> f.setTimeZone(gmtTimeZone));
-    }
-
     private static final String enlist = "enlist ";
     private static final String flip = "flip ";
 
-    public static void write(OutputStream o, byte b) throws IOException {
-        o.write(b);
+    private static Charset getCharset() {
+        return Charset.forName(Config.getInstance().getEncoding());
     }
 
-    public static void write(OutputStream o, short h) throws IOException {
-        write(o, (byte) (h >> 8));
-        write(o, (byte) h);
-    }
-
-    public static void write(OutputStream o, int i) throws IOException {
-        write(o, (short) (i >> 16));
-        write(o, (short) i);
+    // the number of bytes in the encoded string; for UTF-8 it is counted without encoding the string
+    private static int getEncodedLength(String s, Charset charset) {
+        if (!StandardCharsets.UTF_8.equals(charset)) {
+            return s.getBytes(charset).length;
+        }
+        int length = s.length();
+        int count = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) continue;
+            if (c < 0x800) {
+                count++;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                count += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                count += 2;
+            } // unpaired surrogate is encoded as '?'
+        }
+        return count;
     }
 
-    public static void write(OutputStream o, long j) throws IOException {
-        write(o, (int) (j >> 32));
-        write(o, (int) j);
+    // elements of general lists are null for the types which aren't decoded; they are ordered first
+    static int compare(KBase k1, KBase k2) {
+        if (k1 == null || k2 == null) return k1 == null ? (k2 == null ? 0 : -1) : 1;
+        return k1.compareTo(k2);
     }
 
     public abstract static class KBase implements Comparable<KBase> {
@@ -67,11 +66,30 @@ public class K {
         }
 
         public void serialise(OutputStream o) throws IOException {
-            write(o, (byte) type);
-            serialiseData(o);
+            long size = getSerialisedSize();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Object is too large to serialise: " + size + " bytes");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            serialise(buffer);
+            o.write(buffer.array(), 0, buffer.position());
+        }
+
+        // writes the object in IPC format (big-endian) to the buffer, which should have getSerialisedSize() bytes remaining
+        public void serialise(ByteBuffer b) {
+            b.put((byte) type);
+            serialiseData(b);
+        }
+
+        public long getSerialisedSize() {
+            return 1 + getSerialisedDataSize();
+        }
+
+        protected void serialiseData(ByteBuffer b) {
+            throw new IllegalStateException("The method is not implemented");
         }
 
-        protected void serialiseData(OutputStream o) throws IOException {
+        protected long getSerialisedDataSize() {
             throw new IllegalStateException("The method is not implemented");
         }
 
@@ -94,6 +112,43 @@ public class K {
             return builder;
         }
 
+        // Appends at most maxChars chars of the value followed by KFormatContext.ELLIPSIS if the value is longer.
+        // The formatting of lists, dictionaries, tables and vectors stops soon after the limit.
+        public final StringBuilder formatLimited(StringBuilder builder, KFormatContext context, int maxChars) {
+            if (builder == null) {
+                builder = new StringBuilder();
+            }
+            int base = builder.length();
+            format(builder, new KFormatContext(context).setRange(new KFormatContext.Range(builder, 0, maxChars, null)));
+            if (builder.length() - base > maxChars) {
+                builder.setLength(base + maxChars);
+                builder.append(KFormatContext.ELLIPSIS);
+            }
+            return builder;
+        }
+
+        // Appends the chars of the formatted value from start, at most maxChars. The value is formatted from its
+        // start, but only about a chunk of the chars before start is kept at a time.
+        public final StringBuilder formatRange(StringBuilder builder, KFormatContext context, long start, int maxChars) {
+            return formatRange(builder, context, start, maxChars, null);
+        }
+
+        // the same, passing the chars before start to the consumer
+        public final StringBuilder formatRange(StringBuilder builder, KFormatContext context, long start, int maxChars,
+                                               KFormatContext.Range.Consumer consumer) {
+            if (builder == null) {
+                builder = new StringBuilder();
+            }
+            int base = builder.length();
+            KFormatContext.Range range = new KFormatContext.Range(builder, start, start + maxChars, consumer);
+            format(builder, new KFormatContext(context).setRange(range));
+            range.removeBeforeStart(builder);
+            if (builder.length() - base > maxChars) {
+                builder.setLength(base + maxChars);
+            }
+            return builder;
+        }
+
         public int count() {
             return 1;
         }
@@ -103,10 +158,46 @@ public class K {
             return obj.getClass().equals(this.getClass());
         }
 
+        // Values of different types are ordered by type, except that symbols, characters and strings are ordered
+        // by their text. Subclasses order values of the same type by their content.
         @Override
         public int compareTo(KBase o) {
-            return toString(KFormatContext.NO_TYPE).compareTo(o.toString(KFormatContext.NO_TYPE));
+            if (textLength(this) >= 0 && textLength(o) >= 0) {
+                return compareText(this, o);
+            }
+            return Integer.compare(typeRank(this), typeRank(o));
+        }
+    }
+
+    private static int typeRank(KBase k) {
+        return textLength(k) >= 0 ? -11 : k.getType();
+    }
+
+    // the number of chars in a symbol, character or string; -1 for other values
+    private static int textLength(KBase k) {
+        if (k instanceof KSymbol) return ((KSymbol) k).s.length();
+        if (k instanceof KCharacter) return 1;
+        if (k instanceof KCharacterVector) return ((KCharacterVector) k).getLength();
+        return -1;
+    }
+
+    private static char textCharAt(KBase k, int i) {
+        if (k instanceof KSymbol) return ((KSymbol) k).s.charAt(i);
+        if (k instanceof KCharacter) return ((KCharacter) k).c;
+        return ((char[]) ((KCharacterVector) k).array)[i];
+    }
+
+    private static int compareText(KBase k1, KBase k2) {
+        if (k1 instanceof KSymbol && k2 instanceof KSymbol) {
+            return ((KSymbol) k1).s.compareTo(((KSymbol) k2).s);
         }
+        int length1 = textLength(k1);
+        int length2 = textLength(k2);
+        for (int i = 0; i < Math.min(length1, length2); i++) {
+            int res = Character.compare(textCharAt(k1, i), textCharAt(k2, i));
+            if (res != 0) return res;
+        }
+        return Integer.compare(length1, length2);
     }
 
     private abstract static class KByteBase extends KBase implements ToDouble {
@@ -122,8 +213,13 @@ public class K {
         }
 
         @Override
-        protected void serialiseData(OutputStream o) throws IOException {
-            write(o, value);
+        protected void serialiseData(ByteBuffer b) {
+            b.put(value);
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 1;
         }
 
         @Override
@@ -146,7 +242,7 @@ public class K {
 
         @Override
         public int compareTo(KBase o) {
-            if (o instanceof KByteBase) {
+            if (o instanceof KByteBase && o.getType() == getType()) {
                 return Byte.compare(value, ((KByteBase) o).value);
             }
             return super.compareTo(o);
@@ -174,8 +270,13 @@ public class K {
         }
 
         @Override
-        public void serialiseData(OutputStream o) throws IOException {
-            write(o, value);
+        public void serialiseData(ByteBuffer b) {
+            b.putInt(value);
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 4;
         }
 
         @Override
@@ -193,7 +294,7 @@ public class K {
 
         @Override
         public int compareTo(KBase o) {
-            if (o instanceof KIntBase) {
+            if (o instanceof KIntBase && o.getType() == getType()) {
                 return Integer.compare(value, ((KIntBase) o).value);
             }
             return super.compareTo(o);
@@ -221,8 +322,13 @@ public class K {
         }
 
         @Override
-        public void serialiseData(OutputStream o) throws IOException {
-            write(o, value);
+        public void serialiseData(ByteBuffer b) {
+            b.putLong(value);
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 8;
         }
 
         @Override
@@ -240,7 +346,7 @@ public class K {
 
         @Override
         public int compareTo(KBase o) {
-            if (o instanceof KLongBase) {
+            if (o instanceof KLongBase && o.getType() == getType()) {
                 return Long.compare(value, ((KLongBase) o).value);
             }
             return super.compareTo(o);
@@ -264,9 +370,13 @@ public class K {
         }
 
         @Override
-        public void serialiseData(OutputStream o) throws IOException {
-            long j = Double.doubleToLongBits(value);
-            write(o, j);
+        public void serialiseData(ByteBuffer b) {
+            b.putDouble(value);
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 8;
         }
 
         @Override
@@ -285,7 +395,7 @@ public class K {
 
         @Override
         public int compareTo(KBase o) {
-            if (o instanceof KDoubleBase) {
+            if (o instanceof KDoubleBase && o.getType() == getType()) {
                 return Double.compare(value, ((KDoubleBase) o).value);
             }
             return super.compareTo(o);
@@ -302,16 +412,25 @@ public class K {
 
 
         @Override
-        public void serialiseData(OutputStream o) throws IOException {
-            write(o, array.length);
+        public void serialiseData(ByteBuffer b) {
+            b.putInt(array.length);
             for (KBase obj : array) {
-                obj.serialise(o);
+                obj.serialise(b);
             }
         }
 
+        @Override
+        protected long getSerialisedDataSize() {
+            long size = 4;
+            for (KBase obj : array) {
+                size += obj.getSerialisedSize();
+            }
+            return size;
+        }
+
         @Override
         public int hashCode() {
-            return array.length;
+            return Arrays.hashCode(array);
         }
 
         @Override
@@ -321,6 +440,19 @@ public class K {
             }
             return Objects.deepEquals(array, ((KArrayBase) obj).array);
         }
+
+        @Override
+        public int compareTo(KBase o) {
+            if (!(o instanceof KArrayBase) || o.getType() != getType()) {
+                return super.compareTo(o);
+            }
+            KBase[] other = ((KArrayBase) o).array;
+            for (int i = 0; i < Math.min(array.length, other.length); i++) {
+                int res = compare(array[i], other[i]);
+                if (res != 0) return res;
+            }
+            return Integer.compare(array.length, other.length);
+        }
     }
 
     public abstract static class Adverb extends KBase {
@@ -341,12 +473,17 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            return super.format(builder, context).append(obj.toString(context));
+            return obj.format(super.format(builder, context), context);
+        }
+
+        @Override
+        protected void serialiseData(ByteBuffer b) {
+            obj.serialise(b);
         }
 
         @Override
-        protected void serialiseData(OutputStream o) throws IOException {
-            obj.serialise(o);
+        protected long getSerialisedDataSize() {
+            return obj.getSerialisedSize();
         }
 
         @Override
@@ -361,6 +498,14 @@ public class K {
             }
             return this.obj.equals(((Adverb) obj).obj);
         }
+
+        @Override
+        public int compareTo(KBase o) {
+            if (!(o instanceof Adverb) || o.getType() != getType()) {
+                return super.compareTo(o);
+            }
+            return obj.compareTo(((Adverb) o).obj);
+        }
     }
 
     public static class BinaryPrimitive extends Primitive {
@@ -392,6 +537,7 @@ public class K {
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
             builder = super.format(builder, context);
             for (KBase arg : array) {
+                if (context.isLimitReached(builder)) break;
                 arg.format(builder, context);
             }
             return builder;
@@ -483,13 +629,19 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            return super.format(builder, context).append(body);
+            builder = super.format(builder, context);
+            return builder.append(body, 0, Math.min(body.length(), context.charsToLimit(builder)));
         }
 
         @Override
-        protected void serialiseData(OutputStream o) throws IOException {
-            write(o, (byte) 0);
-            new KCharacterVector(body).serialise(o);
+        protected void serialiseData(ByteBuffer b) {
+            b.put((byte) 0);
+            new KCharacterVector(body).serialise(b);
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 1 + new KCharacterVector(body).getSerialisedSize();
         }
 
         @Override
@@ -504,6 +656,14 @@ public class K {
             }
             return body.equals(((Function) obj).body);
         }
+
+        @Override
+        public int compareTo(KBase o) {
+            if (!(o instanceof Function)) {
+                return super.compareTo(o);
+            }
+            return body.compareTo(((Function) o).body);
+        }
     }
 
     public abstract static class Primitive extends KByteBase {
@@ -553,6 +713,7 @@ public class K {
             array[0].format(builder, context);
             builder.append("[");
             for (int i = 1; i < array.length; i++) {
+                if (context.isLimitReached(builder)) return builder;
                 if (i > 1) {
                     builder.append(";");
                 }
@@ -619,8 +780,13 @@ public class K {
         }
 
         @Override
-        protected void serialiseData(OutputStream o) throws IOException {
-            write(o, (byte) (b ? 1 : 0));
+        protected void serialiseData(ByteBuffer buffer) {
+            buffer.put((byte) (b ? 1 : 0));
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 1;
         }
 
         @Override
@@ -686,15 +852,18 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, s);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, short s) {
+            if (s == Short.MIN_VALUE) {
                 builder.append("0N");
             } else if (s == Short.MAX_VALUE) {
                 builder.append("0W");
             } else if (s == -Short.MAX_VALUE) {
                 builder.append("-0W");
             } else {
-                builder.append(context.getNumberFormat().format(s));
+                context.formatNumber(builder, s);
             }
             if (context.showType()) {
                 builder.append("h");
@@ -703,8 +872,13 @@ public class K {
         }
 
         @Override
-        protected void serialiseData(OutputStream o) throws IOException {
-            write(o, s);
+        protected void serialiseData(ByteBuffer b) {
+            b.putShort(s);
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 2;
         }
 
         @Override
@@ -740,15 +914,18 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, value);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, int value) {
+            if (value == Integer.MIN_VALUE) {
                 builder.append("0N");
             } else if (value == Integer.MAX_VALUE) {
                 builder.append("0W");
             } else if (value == -Integer.MAX_VALUE) {
                 builder.append("-0W");
             } else {
-                builder.append(context.getNumberFormat().format(value));
+                context.formatNumber(builder, value);
             }
             if (context.showType()) {
                 builder.append("i");
@@ -787,9 +964,14 @@ public class K {
         }
 
         @Override
-        public void serialiseData(OutputStream o) throws IOException {
-            o.write(s.getBytes(Config.getInstance().getEncoding()));
-            write(o, (byte) 0);
+        public void serialiseData(ByteBuffer b) {
+            b.put(s.getBytes(getCharset()));
+            b.put((byte) 0);
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 1 + getEncodedLength(s, getCharset());
         }
 
         @Override
@@ -817,15 +999,18 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, value);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, long value) {
+            if (value == Long.MIN_VALUE) {
                 builder.append("0N");
             } else if (value == Long.MAX_VALUE) {
                 builder.append("0W");
             } else if (value == -Long.MAX_VALUE) {
                 builder.append("-0W");
             } else {
-                builder.append(context.getNumberFormat().format(value));
+                context.formatNumber(builder, value);
             }
             return builder;
         }
@@ -859,8 +1044,13 @@ public class K {
         }
 
         @Override
-        public void serialiseData(OutputStream o) throws IOException {
-            write(o, (byte) c);
+        public void serialiseData(ByteBuffer b) {
+            b.put((byte) c);
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 1;
         }
 
         @Override
@@ -899,15 +1089,18 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, f);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, float f) {
+            if (Float.isNaN(f)) {
                 builder.append("0N");
             } else if (f == Float.POSITIVE_INFINITY) {
                 builder.append("0w");
             } else if (f == Float.NEGATIVE_INFINITY) {
                 builder.append("-0w");
             } else {
-                builder.append(context.getNumberFormat().format(f));
+                context.formatNumber(builder, f);
             }
             if (context.showType()) {
                 builder.append("e");
@@ -916,9 +1109,13 @@ public class K {
         }
 
         @Override
-        public void serialiseData(OutputStream o) throws IOException {
-            int i = Float.floatToIntBits(f);
-            write(o, i);
+        public void serialiseData(ByteBuffer b) {
+            b.putFloat(f);
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 4;
         }
 
         @Override
@@ -954,27 +1151,24 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, value);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, double value) {
+            if (Double.isNaN(value)) {
                 builder.append("0n");
             } else if (value == Double.POSITIVE_INFINITY) {
                 builder.append("0w");
             } else if (value == Double.NEGATIVE_INFINITY) {
                 builder.append("-0w");
             } else {
-                builder.append(context.getNumberFormat().format(value));
+                context.formatNumber(builder, value);
             }
             if (context.showType()) {
                 builder.append("f");
             }
             return builder;
         }
-
-        @Override
-        public void serialiseData(OutputStream o) throws IOException {
-            long j = Double.doubleToLongBits(value);
-            write(o, j);
-        }
     }
 
     public static class KDate extends KIntBase {
@@ -992,20 +1186,27 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, value);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, int value) {
+            if (value == Integer.MIN_VALUE) {
                 builder.append("0Nd");
             } else if (value == Integer.MAX_VALUE) {
                 builder.append("0Wd");
             } else if (value == -Integer.MAX_VALUE) {
                 builder.append("-0Wd");
             } else {
-                builder.append(dateFormatter.format(toDate()));
+                formatDate(builder, value);
             }
             return builder;
         }
 
         public Date toDate() {
+            return toDate(value);
+        }
+
+        static Date toDate(int value) {
             return new Date(86400000L * (value + 10957));
         }
 
@@ -1017,7 +1218,9 @@ public class K {
             } else if (value == -Integer.MAX_VALUE) {
                 return "-0W";
             } else {
-                return DEFAULT_DATE_FORMAT.format(toDate());
+                synchronized (DEFAULT_DATE_FORMAT) {
+                    return DEFAULT_DATE_FORMAT.format(toDate());
+                }
             }
         }
     }
@@ -1046,10 +1249,14 @@ public class K {
         }
 
         @Override
-        protected void serialiseData(OutputStream o) throws IOException {
-            write(o, uuid.getMostSignificantBits());
-            write(o, uuid.getLeastSignificantBits());
+        protected void serialiseData(ByteBuffer b) {
+            b.putLong(uuid.getMostSignificantBits());
+            b.putLong(uuid.getLeastSignificantBits());
+        }
 
+        @Override
+        protected long getSerialisedDataSize() {
+            return 16;
         }
 
         @Override
@@ -1064,6 +1271,18 @@ public class K {
             }
             return uuid.equals(((KGuid) obj).uuid);
         }
+
+        // the same order as of the string representation
+        @Override
+        public int compareTo(KBase o) {
+            if (!(o instanceof KGuid)) {
+                return super.compareTo(o);
+            }
+            UUID other = ((KGuid) o).uuid;
+            int res = Long.compareUnsigned(uuid.getMostSignificantBits(), other.getMostSignificantBits());
+            if (res != 0) return res;
+            return Long.compareUnsigned(uuid.getLeastSignificantBits(), other.getLeastSignificantBits());
+        }
     }
 
     public static class KTime extends KIntBase {
@@ -1077,8 +1296,11 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, value);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, int value) {
+            if (value == Integer.MIN_VALUE) {
                 builder.append("0Nt");
             } else if (value == Integer.MAX_VALUE) {
                 builder.append("0Wt");
@@ -1094,8 +1316,10 @@ public class K {
                 int s = v / 1000 % 60;
                 int m = v / 60000 % 60;
                 int h = v / 3600000;
-                builder.append(i2(h)).append(":").append(i2(m)).append(":").append(i2(s))
-                    .append(".").append(i3(ms));
+                pad(builder, h, 2).append(":");
+                pad(builder, m, 2).append(":");
+                pad(builder, s, 2).append(".");
+                pad(builder, ms, 3);
             }
             return builder;
         }
@@ -1116,20 +1340,31 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, value);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, double value) {
+            if (Double.isNaN(value)) {
                 builder.append("0Nz");
             } else if (value == Double.POSITIVE_INFINITY) {
                 builder.append("0wz");
             } else if (value == Double.NEGATIVE_INFINITY) {
                 builder.append("-0wz");
             } else {
-                builder.append(dateTimeFormatter.format(toTimestamp()));
+                // the same rounding as of toTimestamp()
+                long ms = (long) (.5 + 8.64e7 * (value + 10957)) - 86400000L * 10957;
+                formatDate(builder, Math.floorDiv(ms, 86400000L)).append("T");
+                formatTime(builder, Math.floorMod(ms, 86400000L) * 1000000).append(".");
+                pad(builder, Math.floorMod(ms, 1000L), 3);
             }
             return builder;
         }
 
         public Timestamp toTimestamp() {
+            return toTimestamp(value);
+        }
+
+        static Timestamp toTimestamp(double value) {
             return new Timestamp(((long) (.5 + 8.64e7 * (value + 10957))));
         }
     }
@@ -1146,22 +1381,30 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, value);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, long value) {
+            if (value == Long.MIN_VALUE) {
                 builder.append("0Np");
             } else if (value == Long.MAX_VALUE) {
                 builder.append("0Wp");
             } else if (value == -Long.MAX_VALUE) {
                 builder.append("-0Wp");
             } else {
-                Timestamp ts = toTimestamp();
-                builder.append(timestampFormatter.format(ts))
-                    .append(nsFormatter.format(ts.getNanos()));
+                formatDate(builder, Math.floorDiv(value, NANOS_PER_DAY)).append("D");
+                long nanos = Math.floorMod(value, NANOS_PER_DAY);
+                formatTime(builder, nanos).append(".");
+                pad(builder, nanos % 1000000000L, 9);
             }
             return builder;
         }
 
         public Timestamp toTimestamp() {
+            return toTimestamp(value);
+        }
+
+        static Timestamp toTimestamp(long value) {
             long k = 86400000L * 10957;
             long n = 1000000000L;
             long d = value < 0 ? (value + 1) / n - 1 : value / n;
@@ -1211,15 +1454,21 @@ public class K {
                 builder.append(")");
             }
             builder.append("!");
+            if (context.isLimitReached(builder)) return builder;
             y.format(builder, context);
             return builder;
         }
 
         @Override
-        public void serialise(OutputStream o) throws IOException {
-            write(o, (byte) (attr == 1 ? 127 : 99));
-            x.serialise(o);
-            y.serialise(o);
+        public void serialise(ByteBuffer b) {
+            b.put((byte) (attr == 1 ? 127 : 99));
+            x.serialise(b);
+            y.serialise(b);
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return x.getSerialisedSize() + y.getSerialisedSize();
         }
 
         @Override
@@ -1235,6 +1484,19 @@ public class K {
             Dict dict = (Dict) obj;
             return x.equals(dict.x) && y.equals(dict.y) && attr == dict.attr;
         }
+
+        @Override
+        public int compareTo(KBase o) {
+            if (!(o instanceof Dict)) {
+                return super.compareTo(o);
+            }
+            Dict dict = (Dict) o;
+            int res = x.compareTo(dict.x);
+            if (res != 0) return res;
+            res = y.compareTo(dict.y);
+            if (res != 0) return res;
+            return Byte.compare(attr, dict.attr);
+        }
     }
 
     abstract private static class FlipBase extends KBase {
@@ -1258,9 +1520,14 @@ public class K {
         }
 
         @Override
-        protected void serialiseData(OutputStream o) throws IOException {
-            write(o, (byte) 0);
-            new Dict(getX(), getY()).serialise(o);
+        protected void serialiseData(ByteBuffer b) {
+            b.put((byte) 0);
+            new Dict(getX(), getY()).serialise(b);
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 1 + new Dict(getX(), getY()).getSerialisedSize();
         }
 
         @Override
@@ -1276,6 +1543,17 @@ public class K {
             FlipBase flip = (FlipBase) obj;
             return getX().equals(flip.getX()) && getY().equals(flip.getY());
         }
+
+        @Override
+        public int compareTo(KBase o) {
+            if (!(o instanceof FlipBase)) {
+                return super.compareTo(o);
+            }
+            FlipBase flip = (FlipBase) o;
+            int res = getX().compareTo(flip.getX());
+            if (res != 0) return res;
+            return getY().compareTo(flip.getY());
+        }
     }
 
     public static class Flip extends FlipBase {
@@ -1335,8 +1613,11 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, value);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, int value) {
+            if (value == Integer.MIN_VALUE) {
                 builder.append("0N");
             } else if (value == Integer.MAX_VALUE) {
                 builder.append("0W");
@@ -1345,8 +1626,9 @@ public class K {
             } else {
                 int m = value + 24000, y = m / 12;
 
-                builder.append(i2(y / 100)).append(i2(y % 100))
-                    .append(".").append(i2(1 + m % 12));
+                pad(builder, y / 100, 2);
+                pad(builder, y % 100, 2).append(".");
+                pad(builder, 1 + m % 12, 2);
             }
             if (context.showType()) {
                 builder.append("m");
@@ -1375,8 +1657,11 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, value);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, int value) {
+            if (value == Integer.MIN_VALUE) {
                 builder.append("0Nu");
             } else if (value == Integer.MAX_VALUE) {
                 builder.append("0Wu");
@@ -1384,8 +1669,9 @@ public class K {
                 builder.append("-0Wu");
             } else {
                 int v = Math.abs(value);
-                builder.append(value<0 ? "-" : "")
-                        .append(i2(v / 60)).append(":").append(i2(v % 60));
+                builder.append(value<0 ? "-" : "");
+                pad(builder, v / 60, 2).append(":");
+                pad(builder, v % 60, 2);
             }
             return builder;
         }
@@ -1410,8 +1696,11 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, value);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, int value) {
+            if (value == Integer.MIN_VALUE) {
                 builder.append("0Nv");
             } else if (value == Integer.MAX_VALUE) {
                 builder.append("0Wv");
@@ -1422,8 +1711,10 @@ public class K {
                 int s = v % 60;
                 int m = v / 60 % 60;
                 int h = v / 3600;
-                builder.append(value<0 ? "-" : "")
-                        .append(i2(h)).append(":").append(i2(m)).append(":").append(i2(s));
+                builder.append(value<0 ? "-" : "");
+                pad(builder, h, 2).append(":");
+                pad(builder, m, 2).append(":");
+                pad(builder, s, 2);
             }
             return builder;
         }
@@ -1448,8 +1739,11 @@ public class K {
 
         @Override
         public StringBuilder format(StringBuilder builder, KFormatContext context) {
-            builder = super.format(builder, context);
-            if (isNull()) {
+            return format(super.format(builder, context), context, value);
+        }
+
+        static StringBuilder format(StringBuilder builder, KFormatContext context, long value) {
+            if (value == Long.MIN_VALUE) {
                 builder.append("0Nn");
             } else if (value == Long.MAX_VALUE) {
                 builder.append("0Wn");
@@ -1465,10 +1759,8 @@ public class K {
                 if (d != 0) {
                     builder.append(d).append("D");
                 }
-                builder.append(i2((int) ((jj % 86400000000000L) / 3600000000000L)))
-                    .append(":").append(i2((int) ((jj % 3600000000000L) / 60000000000L)))
-                    .append(":").append(i2((int) ((jj % 60000000000L) / 1000000000L)))
-                    .append(".").append(nsFormatter.format((int) (jj % 1000000000L)));
+                formatTime(builder, jj % NANOS_PER_DAY).append(".");
+                pad(builder, jj % 1000000000L, 9);
             }
             return builder;
         }
@@ -1478,15 +1770,46 @@ public class K {
         }
     }
 
-    private static java.text.DecimalFormat i2Formatter = new java.text.DecimalFormat("00");
-    private static java.text.DecimalFormat i3Formatter = new java.text.DecimalFormat("000");
+    private final static long NANOS_PER_DAY = 86400000000000L;
+
+    // Temporal values are formatted with integer arithmetic, so that the formatting is thread-safe and
+    // doesn't create Date objects. Dates are in the proleptic Gregorian calendar, as in q.
+
+    // appends the value with at least digits digits
+    private static StringBuilder pad(StringBuilder builder, long value, int digits) {
+        if (value < 0) {
+            builder.append('-');
+            value = -value;
+        }
+        for (long power = 10; digits > 1; digits--, power *= 10) {
+            if (value < power) builder.append('0');
+        }
+        return builder.append(value);
+    }
 
-    private static String i2(int i) {
-        return i2Formatter.format(i);
+    // yyyy.MM.dd of the day from 2000.01.01
+    private static StringBuilder formatDate(StringBuilder builder, long days) {
+        // days from 0000.03.01, so that the leap day is the last day of a year
+        long z = days + 10957 + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        pad(builder, year, 4).append(".");
+        pad(builder, month, 2).append(".");
+        return pad(builder, day, 2);
     }
 
-    private static String i3(int i) {
-        return i3Formatter.format(i);
+    // HH:mm:ss of the nanoseconds from the start of a day
+    private static StringBuilder formatTime(StringBuilder builder, long nanos) {
+        long s = nanos / 1000000000L;
+        pad(builder, s / 3600, 2).append(":");
+        pad(builder, s / 60 % 60, 2).append(":");
+        return pad(builder, s % 60, 2);
     }
 
     public static abstract class KBaseVector<E extends KBase> extends KBase {
@@ -1497,15 +1820,41 @@ public class K {
         private final String typeChar;
 
         protected KBaseVector(Object array, int type, String typeName, String typeChar) {
+            this(array, array instanceof OffHeapArray ? ((OffHeapArray) array).getLength() : Array.getLength(array),
+                    type, typeName, typeChar);
+        }
+
+        // for vectors which array isn't one element per item
+        protected KBaseVector(Object array, int length, int type, String typeName, String typeChar) {
             super(type);
             this.array = array;
-            this.length = Array.getLength(array);
+            this.length = length;
             this.typeName = typeName;
             this.typeChar = typeChar;
         }
 
         public abstract E at(int i);
 
+        // Accessors of the element which don't create a K object for it. The defaults go through at();
+        // vectors of primitive types read the array directly.
+        public boolean isNull(int i) {
+            return at(i).isNull();
+        }
+
+        public long getLong(int i) {
+            throw new UnsupportedOperationException(getDataType() + " doesn't have integral values");
+        }
+
+        public double getDouble(int i) {
+            E value = at(i);
+            if (value instanceof ToDouble) return ((ToDouble) value).toDouble();
+            throw new UnsupportedOperationException(getDataType() + " doesn't have numeric values");
+        }
+
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return at(i).format(builder, context);
+        }
+
         public byte getAttr() {
             return attr;
         }
@@ -1524,10 +1873,40 @@ public class K {
             return length;
         }
 
+        // an OffHeapArray for vectors which values are kept off-heap
         public Object getArray() {
             return array;
         }
 
+        public boolean isOffHeap() {
+            return array instanceof OffHeapArray;
+        }
+
+        // values of the vectors which can be kept off-heap
+        protected final byte byteAt(int i) {
+            return array instanceof byte[] ? ((byte[]) array)[i] : ((OffHeapArray) array).getByte(i);
+        }
+
+        protected final short shortAt(int i) {
+            return array instanceof short[] ? ((short[]) array)[i] : ((OffHeapArray) array).getShort(i);
+        }
+
+        protected final int intAt(int i) {
+            return array instanceof int[] ? ((int[]) array)[i] : ((OffHeapArray) array).getInt(i);
+        }
+
+        protected final long longAt(int i) {
+            return array instanceof long[] ? ((long[]) array)[i] : ((OffHeapArray) array).getLong(i);
+        }
+
+        protected final float floatAt(int i) {
+            return array instanceof float[] ? ((float[]) array)[i] : ((OffHeapArray) array).getFloat(i);
+        }
+
+        protected final double doubleAt(int i) {
+            return array instanceof double[] ? ((double[]) array)[i] : ((OffHeapArray) array).getDouble(i);
+        }
+
         private final static String[] sAttr = new String[] {"", "`s#", "`u#", "`p#", "`g#"};
 
         //default implementation
@@ -1541,10 +1920,11 @@ public class K {
                 KFormatContext childContext =
                     context.showType() ? new KFormatContext(context).setShowType(false) : context;
                 for (int i = 0; i < getLength(); i++) {
+                    if (context.isLimitReached(builder)) return builder;
                     if (i > 0) {
                         builder.append(" ");
                     }
-                    at(i).format(builder, childContext);
+                    formatTo(i, builder, childContext);
                 }
                 if (context.showType()) {
                     builder.append(typeChar);
@@ -1563,17 +1943,124 @@ public class K {
         }
 
         @Override
-        public void serialiseData(OutputStream o) throws IOException {
-            write(o, attr);
-            write(o, length);
+        public void serialiseData(ByteBuffer b) {
+            b.put(attr);
+            b.putInt(length);
+            int position = b.position();
+            if (array instanceof byte[]) {
+                b.put((byte[]) array);
+            } else if (array instanceof short[]) {
+                b.asShortBuffer().put((short[]) array);
+                b.position(position + 2 * length);
+            } else if (array instanceof int[]) {
+                b.asIntBuffer().put((int[]) array);
+                b.position(position + 4 * length);
+            } else if (array instanceof long[]) {
+                b.asLongBuffer().put((long[]) array);
+                b.position(position + 8 * length);
+            } else if (array instanceof float[]) {
+                b.asFloatBuffer().put((float[]) array);
+                b.position(position + 4 * length);
+            } else if (array instanceof double[]) {
+                b.asDoubleBuffer().put((double[]) array);
+                b.position(position + 8 * length);
+            } else if (array instanceof OffHeapArray) {
+                ((OffHeapArray) array).writeTo(b);
+            } else {
+                for (int index = 0; index < length; index++) {
+                    at(index).serialiseData(b);
+                }
+            }
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            long size = 5;
+            if (array instanceof byte[]) {
+                return size + length;
+            } else if (array instanceof short[]) {
+                return size + 2L * length;
+            } else if (array instanceof int[] || array instanceof float[]) {
+                return size + 4L * length;
+            } else if (array instanceof long[] || array instanceof double[]) {
+                return size + 8L * length;
+            } else if (array instanceof OffHeapArray) {
+                return size + ((OffHeapArray) array).getSize();
+            }
             for (int index = 0; index < length; index++) {
-                at(index).serialiseData(o);
+                size += at(index).getSerialisedDataSize();
             }
+            return size;
         }
 
+        // the hash of the values, which is the same for vectors kept off-heap, encoded or decoded on first access
         @Override
         public int hashCode() {
-            return length * getType();
+            int hash = getType();
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + hashAt(i);
+            }
+            return hash;
+        }
+
+        private int hashAt(int i) {
+            switch (getType()) {
+                case 0:
+                    return Objects.hashCode(at(i));
+                case 2:
+                    KGuidVector guids = (KGuidVector) this;
+                    return 31 * Long.hashCode(guids.getMostSignificantBits(i)) +
+                            Long.hashCode(guids.getLeastSignificantBits(i));
+                case 8:
+                case 9:
+                case 15:
+                    return Double.hashCode(getDouble(i));
+                case 10:
+                    return ((char[]) array)[i];
+                case 11:
+                    return ((KSymbolVector) this).getString(i).hashCode();
+                default:
+                    return Long.hashCode(getLong(i));
+            }
+        }
+
+        // compares the i-th value with the j-th value of a vector of the same type without creating K objects
+        private int compareAt(int i, KBaseVector<? extends KBase> vector, int j) {
+            switch (getType()) {
+                case 0:
+                    return compare(at(i), vector.at(j));
+                case 2:
+                    KGuidVector guids1 = (KGuidVector) this;
+                    KGuidVector guids2 = (KGuidVector) vector;
+                    int res = Long.compareUnsigned(guids1.getMostSignificantBits(i), guids2.getMostSignificantBits(j));
+                    if (res != 0) return res;
+                    return Long.compareUnsigned(guids1.getLeastSignificantBits(i), guids2.getLeastSignificantBits(j));
+                case 8:
+                case 9:
+                case 15:
+                    return Double.compare(getDouble(i), vector.getDouble(j));
+                case 10:
+                    return Character.compare(((char[]) array)[i], ((char[]) vector.array)[j]);
+                case 11:
+                    return ((KSymbolVector) this).getString(i).compareTo(((KSymbolVector) vector).getString(j));
+                default:
+                    return Long.compare(getLong(i), vector.getLong(j));
+            }
+        }
+
+        // vectors of the same type are ordered by values, then by length
+        @Override
+        public int compareTo(KBase o) {
+            if (!(o instanceof KBaseVector) || o.getType() != getType()) {
+                return super.compareTo(o);
+            }
+            KBaseVector<? extends KBase> vector = (KBaseVector<? extends KBase>) o;
+            for (int i = 0; i < Math.min(length, vector.length); i++) {
+                int res = compareAt(i, vector, i);
+                if (res != 0) return res;
+            }
+            if (length != vector.length) return Integer.compare(length, vector.length);
+            return Byte.compare(attr, vector.attr);
         }
 
         @Override
@@ -1582,7 +2069,14 @@ public class K {
                 return false;
             }
             KBaseVector<? extends KBase> vector = (KBaseVector<? extends KBase>) obj;
-            return Objects.deepEquals(array, vector.array) && attr == vector.attr;
+            if (length != vector.length || attr != vector.attr) return false;
+            if (isOffHeap() || vector.isOffHeap()) {
+                for (int i = 0; i < length; i++) {
+                    if (!at(i).equals(vector.at(i))) return false;
+                }
+                return true;
+            }
+            return Objects.deepEquals(getArray(), vector.getArray());
         }
     }
 
@@ -1595,8 +2089,32 @@ public class K {
             super(array, 5, "short", "h");
         }
 
+        public KShortVector(OffHeapArray array) {
+            super(array, 5, "short", "h");
+        }
+
         public KShort at(int i) {
-            return new KShort(Array.getShort(array, i));
+            return new KShort(shortAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return shortAt(i) == Short.MIN_VALUE;
+        }
+
+        @Override
+        public long getLong(int i) {
+            return shortAt(i);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return shortAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return KShort.format(builder, context, shortAt(i));
         }
     }
 
@@ -1609,22 +2127,54 @@ public class K {
             super(array, 6, "int", "i");
         }
 
-        public KInteger at(int i) {
-            return new KInteger(Array.getInt(array, i));
+        public KIntVector(OffHeapArray array) {
+            super(array, 6, "int", "i");
         }
-    }
 
-    public static class KList extends KBaseVector<KBase> {
-        public String getDataType() {
-            return "List";
+        public KInteger at(int i) {
+            return new KInteger(intAt(i));
         }
 
-        public KList(KBase... array) {
-            super(array, 0, "", "");
+        @Override
+        public boolean isNull(int i) {
+            return intAt(i) == Integer.MIN_VALUE;
         }
 
-        public KBase at(int i) {
-            return (KBase) Array.get(array, i);
+        @Override
+        public long getLong(int i) {
+            return intAt(i);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return intAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return KInteger.format(builder, context, intAt(i));
+        }
+    }
+
+    public static class KList extends KBaseVector<KBase> {
+        public String getDataType() {
+            return "List";
+        }
+
+        public KList(KBase... array) {
+            super(array, 0, "", "");
+        }
+
+        public KBase at(int i) {
+            return ((KBase[]) array)[i];
+        }
+
+        // lists which are decoded on first access are equal to decoded ones
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof KList)) return false;
+            KList list = (KList) obj;
+            return getAttr() == list.getAttr() && Objects.deepEquals(getArray(), list.getArray());
         }
 
         @Override
@@ -1635,6 +2185,7 @@ public class K {
                 builder.append("(");
             }
             for (int i = 0; i < getLength(); i++) {
+                if (context.isLimitReached(builder)) return builder;
                 if (i > 0) {
                     builder.append(";");
                 }
@@ -1647,13 +2198,22 @@ public class K {
         }
 
         @Override
-        public void serialiseData(OutputStream o) throws IOException {
+        public void serialiseData(ByteBuffer b) {
             int length = getLength();
-            write(o, (byte) 0);
-            write(o, length);
+            b.put((byte) 0);
+            b.putInt(length);
             for (int index = 0; index < length; index++) {
-                at(index).serialise(o);
+                at(index).serialise(b);
+            }
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            long size = 5;
+            for (int index = 0; index < getLength(); index++) {
+                size += at(index).getSerialisedSize();
             }
+            return size;
         }
     }
 
@@ -1666,8 +2226,27 @@ public class K {
             super(array, 9, "float", "f");
         }
 
+        public KDoubleVector(OffHeapArray array) {
+            super(array, 9, "float", "f");
+        }
+
         public KDouble at(int i) {
-            return new KDouble(Array.getDouble(array, i));
+            return new KDouble(doubleAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return Double.isNaN(doubleAt(i));
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return doubleAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return KDouble.format(builder, context, doubleAt(i));
         }
     }
 
@@ -1680,8 +2259,27 @@ public class K {
             super(array, 8, "real", "e");
         }
 
+        public KFloatVector(OffHeapArray array) {
+            super(array, 8, "real", "e");
+        }
+
         public KFloat at(int i) {
-            return new KFloat(Array.getFloat(array, i));
+            return new KFloat(floatAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return Float.isNaN(floatAt(i));
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return floatAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return KFloat.format(builder, context, floatAt(i));
         }
 
     }
@@ -1695,8 +2293,32 @@ public class K {
             super(array, 7, "long", "");
         }
 
+        public KLongVector(OffHeapArray array) {
+            super(array, 7, "long", "");
+        }
+
         public KLong at(int i) {
-            return new KLong(Array.getLong(array, i));
+            return new KLong(longAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return longAt(i) == Long.MIN_VALUE;
+        }
+
+        @Override
+        public long getLong(int i) {
+            return longAt(i);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return longAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return KLong.format(builder, context, longAt(i));
         }
     }
 
@@ -1709,8 +2331,32 @@ public class K {
             super(array, 13, "month", "m");
         }
 
+        public KMonthVector(OffHeapArray array) {
+            super(array, 13, "month", "m");
+        }
+
         public Month at(int i) {
-            return new Month(Array.getInt(array, i));
+            return new Month(intAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return intAt(i) == Integer.MIN_VALUE;
+        }
+
+        @Override
+        public long getLong(int i) {
+            return intAt(i);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return intAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return Month.format(builder, context, intAt(i));
         }
     }
 
@@ -1723,8 +2369,32 @@ public class K {
             super(array, 14, "date", "");
         }
 
+        public KDateVector(OffHeapArray array) {
+            super(array, 14, "date", "");
+        }
+
         public KDate at(int i) {
-            return new KDate(Array.getInt(array, i));
+            return new KDate(intAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return intAt(i) == Integer.MIN_VALUE;
+        }
+
+        @Override
+        public long getLong(int i) {
+            return intAt(i);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return intAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return KDate.format(builder, context, intAt(i));
         }
     }
 
@@ -1734,11 +2404,81 @@ public class K {
         }
 
         public KGuidVector(UUID... array) {
-            super(array, 2, "guid", "");
+            this(toBits(array));
+        }
+
+        // the most and least significant bits of the i-th guid are at 2i and 2i+1
+        public KGuidVector(long[] bits) {
+            super(bits, bits.length / 2, 2, "guid", "");
+        }
+
+        // the same layout as above in big endian
+        public KGuidVector(OffHeapArray bits) {
+            super(bits, bits.getLength() / 2, 2, "guid", "");
+        }
+
+        private static long[] toBits(UUID[] array) {
+            long[] bits = new long[2 * array.length];
+            for (int i = 0; i < array.length; i++) {
+                bits[2 * i] = array[i].getMostSignificantBits();
+                bits[2 * i + 1] = array[i].getLeastSignificantBits();
+            }
+            return bits;
+        }
+
+        public long getMostSignificantBits(int i) {
+            return longAt(2 * i);
+        }
+
+        public long getLeastSignificantBits(int i) {
+            return longAt(2 * i + 1);
         }
 
         public KGuid at(int i) {
-            return new KGuid((UUID) Array.get(array, i));
+            if (isNull(i)) return new KGuid(KGuid.nuuid);
+            return new KGuid(new UUID(getMostSignificantBits(i), getLeastSignificantBits(i)));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return getMostSignificantBits(i) == 0 && getLeastSignificantBits(i) == 0;
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            long msb = getMostSignificantBits(i);
+            long lsb = getLeastSignificantBits(i);
+            // the same as UUID.toString()
+            appendHex(builder, msb >>> 32, 8).append('-');
+            appendHex(builder, msb >>> 16, 4).append('-');
+            appendHex(builder, msb, 4).append('-');
+            appendHex(builder, lsb >>> 48, 4).append('-');
+            return appendHex(builder, lsb, 12);
+        }
+
+        private static StringBuilder appendHex(StringBuilder builder, long value, int digits) {
+            for (int shift = 4 * (digits - 1); shift >= 0; shift -= 4) {
+                builder.append(Character.forDigit((int) (value >>> shift) & 0xf, 16));
+            }
+            return builder;
+        }
+
+        @Override
+        public void serialiseData(ByteBuffer b) {
+            b.put(getAttr());
+            b.putInt(getLength());
+            if (array instanceof OffHeapArray) {
+                ((OffHeapArray) array).writeTo(b);
+                return;
+            }
+            int position = b.position();
+            b.asLongBuffer().put((long[]) array);
+            b.position(position + 16 * getLength());
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 5 + 16L * getLength();
         }
     }
 
@@ -1751,8 +2491,32 @@ public class K {
             super(array, 17, "minute", "");
         }
 
+        public KMinuteVector(OffHeapArray array) {
+            super(array, 17, "minute", "");
+        }
+
         public Minute at(int i) {
-            return new Minute(Array.getInt(array, i));
+            return new Minute(intAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return intAt(i) == Integer.MIN_VALUE;
+        }
+
+        @Override
+        public long getLong(int i) {
+            return intAt(i);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return intAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return Minute.format(builder, context, intAt(i));
         }
     }
 
@@ -1765,8 +2529,27 @@ public class K {
             super(array, 15, "datetime", "");
         }
 
+        public KDatetimeVector(OffHeapArray array) {
+            super(array, 15, "datetime", "");
+        }
+
         public KDatetime at(int i) {
-            return new KDatetime(Array.getDouble(array, i));
+            return new KDatetime(doubleAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return Double.isNaN(doubleAt(i));
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return doubleAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return KDatetime.format(builder, context, doubleAt(i));
         }
     }
 
@@ -1779,8 +2562,32 @@ public class K {
             super(array, 12, "timestamp", "");
         }
 
+        public KTimestampVector(OffHeapArray array) {
+            super(array, 12, "timestamp", "");
+        }
+
         public KTimestamp at(int i) {
-            return new KTimestamp(Array.getLong(array, i));
+            return new KTimestamp(longAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return longAt(i) == Long.MIN_VALUE;
+        }
+
+        @Override
+        public long getLong(int i) {
+            return longAt(i);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return longAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return KTimestamp.format(builder, context, longAt(i));
         }
     }
 
@@ -1793,8 +2600,32 @@ public class K {
             super(array, 16, "timespan", "");
         }
 
+        public KTimespanVector(OffHeapArray array) {
+            super(array, 16, "timespan", "");
+        }
+
         public KTimespan at(int i) {
-            return new KTimespan(Array.getLong(array, i));
+            return new KTimespan(longAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return longAt(i) == Long.MIN_VALUE;
+        }
+
+        @Override
+        public long getLong(int i) {
+            return longAt(i);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return longAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return KTimespan.format(builder, context, longAt(i));
         }
     }
 
@@ -1807,8 +2638,32 @@ public class K {
             super(array, 18, "second", "");
         }
 
+        public KSecondVector(OffHeapArray array) {
+            super(array, 18, "second", "");
+        }
+
         public Second at(int i) {
-            return new Second(Array.getInt(array, i));
+            return new Second(intAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return intAt(i) == Integer.MIN_VALUE;
+        }
+
+        @Override
+        public long getLong(int i) {
+            return intAt(i);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return intAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return Second.format(builder, context, intAt(i));
         }
     }
 
@@ -1821,8 +2676,32 @@ public class K {
             super(array, 19, "time", "");
         }
 
+        public KTimeVector(OffHeapArray array) {
+            super(array, 19, "time", "");
+        }
+
         public KTime at(int i) {
-            return new KTime(Array.getInt(array, i));
+            return new KTime(intAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return intAt(i) == Integer.MIN_VALUE;
+        }
+
+        @Override
+        public long getLong(int i) {
+            return intAt(i);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return intAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return KTime.format(builder, context, intAt(i));
         }
     }
 
@@ -1832,11 +2711,49 @@ public class K {
         }
 
         public KBooleanVector(boolean... array) {
-            super(array, 1, "boolean", "b");
+            this(toBits(array), array.length);
+        }
+
+        // the i-th value is the bit i % 64 of bits[i / 64]; the bits after length must be 0
+        public KBooleanVector(long[] bits, int length) {
+            super(bits, length, 1, "boolean", "b");
+        }
+
+        private static long[] toBits(boolean[] array) {
+            long[] bits = new long[(array.length + 63) / 64];
+            for (int i = 0; i < array.length; i++) {
+                if (array[i]) bits[i >>> 6] |= 1L << i;
+            }
+            return bits;
+        }
+
+        public boolean get(int i) {
+            if (i < 0 || i >= getLength()) throw new ArrayIndexOutOfBoundsException(i);
+            return (((long[]) array)[i >>> 6] & (1L << i)) != 0;
         }
 
         public KBoolean at(int i) {
-            return new KBoolean(Array.getBoolean(array, i));
+            return new KBoolean(get(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return false;
+        }
+
+        @Override
+        public long getLong(int i) {
+            return get(i) ? 1 : 0;
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return getLong(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            return builder.append(get(i) ? "1" : "0").append(context.showType() ? "b" : "");
         }
 
         @Override
@@ -1847,13 +2764,28 @@ public class K {
                 if (getLength() == 1) {
                     builder.append(enlist);
                 }
-                for (int i = 0; i < getLength(); i++) {
-                    builder.append(Array.getBoolean(array, i) ? "1" : "0");
+                int count = Math.min(getLength(), context.charsToLimit(builder));
+                for (int i = 0; i < count; i++) {
+                    builder.append(get(i) ? '1' : '0');
                 }
                 builder.append("b");
             }
             return builder;
         }
+
+        @Override
+        public void serialiseData(ByteBuffer b) {
+            b.put(getAttr());
+            b.putInt(getLength());
+            for (int i = 0; i < getLength(); i++) {
+                b.put((byte) (get(i) ? 1 : 0));
+            }
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 5 + getLength();
+        }
     }
 
     public static class KByteVector extends KBaseVector<KByte> {
@@ -1865,8 +2797,35 @@ public class K {
             super(array, 4, "byte", "x");
         }
 
+        public KByteVector(OffHeapArray array) {
+            super(array, 4, "byte", "x");
+        }
+
         public KByte at(int i) {
-            return new KByte(Array.getByte(array, i));
+            return new KByte(byteAt(i));
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return false;
+        }
+
+        @Override
+        public long getLong(int i) {
+            return byteAt(i);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return byteAt(i);
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            byte value = byteAt(i);
+            return builder.append("0x")
+                .append(Character.forDigit((value >> 4) & 0xf, 16))
+                .append(Character.forDigit(value & 0xf, 16));
         }
 
         @Override
@@ -1879,7 +2838,8 @@ public class K {
                 }
                 builder.append("0x");
                 for (int i = 0; i < getLength(); i++) {
-                    byte b = Array.getByte(array, i);
+                    if (context.isLimitReached(builder)) return builder;
+                    byte b = byteAt(i);
                     builder.append(Integer.toHexString((b >> 4) & 0xf))
                         .append(Integer.toHexString(b & 0xf));
                 }
@@ -1893,12 +2853,94 @@ public class K {
             return "Symbol Vector";
         }
 
+        // distinct symbols of a dictionary-encoded vector which array then holds codes of the symbols; otherwise null
+        private final String[] symbols;
+
         public KSymbolVector(String... array) {
             super(array, 11, "symbol", "s");
+            symbols = null;
+        }
+
+        public KSymbolVector(int[] codes, String[] symbols) {
+            super(codes, 11, "symbol", "s");
+            this.symbols = symbols;
+        }
+
+        public boolean isEncoded() {
+            return symbols != null;
+        }
+
+        // codes index getSymbols() of an encoded vector
+        public int getCode(int i) {
+            return ((int[]) array)[i];
+        }
+
+        public String[] getSymbols() {
+            return symbols;
         }
 
         public KSymbol at(int i) {
-            return new KSymbol((String) Array.get(array, i));
+            return new KSymbol(getString(i));
+        }
+
+        public String getString(int i) {
+            if (symbols != null) return symbols[((int[]) array)[i]];
+            return ((String[]) array)[i];
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return getString(i).length() == 0;
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            if (context.showType()) {
+                builder.append("`");
+            }
+            return builder.append(getString(i));
+        }
+
+        @Override
+        public void serialiseData(ByteBuffer b) {
+            Charset charset = getCharset();
+            b.put(getAttr());
+            b.putInt(getLength());
+            if (symbols != null) {
+                byte[][] bytes = new byte[symbols.length][];
+                for (int code = 0; code < symbols.length; code++) {
+                    bytes[code] = symbols[code].getBytes(charset);
+                }
+                for (int code : (int[]) array) {
+                    b.put(bytes[code]);
+                    b.put((byte) 0);
+                }
+                return;
+            }
+            for (String s : (String[]) array) {
+                b.put(s.getBytes(charset));
+                b.put((byte) 0);
+            }
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            Charset charset = getCharset();
+            long size = 5 + getLength();
+            if (symbols != null) {
+                int[] lengths = new int[symbols.length];
+                for (int code = 0; code < symbols.length; code++) {
+                    lengths[code] = getEncodedLength(symbols[code], charset);
+                }
+                for (int code : (int[]) array) {
+                    size += lengths[code];
+                }
+                return size;
+            }
+            for (String s : (String[]) array) {
+                size += getEncodedLength(s, charset);
+            }
+            return size;
         }
 
         @Override
@@ -1910,11 +2952,27 @@ public class K {
                     builder.append(enlist);
                 }
                 for (int i = 0; i < getLength(); i++) {
-                    builder.append("`").append(Array.get(array, i));
+                    if (context.isLimitReached(builder)) return builder;
+                    builder.append("`").append(getString(i));
                 }
             }
             return builder;
         }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (symbols == null && !(obj instanceof KSymbolVector && ((KSymbolVector) obj).isEncoded())) {
+                return super.equals(obj);
+            }
+            if (!(obj instanceof KSymbolVector)) return false;
+            KSymbolVector vector = (KSymbolVector) obj;
+            if (getLength() != vector.getLength() || getAttr() != vector.getAttr()) return false;
+            for (int i = 0; i < getLength(); i++) {
+                if (!getString(i).equals(vector.getString(i))) return false;
+            }
+            return true;
+        }
+
     }
 
     public static class KCharacterVector extends KBaseVector<KCharacter> {
@@ -1927,7 +2985,21 @@ public class K {
         }
 
         public KCharacter at(int i) {
-            return new KCharacter(Array.getChar(array, i));
+            return new KCharacter(((char[]) array)[i]);
+        }
+
+        @Override
+        public boolean isNull(int i) {
+            return ((char[]) array)[i] == ' ';
+        }
+
+        @Override
+        public StringBuilder formatTo(int i, StringBuilder builder, KFormatContext context) {
+            char c = ((char[]) array)[i];
+            if (context.showType()) {
+                return builder.append("\"").append(c).append("\"");
+            }
+            return builder.append(c);
         }
 
         public String getString() {
@@ -1937,7 +3009,7 @@ public class K {
         @Override
         protected StringBuilder formatVector(StringBuilder builder, KFormatContext context) {
             if (getLength() == 1) {
-                char ch = Array.getChar(array, 0);
+                char ch = ((char[]) array)[0];
                 if (ch <= 255) {
                     builder.append(enlist);
                 }
@@ -1946,7 +3018,7 @@ public class K {
             if (context.showType()) {
                 builder.append("\"");
             }
-            builder.append(getString());
+            builder.append((char[]) array, 0, Math.min(getLength(), context.charsToLimit(builder)));
             if (context.showType()) {
                 builder.append("\"");
             }
@@ -1954,11 +3026,16 @@ public class K {
         }
 
         @Override
-        public void serialiseData(OutputStream o) throws IOException {
-            write(o, getAttr());
-            byte[] b = getString().getBytes(Config.getInstance().getEncoding());
-            write(o, b.length);
-            o.write(b);
+        public void serialiseData(ByteBuffer b) {
+            b.put(getAttr());
+            byte[] bytes = getString().getBytes(getCharset());
+            b.putInt(bytes.length);
+            b.put(bytes);
+        }
+
+        @Override
+        protected long getSerialisedDataSize() {
+            return 5 + getEncodedLength(getString(), getCharset());
         }
     }
 }
@@ -5,22 +5,48 @@ import java.text.NumberFormat;
 
 public class KFormatContext {
 
+    // used for doubles which can't be rounded exactly with longs; access is synchronized on the format
     private final static NumberFormat RAW_FORMAT = new DecimalFormat("#.#######");
     private final static NumberFormat COMMA_FORMAT = new DecimalFormat("#,###.#######");
 
+    private final static long[] POWERS_OF_TEN = new long[19];
+    // doubles are rounded with longs up to this many fraction digits and below MAX_SCALED after scaling
+    private final static int MAX_SCALED_DIGITS = 15;
+    private final static double MAX_SCALED = 1e15;
+
+    private static volatile int maxFractionDigits;
+
     static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i - 1];
+        }
         setMaxFractionDigits(Config.getInstance().getInt(Config.MAX_FRACTION_DIGITS));
     }
 
+    // appended to values which are cut at the max number of chars
+    public final static String ELLIPSIS = " ...";
+
     private boolean showType;
     private boolean showThousandsComma;
+    // the part of the text which is formatted; null for the whole text
+    private Range range = null;
 
     public final static KFormatContext DEFAULT = new KFormatContext();
     public final static KFormatContext NO_TYPE = new KFormatContext(false, false);
 
     public static void setMaxFractionDigits(int maxFractionDigits) {
-        RAW_FORMAT.setMaximumFractionDigits(maxFractionDigits);
-        COMMA_FORMAT.setMaximumFractionDigits(maxFractionDigits);
+        synchronized (RAW_FORMAT) {
+            RAW_FORMAT.setMaximumFractionDigits(maxFractionDigits);
+        }
+        synchronized (COMMA_FORMAT) {
+            COMMA_FORMAT.setMaximumFractionDigits(maxFractionDigits);
+        }
+        KFormatContext.maxFractionDigits = maxFractionDigits;
+    }
+
+    public static int getMaxFractionDigits() {
+        return maxFractionDigits;
     }
 
     public KFormatContext(boolean showType, boolean showThousandsComma) {
@@ -30,14 +56,152 @@ public class KFormatContext {
 
     public KFormatContext(KFormatContext formatContext) {
         this(formatContext.showType, formatContext.showThousandsComma);
+        range = formatContext.range;
     }
 
     public KFormatContext() {
         this(true, false);
     }
 
-    public NumberFormat getNumberFormat() {
-        return showThousandsComma ? COMMA_FORMAT : RAW_FORMAT;
+    // Numbers are formatted as by DecimalFormat("#,###.#######") with the max fraction digits, or without the
+    // thousands comma. The methods can be called from any thread.
+    public StringBuilder formatNumber(StringBuilder builder, long value) {
+        if (value < 0) {
+            builder.append('-');
+        } else {
+            // digits of a non-positive value, so that Long.MIN_VALUE is negated too
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10) {
+            digits++;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            builder.append((char) ('0' - value / POWERS_OF_TEN[i] % 10));
+            if (showThousandsComma && i > 0 && i % 3 == 0) {
+                builder.append(',');
+            }
+        }
+        return builder;
+    }
+
+    public StringBuilder formatNumber(StringBuilder builder, double value) {
+        int fractionDigits = maxFractionDigits;
+        if (fractionDigits > MAX_SCALED_DIGITS) {
+            return formatDecimal(builder, value);
+        }
+        double scaled = Math.abs(value) * POWERS_OF_TEN[fractionDigits];
+        double rounded = Math.rint(scaled);
+        // DecimalFormat rounds half-even by the exact value, which is ambiguous close to the half
+        if (!(scaled < MAX_SCALED) ||
+                Math.abs(Math.abs(scaled - rounded) - 0.5) <= 4 * Math.ulp(scaled)) {
+            return formatDecimal(builder, value);
+        }
+        long units = (long) rounded;
+        long power = POWERS_OF_TEN[fractionDigits];
+        // the sign is kept for negative values which are rounded to 0
+        if (value < 0 || Double.doubleToRawLongBits(value) == Long.MIN_VALUE) {
+            builder.append('-');
+        }
+        formatNumber(builder, units / power);
+        long fraction = units % power;
+        if (fraction != 0) {
+            int digits = fractionDigits;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            builder.append('.');
+            for (long p = POWERS_OF_TEN[digits - 1]; p > fraction; p /= 10) {
+                builder.append('0');
+            }
+            builder.append(fraction);
+        }
+        return builder;
+    }
+
+    private StringBuilder formatDecimal(StringBuilder builder, double value) {
+        NumberFormat format = showThousandsComma ? COMMA_FORMAT : RAW_FORMAT;
+        synchronized (format) {
+            return builder.append(format.format(value));
+        }
+    }
+
+    public KFormatContext setRange(Range range) {
+        this.range = range;
+        return this;
+    }
+
+    // Called between the elements of a value: true if nothing appended to the builder would be shown.
+    // The chars before the start of the range are removed from the builder meanwhile.
+    public boolean isLimitReached(StringBuilder builder) {
+        return range != null && range.isEndReached(builder);
+    }
+
+    // the number of chars after which the builder is past the end of the range
+    public int charsToLimit(StringBuilder builder) {
+        return range == null ? Integer.MAX_VALUE : range.charsToEnd(builder);
+    }
+
+    /**
+     * The part of the formatted text from start to end; the text is appended to the builder after its length
+     * at the creation of the range. Between the elements of a value the chars before start are removed from the builder
+     * in chunks, and passed to the consumer, so that any part of a huge value is formatted in little memory.
+     * The formatting stops soon after the text passes end.
+     */
+    public static class Range {
+        private final static int CHUNK = 1 << 16;
+
+        public interface Consumer {
+            // the chars of the builder from start to end follow the chars passed before; false stops the formatting
+            boolean accept(StringBuilder builder, int start, int end);
+        }
+
+        private final int base;
+        private final long start;
+        private final long end;
+        private final Consumer consumer;
+        private long removed = 0;
+        private boolean stopped = false;
+
+        public Range(StringBuilder builder, long start, long end, Consumer consumer) {
+            this.base = builder.length();
+            this.start = start;
+            this.end = end;
+            this.consumer = consumer;
+        }
+
+        // the position in the text of the end of the builder
+        public long getPosition(StringBuilder builder) {
+            return removed + builder.length() - base;
+        }
+
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        private boolean isEndReached(StringBuilder builder) {
+            if (stopped || getPosition(builder) > end) return true;
+            if (Math.min(builder.length() - base, start - removed) >= CHUNK) {
+                removeBeforeStart(builder);
+            }
+            return stopped;
+        }
+
+        private int charsToEnd(StringBuilder builder) {
+            return (int) Math.max(0, Math.min(Integer.MAX_VALUE, end + 1 - getPosition(builder)));
+        }
+
+        // removes the chars before start which are still in the builder
+        public void removeBeforeStart(StringBuilder builder) {
+            int count = (int) Math.min(builder.length() - base, start - removed);
+            if (count <= 0) return;
+            if (consumer != null && !consumer.accept(builder, base, base + count)) {
+                stopped = true;
+            }
+            builder.delete(base, base + count);
+            removed += count;
+        }
     }
 
     public boolean showType() {
@@ -1,9 +1,20 @@
 package studio.kdb;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.swing.*;
 import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 public abstract class KTableModel extends AbstractTableModel {
 
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LogManager.getLogger();
+
     public abstract boolean isKey(int column);
     public abstract K.KBaseVector<? extends K.KBase> getColumn(int col);
     public abstract String getColumnName(int col) ;
@@ -30,22 +41,33 @@ public abstract class KTableModel extends AbstractTableModel {
     }
 
     protected int[] index;
+    // the original order when there are no sort columns
     protected boolean ascSorted;
-    protected int sortedByColumn;
+    // sort columns by priority
+    protected int[] sortColumns;
+    protected boolean[] sortAsc;
+    // sort in background; accessed on the EDT
+    private Sorter.Progress sorting = null;
+    private int sortingColumn = -1;
+    // formatted cells for the few formats in use, e.g. for painting and for copying
+    private final CellTextCache[] cellTexts = new CellTextCache[3];
+    private int nextCellTexts = 0;
 
     protected KTableModel(int rowCount) {
-        index = new int[rowCount];
+        index = identity(rowCount, true);
         ascSorted = true;
-        initIndex();
+        sortColumns = new int[0];
+        sortAsc = new boolean[0];
     }
 
-    private void initIndex() {
-        int k = ascSorted ? 1 : -1;
-        int b = ascSorted ? 0 : index.length - 1;
-        for (int i = 0; i< index.length; i++) {
+    private static int[] identity(int count, boolean asc) {
+        int[] index = new int[count];
+        int k = asc ? 1 : -1;
+        int b = asc ? 0 : count - 1;
+        for (int i = 0; i < count; i++) {
             index[i] = b + k*i;
         }
-        sortedByColumn = -1;
+        return index;
     }
 
     public int[] getIndex() {
@@ -53,37 +75,180 @@ public abstract class KTableModel extends AbstractTableModel {
     }
 
     public void sort(int col) {
-        if (sortedByColumn == col) {
-            if (ascSorted) {
-                ascSorted = false;
-            } else {
-                ascSorted = true;
-                col = -1;
+        sort(col, false);
+    }
+
+    /**
+     * Clicking on a column cycles through ascending, descending and no sorting by it. With addToSort the column
+     * is added to the current sort columns as the one with the lowest priority; otherwise it replaces them.
+     * The column -1 restores the original order.
+     */
+    public void sort(int col, boolean addToSort) {
+        cancelSort();
+        SortOrder order = nextOrder(col, addToSort);
+        setIndex(order, order.newIndex(null));
+    }
+
+    /**
+     * The same as sort(col, addToSort), but sorts on the fork-join pool. The index is replaced and the table is
+     * updated on the EDT when the sort is done. A sort which is already in progress is cancelled instead.
+     */
+    public void sortInBackground(int col, boolean addToSort) {
+        if (sorting != null) {
+            cancelSort();
+            return;
+        }
+        SortOrder order = nextOrder(col, addToSort);
+        Sorter.Progress progress = new Sorter.Progress();
+        sorting = progress;
+        sortingColumn = col;
+        ForkJoinPool.commonPool().execute(() -> {
+            try {
+                int[] newIndex = order.newIndex(progress);
+                SwingUtilities.invokeLater(() -> {
+                    if (sorting != progress) return;
+                    sorting = null;
+                    setIndex(order, newIndex);
+                });
+            } catch (CancellationException e) {
+                // the sort was cancelled
+            } catch (RuntimeException e) {
+                log.error("Failed to sort by column {}", col, e);
+                SwingUtilities.invokeLater(() -> {
+                    if (sorting == progress) sorting = null;
+                });
             }
-        } else {
-            ascSorted = true;
+        });
+    }
+
+    public void cancelSort() {
+        if (sorting == null) return;
+        sorting.cancel();
+        sorting = null;
+    }
+
+    public boolean isSorting() {
+        return sorting != null;
+    }
+
+    // fraction of the sort by the column which is done or -1 if the column isn't being sorted
+    public double getSortProgress(int column) {
+        Sorter.Progress progress = sorting;
+        if (progress == null || sortingColumn != column) return -1;
+        return progress.getFraction();
+    }
+
+    private int findSortColumn(int column) {
+        for (int i = 0; i < sortColumns.length; i++) {
+            if (sortColumns[i] == column) return i;
         }
+        return -1;
+    }
+
+    private SortOrder nextOrder(int col, boolean addToSort) {
         if (col == -1) {
-            initIndex();
-        } else {
-            K.KBaseVector<? extends K.KBase> array = getColumn(col);
-            if (sortedByColumn == col) {
-                index = Sorter.reverse(array, index);
-            } else {
-                index = Sorter.sort(array, index);
-            }
+            return new SortOrder(new int[0], new boolean[0], sortColumns.length > 0 || !ascSorted, index);
         }
-        sortedByColumn = col;
 
+        int pos = findSortColumn(col);
+        if (!addToSort) {
+            if (pos == -1 || sortColumns.length > 1) return new SortOrder(new int[] {col}, new boolean[] {true}, true, index);
+            if (sortAsc[0]) return new SortOrder(new int[] {col}, new boolean[] {false}, true, index);
+            return new SortOrder(new int[0], new boolean[0], true, index);
+        }
+
+        if (pos == -1) {
+            int[] columns = Arrays.copyOf(sortColumns, sortColumns.length + 1);
+            boolean[] asc = Arrays.copyOf(sortAsc, sortAsc.length + 1);
+            columns[sortColumns.length] = col;
+            asc[sortAsc.length] = true;
+            return new SortOrder(columns, asc, true, index);
+        }
+        if (sortAsc[pos]) {
+            boolean[] asc = sortAsc.clone();
+            asc[pos] = false;
+            return new SortOrder(sortColumns.clone(), asc, true, index);
+        }
+        int[] columns = new int[sortColumns.length - 1];
+        boolean[] asc = new boolean[sortAsc.length - 1];
+        System.arraycopy(sortColumns, 0, columns, 0, pos);
+        System.arraycopy(sortColumns, pos + 1, columns, pos, columns.length - pos);
+        System.arraycopy(sortAsc, 0, asc, 0, pos);
+        System.arraycopy(sortAsc, pos + 1, asc, pos, asc.length - pos);
+        return new SortOrder(columns, asc, true, index);
+    }
+
+    private void setIndex(SortOrder order, int[] newIndex) {
+        index = newIndex;
+        sortColumns = order.columns;
+        sortAsc = order.asc;
+        ascSorted = order.ascOriginal;
         fireTableDataChanged();
     }
 
+    // the index of rows from 0 to rowCount - 1 in the current sort order
+    protected int[] sortedIndex(int rowCount) {
+        return new SortOrder(sortColumns, sortAsc, ascSorted, identity(rowCount, true)).newIndex(null);
+    }
+
+    private class SortOrder {
+        private final int[] columns;
+        private final boolean[] asc;
+        private final boolean ascOriginal;
+        // captured on the EDT, so that the sort in background doesn't touch the fields of the model
+        private final K.KBaseVector<? extends K.KBase>[] arrays;
+        private final int[] currentIndex;
+        // the descending order by the column is the reversed current ascending one
+        private final boolean reverse;
+
+        SortOrder(int[] columns, boolean[] asc, boolean ascOriginal, int[] currentIndex) {
+            this.columns = columns;
+            this.asc = asc;
+            this.ascOriginal = ascOriginal;
+            this.currentIndex = currentIndex;
+            arrays = new K.KBaseVector<?>[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                arrays[i] = getColumn(columns[i]);
+            }
+            reverse = currentIndex == index && columns.length == 1 && !asc[0] &&
+                    sortColumns.length == 1 && sortColumns[0] == columns[0] && sortAsc[0];
+        }
+
+        int[] newIndex(Sorter.Progress progress) {
+            if (columns.length == 0) return identity(currentIndex.length, ascOriginal);
+            if (reverse) return Sorter.reverse(arrays[0], currentIndex);
+            if (columns.length == 1 && asc[0]) {
+                if (progress == null) return Sorter.sort(arrays[0], currentIndex);
+                return Sorter.parallelSort(arrays[0], currentIndex, progress);
+            }
+            return Sorter.sort(arrays, asc, currentIndex, progress == null ? new Sorter.Progress() : progress);
+        }
+    }
+
     public boolean isSortedAsc(int column) {
-        return ascSorted && sortedByColumn == column;
+        if (column == -1) return sortColumns.length == 0 && ascSorted;
+        int pos = findSortColumn(column);
+        return pos != -1 && sortAsc[pos];
     }
 
     public boolean isSortedDesc(int column) {
-        return !ascSorted && sortedByColumn == column;
+        if (column == -1) return sortColumns.length == 0 && !ascSorted;
+        int pos = findSortColumn(column);
+        return pos != -1 && !sortAsc[pos];
+    }
+
+    // from 1 for the column with the highest priority; 0 if the table isn't sorted by the column
+    public int getSortPriority(int column) {
+        return findSortColumn(column) + 1;
+    }
+
+    public int getSortColumnCount() {
+        return sortColumns.length;
+    }
+
+    // false if the column is decoded on first access by getColumn() and wasn't accessed yet
+    public boolean isColumnLoaded(int col) {
+        return true;
     }
 
     public Class getColumnClass(int col) {
@@ -96,6 +261,22 @@ public abstract class KTableModel extends AbstractTableModel {
         return v.at(row);
     }
 
+    // the formatted cell at the row in the current order; vectors in lists are formatted with the type if
+    // the context shows it. The text is cut at maxChars unless it is 0
+    public String getCellText(int row, int col, KFormatContext context, int maxChars) {
+        return getCellTexts(context, maxChars).get(this, col, index[row]);
+    }
+
+    private CellTextCache getCellTexts(KFormatContext context, int maxChars) {
+        for (CellTextCache cache : cellTexts) {
+            if (cache != null && cache.matches(context, maxChars)) return cache;
+        }
+        CellTextCache cache = new CellTextCache(context, maxChars);
+        cellTexts[nextCellTexts] = cache;
+        nextCellTexts = (nextCellTexts + 1) % cellTexts.length;
+        return cache;
+    }
+
     public int getRowCount() {
         return getColumn(0).getLength();
     }
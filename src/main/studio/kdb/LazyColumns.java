@@ -0,0 +1,81 @@
+package studio.kdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Columns of a wide table which are decoded on first access. The columns which are not decoded yet are kept
+ * in one buffer of raw IPC bytes; the buffer is released once every column is decoded or release() is called,
+ * e.g. when the tab with the table is closed.
+ */
+public class LazyColumns extends K.KList {
+
+    public interface Decoder {
+        K.KBase decode(byte[] raw, int offset, int length) throws IOException;
+    }
+
+    private final Decoder decoder;
+    // column i is in raw from offsets[i] to offsets[i + 1]
+    private final int[] offsets;
+    private byte[] raw;
+    private int pending;
+
+    // columns which are null are decoded from raw
+    public LazyColumns(K.KBase[] columns, byte[] raw, int[] offsets, Decoder decoder) {
+        super(columns);
+        this.raw = raw;
+        this.offsets = offsets;
+        this.decoder = decoder;
+        for (K.KBase column : columns) {
+            if (column == null) pending++;
+        }
+        if (pending == 0) this.raw = null;
+    }
+
+    @Override
+    public synchronized K.KBase at(int i) {
+        K.KBase[] columns = (K.KBase[]) array;
+        if (columns[i] != null) return columns[i];
+        if (raw == null) throw new IllegalStateException("Columns of the table were released");
+        try {
+            columns[i] = decoder.decode(raw, offsets[i], offsets[i + 1] - offsets[i]);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't decode column " + i, e);
+        }
+        if (--pending == 0) raw = null;
+        return columns[i];
+    }
+
+    public synchronized boolean isDecoded(int i) {
+        return ((K.KBase[]) array)[i] != null;
+    }
+
+    // false if the i-th column of the table is decoded on first access and wasn't accessed yet
+    public static boolean isDecoded(K.Flip table, int i) {
+        return !(table.y instanceof LazyColumns) || ((LazyColumns) table.y).isDecoded(i);
+    }
+
+    @Override
+    public Object getArray() {
+        for (int i = 0; i < getLength(); i++) {
+            at(i);
+        }
+        return array;
+    }
+
+    // drops the columns which were not decoded yet
+    public synchronized void release() {
+        raw = null;
+    }
+
+    // releases lazy columns of tables in the result
+    public static void release(K.KBase result) {
+        if (result instanceof K.Flip) {
+            K.KBase columns = ((K.Flip) result).y;
+            if (columns instanceof LazyColumns) ((LazyColumns) columns).release();
+        } else if (result instanceof K.Dict) {
+            release(((K.Dict) result).x);
+            release(((K.Dict) result).y);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package studio.kdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Values of a fixed width which are kept in a memory-mapped temporary file instead of the heap, so that very large
+ * vectors don't inflate the old generation. The file is mapped in chunks of 1 GB, as a buffer can't be larger than 2 GB.
+ * Reads don't change the state of the buffers and can be done from several threads.
+ */
+public class OffHeapArray {
+
+    private final static int CHUNK_SHIFT = 30;
+    private final static int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private final ByteBuffer[] chunks;
+    private final int length;
+    private final int width;
+    private final ByteOrder order;
+
+    // allocates length values of width bytes in the byte order; width must be a power of 2
+    public static OffHeapArray allocate(int length, int width, ByteOrder order) throws IOException {
+        long size = (long) length * width;
+        ByteBuffer[] chunks = new ByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+        File file = File.createTempFile("studio", ".vector");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            for (int k = 0; k < chunks.length; k++) {
+                long position = (long) k << CHUNK_SHIFT;
+                long chunkSize = Math.min(size - position, 1L << CHUNK_SHIFT);
+                chunks[k] = channel.map(FileChannel.MapMode.READ_WRITE, position, chunkSize).order(order);
+            }
+        } finally {
+            // the mapping outlives the file; on some platforms the file can't be deleted until the mapping
+            // is garbage collected, deleteOnExit() takes care of it then
+            if (!file.delete()) file.deleteOnExit();
+        }
+        return new OffHeapArray(chunks, length, width, order);
+    }
+
+    private OffHeapArray(ByteBuffer[] chunks, int length, int width, ByteOrder order) {
+        this.chunks = chunks;
+        this.length = length;
+        this.width = width;
+        this.order = order;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public long getSize() {
+        return (long) length * width;
+    }
+
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    // a buffer over the k-th chunk from its start, e.g. to fill it
+    public ByteBuffer getChunk(int k) {
+        ByteBuffer chunk = chunks[k].duplicate().order(order);
+        chunk.clear();
+        return chunk;
+    }
+
+    private ByteBuffer chunk(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)];
+    }
+
+    public byte getByte(int i) {
+        return chunk(i).get(i & CHUNK_MASK);
+    }
+
+    public short getShort(int i) {
+        long position = (long) i << 1;
+        return chunk(position).getShort((int) position & CHUNK_MASK);
+    }
+
+    public int getInt(int i) {
+        long position = (long) i << 2;
+        return chunk(position).getInt((int) position & CHUNK_MASK);
+    }
+
+    public long getLong(int i) {
+        long position = (long) i << 3;
+        return chunk(position).getLong((int) position & CHUNK_MASK);
+    }
+
+    public float getFloat(int i) {
+        return Float.intBitsToFloat(getInt(i));
+    }
+
+    public double getDouble(int i) {
+        return Double.longBitsToDouble(getLong(i));
+    }
+
+    // writes the values in the byte order of b
+    public void writeTo(ByteBuffer b) {
+        if (width == 1 || b.order() == order) {
+            for (int k = 0; k < chunks.length; k++) {
+                b.put(getChunk(k));
+            }
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            if (width == 2) b.putShort(getShort(i));
+            else if (width == 4) b.putInt(getInt(i));
+            else b.putLong(getLong(i));
+        }
+    }
+}
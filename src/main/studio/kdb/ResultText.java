@@ -0,0 +1,124 @@
+package studio.kdb;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Formatted text of a result which can be too large to be kept as a string. Each call formats the result
+ * from its start but keeps only a chunk of the text at a time, so calls can be slow for huge results and
+ * should be made in the background. The methods can be called from any thread. The variants with a cancel
+ * check throw CancellationException soon after it returns true.
+ */
+public class ResultText {
+
+    private final K.KBase value;
+    private final KFormatContext context;
+    private volatile long length = -1;
+
+    public ResultText(K.KBase value, KFormatContext context) {
+        this.value = value;
+        this.context = new KFormatContext(context).setRange(null);
+    }
+
+    // at most maxChars chars from start; fewer at the end of the text
+    public String getText(long start, int maxChars) {
+        return getText(start, maxChars, () -> false);
+    }
+
+    public String getText(long start, int maxChars, BooleanSupplier cancelled) {
+        String text = value.formatRange(null, context, start, maxChars, cancellable(null, cancelled)).toString();
+        checkCancelled(cancelled);
+        return text;
+    }
+
+    public long getLength() {
+        return getLength(() -> false);
+    }
+
+    public long getLength(BooleanSupplier cancelled) {
+        if (length < 0) {
+            StringBuilder builder = new StringBuilder();
+            KFormatContext.Range range = new KFormatContext.Range(builder, Long.MAX_VALUE, Long.MAX_VALUE,
+                    cancellable(null, cancelled));
+            value.format(builder, new KFormatContext(context).setRange(range));
+            checkCancelled(cancelled);
+            length = range.getPosition(builder);
+        }
+        return length;
+    }
+
+    // the position of the first occurrence of the text at or after from; -1 if there is none
+    public long indexOf(String text, boolean matchCase, long from) {
+        return indexOf(text, matchCase, from, () -> false);
+    }
+
+    public long indexOf(String text, boolean matchCase, long from, BooleanSupplier cancelled) {
+        Finder finder = new Finder(text, matchCase, Math.max(0, from));
+        StringBuilder builder = new StringBuilder();
+        KFormatContext.Range range = new KFormatContext.Range(builder, Long.MAX_VALUE, Long.MAX_VALUE,
+                cancellable(finder, cancelled));
+        value.format(builder, new KFormatContext(context).setRange(range));
+        if (!range.isStopped()) {
+            range.removeBeforeStart(builder);
+        }
+        checkCancelled(cancelled);
+        return finder.position;
+    }
+
+    // stops the formatting at the next chunk once cancelled
+    private static KFormatContext.Range.Consumer cancellable(KFormatContext.Range.Consumer consumer, BooleanSupplier cancelled) {
+        return (builder, start, end) -> !cancelled.getAsBoolean() && (consumer == null || consumer.accept(builder, start, end));
+    }
+
+    private static void checkCancelled(BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) throw new CancellationException("Formatting of the result was cancelled");
+    }
+
+    private static class Finder implements KFormatContext.Range.Consumer {
+        private final String text;
+        private final boolean matchCase;
+        private final long from;
+        // the end of the text passed so far, which may contain the start of an occurrence
+        private final StringBuilder window = new StringBuilder();
+        private long windowStart = 0;
+        private long position = -1;
+
+        Finder(String text, boolean matchCase, long from) {
+            this.text = text;
+            this.matchCase = matchCase;
+            this.from = from;
+        }
+
+        @Override
+        public boolean accept(StringBuilder builder, int start, int end) {
+            window.append(builder, start, end);
+            int n = text.length();
+            for (int i = (int) Math.max(0, from - windowStart); i <= window.length() - n; i++) {
+                if (matches(i)) {
+                    position = windowStart + i;
+                    return false;
+                }
+            }
+            int count = window.length() - Math.max(0, n - 1);
+            if (count > 0) {
+                window.delete(0, count);
+                windowStart += count;
+            }
+            return true;
+        }
+
+        private boolean matches(int offset) {
+            for (int i = 0; i < text.length(); i++) {
+                char c1 = window.charAt(offset + i);
+                char c2 = text.charAt(i);
+                if (c1 == c2) continue;
+                if (matchCase) return false;
+                // the same as in String.regionMatches()
+                char u1 = Character.toUpperCase(c1);
+                char u2 = Character.toUpperCase(c2);
+                if (u1 != u2 && Character.toLowerCase(u1) != Character.toLowerCase(u2)) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -1,39 +1,176 @@
 package studio.kdb;
 
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Stable sort of table rows by a column. The rows are ordered by origIndex among equal values.
+ * Numeric and temporal columns are sorted with LSD radix sort over primitive keys, symbols by their rank;
+ * other columns fall back to a merge sort with K.KBase.compareTo(). The order is the one of compareTo():
+ * nulls of integral types go first, NaN goes last.
+ */
 public class Sorter {
 
-    public static int[] sort(K.KBaseVector<? extends K.KBase> array, int[] origIndex) {
-        Integer[] index = new Integer[array.getLength()];
-        for (int i=0; i<index.length; i++) {
-            index[i] = i;
+    // below this size merge sort uses insertion sort
+    private final static int INSERTION_SORT_THRESHOLD = 16;
+    // smaller inputs are sorted in one chunk
+    private final static int PARALLEL_THRESHOLD = 1 << 17;
+
+    private interface IndexComparator {
+        int compare(int i1, int i2);
+    }
+
+    /**
+     * Sort in progress. The sort stops with CancellationException soon after cancel() is called.
+     */
+    public static class Progress {
+        private volatile boolean cancelled = false;
+        private final AtomicLong done = new AtomicLong();
+        private volatile long total = 1;
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        // from 0 to 1
+        public double getFraction() {
+            return Math.min(1.0, (double) done.get() / total);
+        }
+
+        private void checkCancelled() {
+            if (cancelled) throw new CancellationException();
+        }
+    }
+
+    /**
+     * The same as sort(array, origIndex), but sorts large inputs in chunks on the fork-join pool
+     * and merges the sorted chunks.
+     */
+    public static int[] parallelSort(K.KBaseVector<? extends K.KBase> array, int[] origIndex, Progress progress) {
+        int count = origIndex.length;
+        int chunks = 1;
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        while (chunks < parallelism && count / (2 * chunks) >= PARALLEL_THRESHOLD / 2) {
+            chunks *= 2;
         }
-        Comparator<Integer> indexComparator = new IndexComparator(array);
-        Comparator<Integer> origIndexComparator = new OrigIndexComparator(origIndex);
-        Arrays.sort(index, indexComparator.thenComparing(origIndexComparator));
-        int[] res = new int[array.getLength()];
-        for (int i=0; i<res.length; i++) {
-            res[i] = index[i];
+        int levels = Integer.numberOfTrailingZeros(chunks);
+        progress.total = Math.max(1, (long) count * (levels + 1));
+        progress.checkCancelled();
+        if (chunks == 1) {
+            int[] index = sort(array, origIndex);
+            progress.done.addAndGet(count);
+            return index;
+        }
+        return ForkJoinPool.commonPool().invoke(
+                new SortTask(array, comparator(array), origIndex, 0, count, (count + chunks - 1) / chunks, progress));
+    }
+
+    private static class SortTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final K.KBaseVector<? extends K.KBase> array;
+        private final IndexComparator comparator;
+        private final int[] origIndex;
+        private final int from, to, chunkSize;
+        private final Progress progress;
+
+        SortTask(K.KBaseVector<? extends K.KBase> array, IndexComparator comparator, int[] origIndex,
+                 int from, int to, int chunkSize, Progress progress) {
+            this.array = array;
+            this.comparator = comparator;
+            this.origIndex = origIndex;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.progress = progress;
+        }
+
+        @Override
+        protected int[] compute() {
+            progress.checkCancelled();
+            if (to - from <= chunkSize) {
+                int[] index = sort(array, Arrays.copyOfRange(origIndex, from, to));
+                progress.done.addAndGet(to - from);
+                return index;
+            }
+
+            int mid = (from + to) >>> 1;
+            SortTask left = new SortTask(array, comparator, origIndex, from, mid, chunkSize, progress);
+            left.fork();
+            int[] right = new SortTask(array, comparator, origIndex, mid, to, chunkSize, progress).compute();
+            int[] res = merge(left.join(), right, comparator);
+            progress.done.addAndGet(to - from);
+            return res;
+        }
+    }
+
+    // the left one goes first among equal values
+    private static int[] merge(int[] left, int[] right, IndexComparator comparator) {
+        int[] res = new int[left.length + right.length];
+        int p = 0, q = 0;
+        for (int i = 0; i < res.length; i++) {
+            if (q >= right.length || (p < left.length && comparator.compare(left[p], right[q]) <= 0)) {
+                res[i] = left[p++];
+            } else {
+                res[i] = right[q++];
+            }
         }
         return res;
     }
 
+    public static int[] sort(K.KBaseVector<? extends K.KBase> array, int[] origIndex) {
+        int[] index = origIndex.clone();
+        if (index.length < 2) return index;
+
+        if (isIntegral(array)) {
+            sortIntegral(array, index);
+        } else if (isFloating(array)) {
+            long[] keys = new long[index.length];
+            for (int i = 0; i < index.length; i++) {
+                keys[i] = doubleKey(array.getDouble(index[i]));
+            }
+            radixSort(keys, index);
+        } else if (array instanceof K.KSymbolVector) {
+            radixSort(symbolRanks((K.KSymbolVector) array, index), index);
+        } else if (array instanceof K.KCharacterVector) {
+            char[] chars = (char[]) array.getArray();
+            int[] keys = new int[index.length];
+            for (int i = 0; i < index.length; i++) {
+                keys[i] = chars[index[i]];
+            }
+            radixSort(keys, index);
+        } else {
+            mergeSort(index, comparator(array));
+        }
+        return index;
+    }
+
+    // reverses the order keeping the order of equal values
     public static int[] reverse(K.KBaseVector<? extends K.KBase> array, int[] origIndex) {
         int count = origIndex.length;
         int[] res = new int[count];
         if (count == 0) return res;
 
-        K.KBase current = array.at(origIndex[count-1]);
+        IndexComparator comparator = comparator(array);
+        int current = origIndex[count-1];
         int currentStart = 0;
 
         for (int i=1; ; i++) {
-            K.KBase next = i == count ? null : array.at(origIndex[count-i-1]);
+            boolean end = i == count;
+            int next = end ? -1 : origIndex[count-i-1];
 
-            if (next == null || next.compareTo(current) != 0) {
+            if (end || comparator.compare(next, current) != 0) {
                 System.arraycopy(origIndex, count - (i-1) - 1, res, currentStart, i - currentStart );
-                if (next == null) break;
+                if (end) break;
                 current = next;
                 currentStart = i;
             }
@@ -41,37 +178,377 @@ public class Sorter {
         return res;
     }
 
-    private static class IndexComparator implements Comparator<Integer> {
-        private K.KBaseVector<? extends K.KBase> array;
+    /**
+     * Stable sort by several columns; the first one has the highest priority. Every column is mapped to unsigned
+     * keys of rows. If the keys of all columns fit into 64 bits, they are packed into one long per row and
+     * the rows are sorted with one radix sort.
+     */
+    public static int[] sort(K.KBaseVector<? extends K.KBase>[] arrays, boolean[] asc, int[] origIndex, Progress progress) {
+        int count = origIndex.length;
+        progress.total = Math.max(1, (long) count * (arrays.length + 1));
+        ColumnKeys[] columns = new ColumnKeys[arrays.length];
+        int bits = 0;
+        for (int col = 0; col < arrays.length; col++) {
+            progress.checkCancelled();
+            columns[col] = columnKeys(arrays[col]);
+            bits += columns[col].bits();
+            progress.done.addAndGet(count);
+        }
+        // dense ranks are narrower than the keys of wide ranges
+        while (bits > 64) {
+            int widest = -1;
+            for (int col = 0; col < columns.length; col++) {
+                if (columns[col].dense) continue;
+                if (widest == -1 || Long.compareUnsigned(columns[col].max, columns[widest].max) > 0) widest = col;
+            }
+            if (widest == -1) break;
+            progress.checkCancelled();
+            bits -= columns[widest].bits();
+            columns[widest] = denseRanks(arrays[widest]);
+            bits += columns[widest].bits();
+        }
+        for (int col = 0; col < columns.length; col++) {
+            if (asc[col]) continue;
+            long[] keys = columns[col].keys;
+            long max = columns[col].max;
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = max - keys[i];
+            }
+        }
 
-        IndexComparator(K.KBaseVector<? extends K.KBase> array) {
-            this.array = array;
+        progress.checkCancelled();
+        int[] index = origIndex.clone();
+        if (bits <= 64) {
+            long[] packed = new long[count];
+            for (int i = 0; i < count; i++) {
+                int row = index[i];
+                long key = 0;
+                for (ColumnKeys column : columns) {
+                    key = (key << column.bits()) | column.keys[row];
+                }
+                packed[i] = key;
+            }
+            radixSort(packed, index);
+        } else {
+            mergeSort(index, (i1, i2) -> {
+                for (ColumnKeys column : columns) {
+                    int res = Long.compareUnsigned(column.keys[i1], column.keys[i2]);
+                    if (res != 0) return res;
+                }
+                return 0;
+            });
         }
+        progress.done.addAndGet(count);
+        return index;
+    }
 
-        @Override
-        public int compare(Integer i1, Integer i2) {
-            return array.at(i1).compareTo(array.at(i2));
+    // unsigned keys of rows from 0 to max
+    private static class ColumnKeys {
+        final long[] keys;
+        final long max;
+        // the keys are ranks of distinct values
+        final boolean dense;
+
+        ColumnKeys(long[] keys, long max, boolean dense) {
+            this.keys = keys;
+            this.max = max;
+            this.dense = dense;
+        }
+
+        int bits() {
+            return 64 - Long.numberOfLeadingZeros(max);
         }
     }
 
-    private static int[] inverse(int[] index) {
-        int[] res = new int[index.length];
-        for (int i=0; i<index.length; i++) {
-            res[index[i]] = i;
+    private static ColumnKeys columnKeys(K.KBaseVector<? extends K.KBase> array) {
+        int count = array.getLength();
+        long[] keys = new long[count];
+        if (array instanceof K.KSymbolVector) {
+            int[] ranks = symbolRanks((K.KSymbolVector) array, identity(count));
+            long max = 0;
+            for (int i = 0; i < count; i++) {
+                keys[i] = ranks[i];
+                max = Math.max(max, keys[i]);
+            }
+            return new ColumnKeys(keys, max, true);
         }
-        return res;
+
+        if (isIntegral(array)) {
+            for (int i = 0; i < count; i++) {
+                keys[i] = array.getLong(i) ^ Long.MIN_VALUE;
+            }
+        } else if (isFloating(array)) {
+            for (int i = 0; i < count; i++) {
+                keys[i] = doubleKey(array.getDouble(i));
+            }
+        } else if (array instanceof K.KCharacterVector) {
+            char[] chars = (char[]) array.getArray();
+            for (int i = 0; i < count; i++) {
+                keys[i] = chars[i];
+            }
+        } else {
+            return denseRanks(array);
+        }
+
+        long min = -1;
+        long max = 0;
+        for (long key : keys) {
+            if (Long.compareUnsigned(key, min) < 0) min = key;
+            if (Long.compareUnsigned(key, max) > 0) max = key;
+        }
+        if (count == 0) min = 0;
+        for (int i = 0; i < count; i++) {
+            keys[i] -= min;
+        }
+        return new ColumnKeys(keys, max - min, false);
+    }
+
+    private static ColumnKeys denseRanks(K.KBaseVector<? extends K.KBase> array) {
+        int count = array.getLength();
+        long[] ranks = new long[count];
+        if (count == 0) return new ColumnKeys(ranks, 0, true);
+
+        int[] index = sort(array, identity(count));
+        IndexComparator comparator = comparator(array);
+        long rank = 0;
+        for (int i = 1; i < count; i++) {
+            if (comparator.compare(index[i - 1], index[i]) != 0) rank++;
+            ranks[index[i]] = rank;
+        }
+        return new ColumnKeys(ranks, rank, true);
     }
 
-    private static class OrigIndexComparator implements Comparator<Integer> {
-        private int[] index;
-        OrigIndexComparator(int[] index) {
-            this.index = inverse(index);
+    private static int[] identity(int count) {
+        int[] index = new int[count];
+        for (int i = 0; i < count; i++) {
+            index[i] = i;
         }
+        return index;
+    }
 
-        @Override
-        public int compare(Integer i1, Integer i2) {
-            return index[i1] - index[i2];
+    private static boolean isIntegral(K.KBaseVector<? extends K.KBase> array) {
+        return array instanceof K.KBooleanVector || array instanceof K.KByteVector ||
+                array instanceof K.KShortVector || array instanceof K.KIntVector || array instanceof K.KLongVector ||
+                array instanceof K.KDateVector || array instanceof K.KMonthVector || array instanceof K.KMinuteVector ||
+                array instanceof K.KSecondVector || array instanceof K.KTimeVector ||
+                array instanceof K.KTimestampVector || array instanceof K.KTimespanVector;
+    }
+
+    private static boolean isFloating(K.KBaseVector<? extends K.KBase> array) {
+        return array instanceof K.KDoubleVector || array instanceof K.KFloatVector ||
+                array instanceof K.KDatetimeVector;
+    }
+
+    private static IndexComparator comparator(K.KBaseVector<? extends K.KBase> array) {
+        if (isIntegral(array)) {
+            return (i1, i2) -> Long.compare(array.getLong(i1), array.getLong(i2));
+        }
+        if (isFloating(array)) {
+            return (i1, i2) -> Double.compare(array.getDouble(i1), array.getDouble(i2));
+        }
+        if (array instanceof K.KSymbolVector && ((K.KSymbolVector) array).isEncoded()) {
+            K.KSymbolVector symbols = (K.KSymbolVector) array;
+            int[] ranks = codeRanks(symbols.getSymbols());
+            return (i1, i2) -> Integer.compare(ranks[symbols.getCode(i1)], ranks[symbols.getCode(i2)]);
+        }
+        if (array instanceof K.KSymbolVector) {
+            K.KSymbolVector symbols = (K.KSymbolVector) array;
+            return (i1, i2) -> symbols.getString(i1).compareTo(symbols.getString(i2));
+        }
+        if (array instanceof K.KCharacterVector) {
+            char[] chars = (char[]) array.getArray();
+            return (i1, i2) -> Character.compare(chars[i1], chars[i2]);
+        }
+        if (array instanceof K.KGuidVector) {
+            // the same order as of the string representation
+            K.KGuidVector guids = (K.KGuidVector) array;
+            return (i1, i2) -> {
+                int res = Long.compareUnsigned(guids.getMostSignificantBits(i1), guids.getMostSignificantBits(i2));
+                if (res != 0) return res;
+                return Long.compareUnsigned(guids.getLeastSignificantBits(i1), guids.getLeastSignificantBits(i2));
+            };
+        }
+        return (i1, i2) -> K.compare(array.at(i1), array.at(i2));
+    }
+
+    private static void sortIntegral(K.KBaseVector<? extends K.KBase> array, int[] index) {
+        int count = index.length;
+        long[] values = new long[count];
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            long value = array.getLong(index[i]);
+            values[i] = value;
+            if (value < min) min = value;
+            if (value > max) max = value;
+        }
+
+        // values of most columns fit into 32 bits after subtracting the minimum
+        if (max - min >= 0 && max - min <= 0xffffffffL) {
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = (int) (values[i] - min);
+            }
+            radixSort(keys, index);
+        } else {
+            for (int i = 0; i < count; i++) {
+                values[i] ^= Long.MIN_VALUE;
+            }
+            radixSort(values, index);
+        }
+    }
+
+    // maps the double to a long with the same unsigned order as of Double.compare()
+    private static long doubleKey(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    private static int[] symbolRanks(K.KSymbolVector array, int[] index) {
+        if (array.isEncoded()) {
+            int[] ranks = codeRanks(array.getSymbols());
+            int[] keys = new int[index.length];
+            for (int i = 0; i < index.length; i++) {
+                keys[i] = ranks[array.getCode(index[i])];
+            }
+            return keys;
+        }
+
+        Map<String, Integer> ranks = new HashMap<>();
+        for (int i : index) {
+            ranks.putIfAbsent(array.getString(i), 0);
+        }
+        String[] symbols = ranks.keySet().toArray(new String[0]);
+        Arrays.sort(symbols);
+        for (int rank = 0; rank < symbols.length; rank++) {
+            ranks.put(symbols[rank], rank);
+        }
+
+        int[] keys = new int[index.length];
+        for (int i = 0; i < index.length; i++) {
+            keys[i] = ranks.get(array.getString(index[i]));
         }
+        return keys;
     }
 
+    // ranks of the codes of a dictionary-encoded vector
+    private static int[] codeRanks(String[] symbols) {
+        Integer[] codes = new Integer[symbols.length];
+        for (int code = 0; code < codes.length; code++) {
+            codes[code] = code;
+        }
+        Arrays.sort(codes, (c1, c2) -> symbols[c1].compareTo(symbols[c2]));
+        int[] ranks = new int[symbols.length];
+        int rank = 0;
+        for (int i = 1; i < codes.length; i++) {
+            if (!symbols[codes[i]].equals(symbols[codes[i - 1]])) rank++;
+            ranks[codes[i]] = rank;
+        }
+        return ranks;
+    }
+
+    // stable sort of index by unsigned keys; keys[i] is the key of index[i]
+    private static void radixSort(int[] keys, int[] index) {
+        int count = keys.length;
+        int[][] histograms = new int[4][256];
+        for (int key : keys) {
+            for (int b = 0; b < 4; b++) {
+                histograms[b][(key >>> (8 * b)) & 0xff]++;
+            }
+        }
+
+        int[] keysTo = new int[count];
+        int[] indexTo = new int[count];
+        int[] keysFrom = keys;
+        int[] indexFrom = index;
+        for (int b = 0; b < 4; b++) {
+            int[] offsets = offsets(histograms[b], count);
+            if (offsets == null) continue;
+            int shift = 8 * b;
+            for (int i = 0; i < count; i++) {
+                int pos = offsets[(keysFrom[i] >>> shift) & 0xff]++;
+                keysTo[pos] = keysFrom[i];
+                indexTo[pos] = indexFrom[i];
+            }
+            int[] tmp = keysFrom; keysFrom = keysTo; keysTo = tmp;
+            tmp = indexFrom; indexFrom = indexTo; indexTo = tmp;
+        }
+        if (indexFrom != index) System.arraycopy(indexFrom, 0, index, 0, count);
+    }
+
+    private static void radixSort(long[] keys, int[] index) {
+        int count = keys.length;
+        int[][] histograms = new int[8][256];
+        for (long key : keys) {
+            for (int b = 0; b < 8; b++) {
+                histograms[b][(int) (key >>> (8 * b)) & 0xff]++;
+            }
+        }
+
+        long[] keysTo = new long[count];
+        int[] indexTo = new int[count];
+        long[] keysFrom = keys;
+        int[] indexFrom = index;
+        for (int b = 0; b < 8; b++) {
+            int[] offsets = offsets(histograms[b], count);
+            if (offsets == null) continue;
+            int shift = 8 * b;
+            for (int i = 0; i < count; i++) {
+                int pos = offsets[(int) (keysFrom[i] >>> shift) & 0xff]++;
+                keysTo[pos] = keysFrom[i];
+                indexTo[pos] = indexFrom[i];
+            }
+            long[] tmpKeys = keysFrom; keysFrom = keysTo; keysTo = tmpKeys;
+            int[] tmp = indexFrom; indexFrom = indexTo; indexTo = tmp;
+        }
+        if (indexFrom != index) System.arraycopy(indexFrom, 0, index, 0, count);
+    }
+
+    // start positions of the buckets or null if all keys are in one bucket and the pass can be skipped
+    private static int[] offsets(int[] histogram, int count) {
+        int[] offsets = new int[256];
+        int pos = 0;
+        for (int i = 0; i < 256; i++) {
+            if (histogram[i] == count) return null;
+            offsets[i] = pos;
+            pos += histogram[i];
+        }
+        return offsets;
+    }
+
+    private static void mergeSort(int[] index, IndexComparator comparator) {
+        int[] buffer = index.clone();
+        mergeSort(buffer, index, 0, index.length, comparator);
+    }
+
+    // sorts src[from, to) into dst; both arrays have the same content in the range on entry
+    private static void mergeSort(int[] src, int[] dst, int from, int to, IndexComparator comparator) {
+        if (to - from < INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int value = dst[i];
+                int j = i - 1;
+                for (; j >= from && comparator.compare(dst[j], value) > 0; j--) {
+                    dst[j + 1] = dst[j];
+                }
+                dst[j + 1] = value;
+            }
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        mergeSort(dst, src, from, mid, comparator);
+        mergeSort(dst, src, mid, to, comparator);
+
+        if (comparator.compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, from, dst, from, to - from);
+            return;
+        }
+        for (int i = from, p = from, q = mid; i < to; i++) {
+            if (q >= to || (p < mid && comparator.compare(src[p], src[q]) <= 0)) {
+                dst[i] = src[p++];
+            } else {
+                dst[i] = src[q++];
+            }
+        }
+    }
 }
@@ -0,0 +1,160 @@
+package studio.kdb;
+
+import java.lang.reflect.Array;
+import java.util.UUID;
+
+/**
+ * Table model which keeps the last capacity rows of a stream of tables with the same columns.
+ * Rows are appended to ring buffers from any thread and become visible only in refresh() which is called
+ * on the EDT, so the cost of repainting doesn't depend on the rate of updates.
+ */
+public class StreamingTableModel extends KTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+    private final K.KSymbolVector names;
+    private final K.KBaseVector<? extends K.KBase>[] prototypes;
+    // guarded by this
+    private final Object[] ring;
+    private int start = 0;
+    private int size = 0;
+    private boolean modified = false;
+
+    // snapshot shown in the table; accessed on the EDT only
+    private final K.KBaseVector<? extends K.KBase>[] columns;
+
+    public StreamingTableModel(K.Flip table, int capacity) {
+        super(0);
+        this.capacity = capacity;
+        names = table.x;
+        int count = names.getLength();
+        prototypes = new K.KBaseVector<?>[count];
+        ring = new Object[count];
+        columns = new K.KBaseVector<?>[count];
+        for (int col = 0; col < count; col++) {
+            prototypes[col] = (K.KBaseVector<?>) table.y.at(col);
+            ring[col] = Array.newInstance(componentType(col), capacity);
+            columns[col] = newVector(col, Array.newInstance(componentType(col), 0));
+        }
+        append(table);
+    }
+
+    // rings keep one element per row; codes of dictionary-encoded symbols differ between messages
+    private Class<?> componentType(int col) {
+        if (prototypes[col] instanceof K.KSymbolVector) return String.class;
+        if (prototypes[col] instanceof K.KBooleanVector) return boolean.class;
+        if (prototypes[col] instanceof K.KGuidVector) return UUID.class;
+        return prototypes[col].getArray().getClass().getComponentType();
+    }
+
+    // copies length elements from the offset of a vector which array isn't one element per row
+    private void copyElements(K.KBaseVector<? extends K.KBase> vector, int offset, int col, int end, int length) {
+        Object dst = ring[col];
+        for (int i = 0; i < length; i++) {
+            int index = (end + i) % capacity;
+            if (vector instanceof K.KSymbolVector) {
+                ((String[]) dst)[index] = ((K.KSymbolVector) vector).getString(offset + i);
+            } else if (vector instanceof K.KBooleanVector) {
+                ((boolean[]) dst)[index] = ((K.KBooleanVector) vector).get(offset + i);
+            } else {
+                K.KGuidVector guids = (K.KGuidVector) vector;
+                ((UUID[]) dst)[index] = new UUID(guids.getMostSignificantBits(offset + i), guids.getLeastSignificantBits(offset + i));
+            }
+        }
+    }
+
+    private K.KBaseVector<? extends K.KBase> newVector(int col, Object array) {
+        if (prototypes[col] instanceof K.KCharacterVector) {
+            return new K.KCharacterVector(new String((char[]) array));
+        }
+        try {
+            return (K.KBaseVector<?>) prototypes[col].getClass().getConstructor(array.getClass()).newInstance(array);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't create vector of type " + prototypes[col].getType(), e);
+        }
+    }
+
+    /**
+     * Appends rows of the table which must have the same columns as the first one. The oldest rows are dropped
+     * once there are more than capacity rows.
+     */
+    public void append(K.Flip table) {
+        int count = names.getLength();
+        if (table.x.getLength() != count) throw new IllegalArgumentException("Table has " + table.x.getLength() + " columns instead of " + count);
+        for (int col = 0; col < count; col++) {
+            if (!names.at(col).s.equals(table.x.at(col).s) ||
+                    table.y.at(col).getClass() != prototypes[col].getClass()) {
+                throw new IllegalArgumentException("Table has different column " + table.x.at(col).s);
+            }
+        }
+
+        int rows = table.count();
+        // only the last rows fit
+        int offset = Math.max(0, rows - capacity);
+        int length = rows - offset;
+        if (length == 0) return;
+
+        synchronized (this) {
+            int end = (start + size) % capacity;
+            int first = Math.min(length, capacity - end);
+            for (int col = 0; col < count; col++) {
+                K.KBaseVector<? extends K.KBase> vector = (K.KBaseVector<? extends K.KBase>) table.y.at(col);
+                Object src = vector.getArray();
+                if (src.getClass() != ring[col].getClass()) {
+                    copyElements(vector, offset, col, end, length);
+                    continue;
+                }
+                System.arraycopy(src, offset, ring[col], end, first);
+                System.arraycopy(src, offset + first, ring[col], 0, length - first);
+            }
+            int total = size + length;
+            if (total > capacity) {
+                start = (start + total - capacity) % capacity;
+                size = capacity;
+            } else {
+                size = total;
+            }
+            modified = true;
+        }
+    }
+
+    /**
+     * Shows the rows appended since the last call and keeps the current sorting. Returns false if there was nothing new.
+     */
+    public boolean refresh() {
+        synchronized (this) {
+            if (!modified) return false;
+            int first = Math.min(size, capacity - start);
+            for (int col = 0; col < columns.length; col++) {
+                Object array = Array.newInstance(componentType(col), size);
+                System.arraycopy(ring[col], start, array, 0, first);
+                System.arraycopy(ring[col], 0, array, first, size - first);
+                columns[col] = newVector(col, array);
+            }
+            modified = false;
+        }
+
+        // a sort in background would return an index of the previous rows
+        cancelSort();
+        index = sortedIndex(columns[0].getLength());
+        fireTableDataChanged();
+        return true;
+    }
+
+    public boolean isKey(int column) {
+        return false;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public String getColumnName(int col) {
+        return names.at(col).s;
+    }
+
+    public K.KBaseVector<? extends K.KBase> getColumn(int col) {
+        return columns[col];
+    }
+}
@@ -11,6 +11,8 @@ import javax.swing.table.DefaultTableCellRenderer;
 
 public class TableHeaderRenderer extends DefaultTableCellRenderer {
 
+    private static final long serialVersionUID = 1L;
+
     public TableHeaderRenderer() {
         super();
         setHorizontalAlignment(SwingConstants.LEFT);
@@ -35,6 +37,9 @@ public class TableHeaderRenderer extends DefaultTableCellRenderer {
 
     private boolean asc = false;
     private boolean desc = false;
+    private double progress = -1;
+    // shown if the table is sorted by several columns
+    private int priority = 0;
 
     public Component getTableCellRendererComponent(JTable table,
                                                    Object value,
@@ -57,6 +62,11 @@ public class TableHeaderRenderer extends DefaultTableCellRenderer {
                 asc = false;
                 desc = false;
             }
+            progress = ktm.getSortProgress(column);
+            priority = ktm.getSortColumnCount() > 1 ? ktm.getSortPriority(column) : 0;
+        } else {
+            progress = -1;
+            priority = 0;
         }
 
         setText(value == null ? " " : value.toString());
@@ -68,7 +78,11 @@ public class TableHeaderRenderer extends DefaultTableCellRenderer {
     public void paint(Graphics g) {
         int width = SwingUtilities.computeStringWidth(getFontMetrics(getFont()), getText());
         int availableWidth = Math.min(getInsets().left + width, getSize().width);
-        SorterDrawer.paint(asc, desc, this, availableWidth, g);
+        SorterDrawer.paint(asc, desc, priority, this, availableWidth, g);
         super.paint(g);
+        if (progress >= 0) {
+            g.setColor(UIManager.getColor("Table.selectionBackground"));
+            g.fillRect(0, getHeight() - 3, (int) (getWidth() * progress), 3);
+        }
     }
 }
@@ -10,6 +10,8 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableCellRenderer;
 
 class CellRenderer extends DefaultTableCellRenderer {
+    private static final long serialVersionUID = 1L;
+
     private static final Color keyColor = new Color(220,255,220);
     private static final Color altColor = new Color(220,220,255);
     private static final Color nullColor = new Color(255,150,150);
@@ -17,7 +19,7 @@ class CellRenderer extends DefaultTableCellRenderer {
     private static final Color fgColor = UIManager.getColor("Table.foreground");
     private JTable table = null;
 
-    private KFormatContext formatContextWithType, formatContextNoType;
+    private KFormatContext formatContext;
 
     private void initLabel(JTable table) {
         setHorizontalAlignment(SwingConstants.LEFT);
@@ -38,37 +40,34 @@ class CellRenderer extends DefaultTableCellRenderer {
     }
 
     public void setFormatContext(KFormatContext formatContext) {
-        formatContextWithType = new KFormatContext(formatContext).setShowType(true);
-        formatContextNoType = new KFormatContext(formatContext).setShowType(false);
+        this.formatContext = new KFormatContext(formatContext).setShowType(true);
     }
 
+    // the value is ignored: the text is taken from the cache of the model, so that painting doesn't create K objects
     public Component getTableCellRendererComponent(JTable table,
                                                    Object value,
                                                    boolean isSelected,
                                                    boolean hasFocus,
                                                    int row,
                                                    int column) {
-        if (value != null) {
-            K.KBase kb = (K.KBase) value;
-            String text = kb.toString(
-                kb instanceof K.KBaseVector ? formatContextWithType : formatContextNoType);
-            text = Util.limitString(text, Config.getInstance().getMaxCharsInTableCell());
-            setText(text);
-            setForeground(kb.isNull() ? nullColor : fgColor);
+        KTableModel ktm = (KTableModel) table.getModel();
+        column = table.convertColumnIndexToModel(column);
+        K.KBaseVector<? extends K.KBase> vector = ktm.getColumn(column);
+        int index = ktm.getIndex()[row];
+
+        setText(ktm.getCellText(row, column, formatContext, Config.getInstance().getMaxCharsInTableCell()));
+        setForeground(vector.isNull(index) ? nullColor : fgColor);
 
-            if (!isSelected) {
-                KTableModel ktm = (KTableModel) table.getModel();
-                column = table.convertColumnIndexToModel(column);
-                if (ktm.isKey(column))
-                    setBackground(keyColor);
-                else if (row % 2 == 0)
-                    setBackground(altColor);
-                else
-                    setBackground(UIManager.getColor("Table.background"));
-            } else {
-                setForeground(UIManager.getColor("Table.selectionForeground"));
-                setBackground(selColor);
-            }
+        if (!isSelected) {
+            if (ktm.isKey(column))
+                setBackground(keyColor);
+            else if (row % 2 == 0)
+                setBackground(altColor);
+            else
+                setBackground(UIManager.getColor("Table.background"));
+        } else {
+            setForeground(UIManager.getColor("Table.selectionForeground"));
+            setBackground(selColor);
         }
         return this;
     }
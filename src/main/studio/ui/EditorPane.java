@@ -13,6 +13,14 @@ import java.awt.event.KeyEvent;
 
 public class EditorPane extends JPanel {
 
+    private static final long serialVersionUID = 1L;
+
+    // text which is shown by pages; the search continues on the other pages
+    public interface Pager {
+        boolean isPaged();
+        void findNext(String text, boolean matchCase, int offset);
+    }
+
     private final RSyntaxTextArea textArea;
     private final RTextScrollPane scrollPane;
     private final MinSizeLabel lblRowCol;
@@ -26,6 +34,8 @@ public class EditorPane extends JPanel {
     private Timer tempStatusTimer = new Timer(3000, this::tempStatusTimerAction);
     private String oldStatus = "";
 
+    private Pager pager = null;
+
     private final int yGap;
     private final int xGap;
 
@@ -97,6 +107,14 @@ public class EditorPane extends JPanel {
         return textArea;
     }
 
+    public Pager getPager() {
+        return pager;
+    }
+
+    public void setPager(Pager pager) {
+        this.pager = pager;
+    }
+
     public void setLineWrap(boolean value) {
         textArea.setLineWrap(value);
     }
@@ -12,7 +12,6 @@ import javax.swing.JTable;
 import javax.swing.ProgressMonitor;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
-import javax.swing.table.TableModel;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
@@ -22,6 +21,7 @@ import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import studio.kdb.K;
 import studio.kdb.KFormatContext;
+import studio.kdb.KTableModel;
 
 class ExcelExporter {
     private static final SimpleDateFormat FORMATTER = new SimpleDateFormat();
@@ -34,7 +34,7 @@ class ExcelExporter {
     public void exportTableX(final JFrame frame, final JTable table, final File file,
                              final boolean openIt) {
 
-        final TableModel model = table.getModel();
+        final KTableModel model = (KTableModel) table.getModel();
         final String message = "Exporting data to " + file.getAbsolutePath();
         final String note = "0% complete";
         String title = "Studio for kdb+";
@@ -63,46 +63,45 @@ class ExcelExporter {
                 }
                 int maxRow = model.getRowCount();
                 int lastProgress = 0;
+                int[] index = model.getIndex();
+                StringBuilder builder = new StringBuilder();
                 for (int i = 0; i < model.getRowCount(); i++) {
                     Row row = sheet.createRow(i + 1);
                     for (int j = 0; j < model.getColumnCount(); j++) {
                         Cell cell = row.createCell(j);
-                        K.KBase b = (K.KBase) model.getValueAt(i, j);
-                        if (!b.isNull()) {
-                            if (table.getColumnClass(j) == K.KSymbolVector.class) {
-                                cell.setCellValue(((K.KSymbol)b).s);
-                            } else if (table.getColumnClass(j) == K.KDateVector.class) {
-                                cell.setCellValue(sd("yyyy-MM-dd", ((K.KDate) b).toDate()));
-                            } else if (table.getColumnClass(j) == K.KTimeVector.class) {
-                                cell.setCellValue(sd("HH:mm:ss.SSS", ((K.KTime) b).toTime()));
-                            } else if (table.getColumnClass(j) == K.KTimestampVector.class) {
+                        K.KBaseVector<? extends K.KBase> column = model.getColumn(j);
+                        int r = index[i];
+                        if (!column.isNull(r)) {
+                            if (column instanceof K.KSymbolVector) {
+                                cell.setCellValue(((K.KSymbolVector) column).getString(r));
+                            } else if (column instanceof K.KBooleanVector) {
+                                cell.setCellValue(column.getLong(r));
+                            } else if (column instanceof K.KDoubleVector || column instanceof K.KFloatVector) {
+                                cell.setCellValue(column.getDouble(r));
+                            } else if (column instanceof K.KLongVector || column instanceof K.KIntVector
+                                    || column instanceof K.KShortVector) {
+                                cell.setCellValue(column.getLong(r));
+                            } else if (column instanceof K.KCharacterVector) {
+                                cell.setCellValue(String.valueOf(((char[]) column.getArray())[r]));
+                            } else if (column instanceof K.KDateVector) {
+                                cell.setCellValue(sd("yyyy-MM-dd", ((K.KDate) column.at(r)).toDate()));
+                            } else if (column instanceof K.KTimeVector) {
+                                cell.setCellValue(sd("HH:mm:ss.SSS", ((K.KTime) column.at(r)).toTime()));
+                            } else if (column instanceof K.KTimestampVector) {
                                 char[] cs = sd("yyyy-MM-dd HH:mm:ss.SSS",
-                                        ((K.KTimestamp) b).toTimestamp()).toCharArray();
+                                        ((K.KTimestamp) column.at(r)).toTimestamp()).toCharArray();
                                 cs[10] = 'T';
                                 cell.setCellValue(new String(cs));
-                            } else if (table.getColumnClass(j) == K.KMonthVector.class) {
-                                cell.setCellValue(sd("yyyy-MM", ((K.Month) b).toDate()));
-                            } else if (table.getColumnClass(j) == K.KMinuteVector.class) {
-                                cell.setCellValue(sd("HH:mm", ((K.Minute) b).toDate()));
-                            } else if (table.getColumnClass(j) == K.KSecondVector.class) {
-                                cell.setCellValue(sd("HH:mm:ss", ((K.Second) b).toDate()));
-                            } else if (table.getColumnClass(j) == K.KBooleanVector.class) {
-                                cell.setCellValue(((K.KBoolean) b).b ? 1 : 0);
-                            } else if (table.getColumnClass(j) == K.KDoubleVector.class) {
-                                cell.setCellValue(((K.KDouble) b).toDouble());
-                            } else if (table.getColumnClass(j) == K.KFloatVector.class) {
-                                cell.setCellValue(((K.KFloat) b).f);
-                            } else if (table.getColumnClass(j) == K.KLongVector.class) {
-                                cell.setCellValue(((K.KLong) b).toLong());
-                            } else if (table.getColumnClass(j) == K.KIntVector.class) {
-                                cell.setCellValue(((K.KInteger) b).toInt());
-                            } else if (table.getColumnClass(j) == K.KShortVector.class) {
-                                cell.setCellValue(((K.KShort) b).s);
-                            } else if (table.getColumnClass(j) == K.KCharacterVector.class) {
-                                cell.setCellValue(
-                                        new String(new char[] {((K.KCharacter) b).c}));
+                            } else if (column instanceof K.KMonthVector) {
+                                cell.setCellValue(sd("yyyy-MM", ((K.Month) column.at(r)).toDate()));
+                            } else if (column instanceof K.KMinuteVector) {
+                                cell.setCellValue(sd("HH:mm", ((K.Minute) column.at(r)).toDate()));
+                            } else if (column instanceof K.KSecondVector) {
+                                cell.setCellValue(sd("HH:mm:ss", ((K.Second) column.at(r)).toDate()));
                             } else {
-                                cell.setCellValue(b.toString(KFormatContext.NO_TYPE));
+                                builder.setLength(0);
+                                column.formatTo(r, builder, KFormatContext.NO_TYPE);
+                                cell.setCellValue(builder.toString());
                             }
                         } else {
                             cell.setCellValue("");
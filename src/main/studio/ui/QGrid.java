@@ -8,6 +8,7 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.table.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
@@ -15,6 +16,8 @@ import java.awt.event.MouseEvent;
 
 //@TODO: Should it be really a JPanel? It looks it should be just a JTabel. And anyway any additional components could be added to TabPanel
 public class QGrid extends JPanel {
+    private static final long serialVersionUID = 1L;
+
     private StudioPanel panel;
     private final TableModel model;
     private final JTable table;
@@ -36,6 +39,8 @@ public class QGrid extends JPanel {
     private long doubleClickTimeout;
 
     static class MYJTable extends JTable {
+        private static final long serialVersionUID = 1L;
+
         public MYJTable(TableModel m) {
             super(m);
         }
@@ -43,7 +48,17 @@ public class QGrid extends JPanel {
         public Component prepareRenderer(TableCellRenderer renderer,
                                          int rowIndex,
                                          int vColIndex) {
-            Component c = super.prepareRenderer(renderer, rowIndex, vColIndex);
+            Component c;
+            if (renderer instanceof CellRenderer) {
+                // CellRenderer reads the cell itself; getValueAt() would create a K object for every painted cell
+                boolean hasFocus = isFocusOwner() &&
+                        getSelectionModel().getLeadSelectionIndex() == rowIndex &&
+                        getColumnModel().getSelectionModel().getLeadSelectionIndex() == vColIndex;
+                c = renderer.getTableCellRendererComponent(this, null, isCellSelected(rowIndex, vColIndex),
+                        hasFocus, rowIndex, vColIndex);
+            } else {
+                c = super.prepareRenderer(renderer, rowIndex, vColIndex);
+            }
             c.setFont(this.getFont());
             return c;
         }
@@ -132,6 +147,22 @@ public class QGrid extends JPanel {
             final JViewport main = scrollPane.getViewport();
         });
 
+        // Escape cancels the sort in progress
+        table.getTableHeader().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+                .put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "cancelSort");
+        table.getTableHeader().getActionMap().put("cancelSort", new AbstractAction() {
+            @Override
+            public boolean isEnabled() {
+                return model.isSorting();
+            }
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                model.cancelSort();
+                table.getTableHeader().repaint();
+            }
+        });
+
         WidthAdjuster wa = new WidthAdjuster(table, scrollPane);
         wa.resizeAllColumns(true);
 
@@ -221,11 +252,9 @@ public class QGrid extends JPanel {
                 lastTimestamp = -1;
                 if (row == -1 || col == -1) return;
 
-                K.KBase b = (K.KBase) table.getValueAt(row, col);
-                //@TODO: we shouldn't duplicate the logic here.
-                KFormatContext formatContextForCell = new KFormatContext(formatContext);
-                formatContextForCell.setShowType(b instanceof K.KBaseVector);
-                Util.copyTextToClipboard(b.toString(formatContextForCell));
+                KFormatContext formatContextForCell = new KFormatContext(formatContext).setShowType(true);
+                Util.copyTextToClipboard(model.getCellText(table.convertRowIndexToModel(row),
+                        table.convertColumnIndexToModel(col), formatContextForCell, 0));
             }
         });
     }
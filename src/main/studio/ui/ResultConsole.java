@@ -0,0 +1,212 @@
+package studio.ui;
+
+import studio.kdb.Config;
+import studio.kdb.K;
+import studio.kdb.KFormatContext;
+import studio.kdb.ResultText;
+
+import javax.swing.*;
+import javax.swing.text.JTextComponent;
+import java.awt.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Console view of a result. A result which is longer than the max chars in result is shown by pages of that size;
+ * only the shown page is formatted into the document. The search continues on the next pages.
+ * The formatting is done in the background; a newer request stops the older one.
+ */
+public class ResultConsole extends JPanel implements EditorPane.Pager {
+
+    private static final long serialVersionUID = 1L;
+
+    private final EditorPane editor;
+    private final JTextComponent textArea;
+    private final JPanel pageBar;
+    private final JButton btnPrevious;
+    private final JButton btnNext;
+    private final JLabel lblPage;
+
+    private volatile ResultText text = null;
+    private int pageSize;
+    private long pageStart = 0;
+    private int pageLength = 0;
+    private boolean hasNextPage = false;
+    private long length = -1;
+    private boolean lengthStarted = false;
+    // a newer request discards the results of older ones and stops them
+    private volatile int version = 0;
+    private volatile boolean closed = false;
+
+    public ResultConsole() {
+        super(new BorderLayout());
+        editor = new EditorPane(false);
+        editor.setLineWrap(true);
+        editor.setPager(this);
+        textArea = editor.getTextArea();
+
+        btnPrevious = new JButton("<");
+        btnPrevious.setToolTipText("Previous page");
+        btnPrevious.setFocusable(false);
+        btnPrevious.addActionListener(e -> showPage(Math.max(0, pageStart - pageSize), null));
+        btnNext = new JButton(">");
+        btnNext.setToolTipText("Next page");
+        btnNext.setFocusable(false);
+        btnNext.addActionListener(e -> showPage(pageStart + pageLength, null));
+        lblPage = new JLabel();
+
+        pageBar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        pageBar.add(btnPrevious);
+        pageBar.add(btnNext);
+        pageBar.add(lblPage);
+        pageBar.setVisible(false);
+
+        add(editor, BorderLayout.CENTER);
+        add(pageBar, BorderLayout.SOUTH);
+    }
+
+    public JTextComponent getTextArea() {
+        return textArea;
+    }
+
+    public void setText(String value) {
+        version++;
+        text = null;
+        pageBar.setVisible(false);
+        textArea.setText(value);
+    }
+
+    public void setResult(K.KBase result, KFormatContext context) {
+        text = new ResultText(result, context);
+        pageSize = Math.max(1, Config.getInstance().getMaxCharsInResult());
+        length = -1;
+        lengthStarted = false;
+        pageStart = 0;
+        pageLength = 0;
+        hasNextPage = false;
+        showPage(0, null);
+    }
+
+    // results of closed consoles are dropped
+    public void close() {
+        closed = true;
+        version++;
+    }
+
+    private <T> void inBackground(Function<BooleanSupplier, T> task, Consumer<T> done) {
+        int taskVersion = ++version;
+        BooleanSupplier stale = () -> closed || taskVersion != version;
+        Thread thread = new Thread(() -> {
+            T value;
+            try {
+                value = task.apply(stale);
+            } catch (CancellationException e) {
+                return;
+            } catch (RuntimeException e) {
+                SwingUtilities.invokeLater(() -> {
+                    if (stale.getAsBoolean()) return;
+                    textArea.setText("Can't format the result: " + e.getMessage());
+                });
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (stale.getAsBoolean()) return;
+                done.accept(value);
+            });
+        }, "Console formatter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // shows the page from start; selection is the position and the length of the chars to select
+    private void showPage(long start, long[] selection) {
+        ResultText pageText = text;
+        int size = pageSize;
+        if (selection == null) textArea.setText("Formatting the result...");
+        updatePageBar(false);
+        inBackground(stale -> pageText.getText(start, size + 1, stale), page -> {
+            pageStart = start;
+            hasNextPage = page.length() > size;
+            pageLength = Math.min(page.length(), size);
+            textArea.setText(page.substring(0, pageLength));
+            if (selection != null) {
+                textArea.select((int) (selection[0] - start), (int) (selection[0] + selection[1] - start));
+            } else {
+                textArea.setCaretPosition(0);
+            }
+            updatePageBar(true);
+            if ((hasNextPage || start > 0) && !lengthStarted) {
+                countLength(pageText);
+            }
+        });
+    }
+
+    // the length is counted once per result on its own thread, as it doesn't change the page
+    private void countLength(ResultText pageText) {
+        lengthStarted = true;
+        BooleanSupplier stale = () -> closed || pageText != text;
+        Thread thread = new Thread(() -> {
+            long value;
+            try {
+                value = pageText.getLength(stale);
+            } catch (RuntimeException e) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (stale.getAsBoolean()) return;
+                length = value;
+                updatePageBar(true);
+            });
+        }, "Console length");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void updatePageBar(boolean enabled) {
+        boolean paged = hasNextPage || pageStart > 0;
+        pageBar.setVisible(paged);
+        if (!paged) return;
+        btnPrevious.setEnabled(enabled && pageStart > 0);
+        btnNext.setEnabled(enabled && hasNextPage);
+        lblPage.setText(String.format("Chars %,d - %,d of %s", pageStart + 1, pageStart + pageLength,
+                length < 0 ? "..." : String.format("%,d", length)));
+    }
+
+    @Override
+    public boolean isPaged() {
+        return text != null && (hasNextPage || pageStart > 0);
+    }
+
+    @Override
+    public void findNext(String searchFor, boolean matchCase, int offset) {
+        ResultText pageText = text;
+        long from = pageStart + offset;
+        updatePageBar(false);
+        editor.setTemporaryStatus("Searching...");
+        inBackground(stale -> {
+            long position = pageText.indexOf(searchFor, matchCase, from, stale);
+            boolean wrapped = position < 0 && from > 0;
+            if (wrapped) position = pageText.indexOf(searchFor, matchCase, 0, stale);
+            return new long[] {position, wrapped ? 1 : 0};
+        }, found -> {
+            long position = found[0];
+            if (position < 0) {
+                updatePageBar(true);
+                editor.setTemporaryStatus("Nothing was found", true);
+                return;
+            }
+            editor.setTemporaryStatus(found[1] == 1 ? "Reached the end of the result, wrapping around." : "Text found",
+                    found[1] == 1);
+            long start = position - position % pageSize;
+            if (position + searchFor.length() > start + pageSize) start = position;
+            if (start == pageStart) {
+                updatePageBar(true);
+                textArea.select((int) (position - start), (int) (position + searchFor.length() - start));
+            } else {
+                showPage(start, new long[] {position, searchFor.length()});
+            }
+        });
+    }
+}
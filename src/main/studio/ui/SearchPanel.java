@@ -21,6 +21,8 @@ import studio.utils.OrderFocusTraversalPolicy;
 
 public class SearchPanel extends JPanel {
 
+    private static final long serialVersionUID = 1L;
+
     private final JLabel lblReplace;
     private final JButton btnReplace;
     private final JButton btnReplaceAll;
@@ -190,6 +192,10 @@ public class SearchPanel extends JPanel {
         SearchResult result;
         if (action == SearchAction.Find) {
             result = SearchEngine.find(textArea, context);
+            if (isPagedSearch(context) && (!result.wasFound() || result.getMatchRange().getStartOffset() < pos)) {
+                editorPane.getPager().findNext(context.getSearchFor(), context.getMatchCase(), pos);
+                return;
+            }
         } else {
             try {
                 if (action == SearchAction.Replace) {
@@ -237,6 +243,13 @@ public class SearchPanel extends JPanel {
         doSearch(context, SearchAction.Find);
     }
 
+    // the pager searches plain text forward on the other pages
+    private boolean isPagedSearch(SearchContext context) {
+        EditorPane.Pager pager = editorPane.getPager();
+        return pager != null && pager.isPaged() && context.getSearchForward() && !context.getMarkAll()
+                && !context.isRegularExpression() && !context.getWholeWord() && context.getReplaceWith() == null;
+    }
+
     private void markAll() {
         SearchContext context = buildSearchContext();
         context.setMarkAll(true);
@@ -18,6 +18,8 @@ import java.util.Map;
 import static javax.swing.GroupLayout.PREFERRED_SIZE;
 
 public class SettingsDialog extends EscapeDialog {
+    private static final long serialVersionUID = 1L;
+
     private JComboBox<String> comboBoxAuthMechanism;
     private JTextField txtUser;
     private JPasswordField txtPassword;
@@ -40,6 +42,8 @@ public class SettingsDialog extends EscapeDialog {
     private JFormattedTextField txtCellMaxWidth;
     private JFormattedTextField txtMaxFractionDigits;
     private JFormattedTextField txtEmulateDoubleClickTimeout;
+    private JFormattedTextField txtResponseSpillThreshold;
+    private JFormattedTextField txtOffHeapVectorThreshold;
     private JComboBox<Config.ExecAllOption> comboBoxExecAll;
     private JComboBox<LineEnding> comboBoxLineEnding;
     private JComboBox cbFontName;
@@ -94,6 +98,14 @@ public class SettingsDialog extends EscapeDialog {
         return (Integer) txtCellMaxWidth.getValue();
     }
 
+    public int getResponseSpillThreshold() {
+        return (Integer) txtResponseSpillThreshold.getValue();
+    }
+
+    public int getOffHeapVectorThreshold() {
+        return (Integer) txtOffHeapVectorThreshold.getValue();
+    }
+
     public Config.ExecAllOption getExecAllOption() {
         return (Config.ExecAllOption) comboBoxExecAll.getSelectedItem();
     }
@@ -238,6 +250,18 @@ public class SettingsDialog extends EscapeDialog {
         txtEmulateDoubleClickTimeout = new JFormattedTextField(formatter);
         txtEmulateDoubleClickTimeout.setValue(Config.getInstance().getInt(Config.EMULATED_DOUBLE_CLICK_TIMEOUT));
 
+        JLabel lblResponseSpillThreshold = new JLabel("Decompress responses larger than (MB) to a temp file, 0 - never");
+        formatter = new NumberFormatter();
+        formatter.setMinimum(0);
+        txtResponseSpillThreshold = new JFormattedTextField(formatter);
+        txtResponseSpillThreshold.setValue(Config.getInstance().getInt(Config.RESPONSE_SPILL_THRESHOLD_MB));
+
+        JLabel lblOffHeapVectorThreshold = new JLabel("Keep vectors larger than (MB) off the heap, 0 - never");
+        formatter = new NumberFormatter();
+        formatter.setMinimum(0);
+        txtOffHeapVectorThreshold = new JFormattedTextField(formatter);
+        txtOffHeapVectorThreshold.setValue(Config.getInstance().getInt(Config.OFF_HEAP_VECTOR_THRESHOLD_MB));
+
         JLabel lblCellRightPadding = new JLabel("Right padding in table cell");
 
         NumberFormat doubleFormat = DecimalFormat.getInstance();
@@ -316,11 +340,13 @@ public class SettingsDialog extends EscapeDialog {
                         .addLineAndGlue(lblMaxFractionDigits, txtMaxFractionDigits)
                         .addLineAndGlue(lblEmulatedDoubleClickTimeout, txtEmulateDoubleClickTimeout)
                         .addLineAndGlue(lblResultTabsCount, txtTabsCount)
+                        .addLineAndGlue(lblResponseSpillThreshold, txtResponseSpillThreshold)
+                        .addLineAndGlue(lblOffHeapVectorThreshold, txtOffHeapVectorThreshold)
                         .addLine(lblMaxCharsInResult, txtMaxCharsInResult, lblMaxCharsInTableCell, txtMaxCharsInTableCell)
                         .addLine(lblCellRightPadding, txtCellRightPadding, lblCellMaxWidth, txtCellMaxWidth)
         );
         layout.linkSize(SwingConstants.HORIZONTAL, lblCellRightPadding, txtMaxFractionDigits, txtEmulateDoubleClickTimeout, txtTabsCount,
-                txtMaxCharsInResult, txtMaxCharsInTableCell, txtCellRightPadding, txtCellMaxWidth);
+                txtResponseSpillThreshold, txtOffHeapVectorThreshold, txtMaxCharsInResult, txtMaxCharsInTableCell, txtCellRightPadding, txtCellMaxWidth);
 
         JTabbedPane tabs = new JTabbedPane();
         tabs.addTab("General", getTabComponent(pnlGeneral));
@@ -9,11 +9,23 @@ public class SorterDrawer {
     private static Icon DESC_ICON = Util.DESC_ICON;
 
     public static void paint(boolean asc, boolean desc, Component component, int availableWidth, Graphics g) {
+        paint(asc, desc, 0, component, availableWidth, g);
+    }
+
+    // priority is drawn after the icon if it is positive
+    public static void paint(boolean asc, boolean desc, int priority, Component component, int availableWidth, Graphics g) {
         if (asc || desc) {
             int x = (availableWidth - ASC_ICON.getIconWidth()) / 2;
             if (x<0) x = 0;
             Icon icon = asc ? ASC_ICON : DESC_ICON;
             icon.paintIcon(component, g, x, 2);
+            if (priority > 0) {
+                Font font = component.getFont();
+                g.setFont(font.deriveFont(font.getSize2D() * 0.7f));
+                g.setColor(component.getForeground());
+                g.drawString(Integer.toString(priority), x + icon.getIconWidth() + 1,
+                        2 + g.getFontMetrics().getAscent());
+            }
         }
 
     }
@@ -15,6 +15,7 @@ import studio.qeditor.RSTokenMaker;
 import studio.ui.action.JSONServerList;
 import studio.ui.action.QPadImport;
 import studio.ui.action.QueryResult;
+import studio.ui.action.Subscription;
 import studio.ui.action.WorkspaceSaver;
 import studio.ui.chart.Chart;
 import studio.ui.dndtabbedpane.DragEvent;
@@ -30,7 +31,6 @@ import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.plaf.basic.BasicSplitPaneUI;
-import javax.swing.table.TableModel;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.JTextComponent;
 import java.awt.*;
@@ -52,6 +52,8 @@ import static studio.ui.EscapeDialog.DialogResult.CANCELLED;
 
 public class StudioPanel extends JPanel implements WindowListener {
 
+    private static final long serialVersionUID = 1L;
+
     private static final Logger log = LogManager.getLogger();
     private static final Action editorUndoAction;
     private static final Action editorRedoAction;
@@ -115,6 +117,8 @@ public class StudioPanel extends JPanel implements WindowListener {
     private UserAction stopAction;
     private UserAction executeAction;
     private UserAction executeCurrentLineAction;
+    private UserAction executeStatementsAction;
+    private UserAction subscribeAction;
     private UserAction refreshAction;
     private UserAction aboutAction;
     private UserAction exitAction;
@@ -205,7 +209,7 @@ public class StudioPanel extends JPanel implements WindowListener {
         RSyntaxTextArea textArea = editor.getTextArea();
         if (textArea == null || tabbedPane == null) {
             setActionsEnabled(false, undoAction, redoAction, stopAction, executeAction,
-                    executeCurrentLineAction, refreshAction);
+                    executeCurrentLineAction, executeStatementsAction, subscribeAction, refreshAction);
             return;
         }
 
@@ -227,6 +231,8 @@ public class StudioPanel extends JPanel implements WindowListener {
         boolean allowParallel = CONFIG.getBoolean(Config.ALLOW_PARALLEL_QUERY);
         executeAction.setEnabled(allowParallel || !queryRunning);
         executeCurrentLineAction.setEnabled(allowParallel || !queryRunning);
+        executeStatementsAction.setEnabled(allowParallel || !queryRunning);
+        subscribeAction.setEnabled(server != null);
         refreshAction.setEnabled(lastQuery != null && !queryRunning);
 
         TabPanel tab = (TabPanel) tabbedPane.getSelectedComponent();
@@ -245,7 +251,7 @@ public class StudioPanel extends JPanel implements WindowListener {
         new ExcelExporter().exportTableX(frame,getSelectedTable(),new File(filename),false);
     }
 
-    private void exportAsDelimited(final TableModel model,final String filename,final char delimiter) {
+    private void exportAsDelimited(final KTableModel model,final String filename,final char delimiter) {
         UIManager.put("ProgressMonitor.progressText","Studio for kdb+");
         final ProgressMonitor pm = new ProgressMonitor(frame,"Exporting data to " + filename,
                 "0% complete",0,100);
@@ -265,14 +271,18 @@ public class StudioPanel extends JPanel implements WindowListener {
                     }
                     fw.write(lineSeparator);
                     int maxRow = model.getRowCount();
+                    int[] index = model.getIndex();
+                    StringBuilder builder = new StringBuilder();
                     for(int r = 1; r <= maxRow; r++) {
+                        builder.setLength(0);
                         for (int col = 0;col < model.getColumnCount();col++) {
-                            if (col > 0) fw.write(delimiter);
+                            if (col > 0) builder.append(delimiter);
 
-                            K.KBase o = (K.KBase) model.getValueAt(r - 1,col);
-                            if (!o.isNull())
-                                fw.write(o.toString(KFormatContext.NO_TYPE));
+                            K.KBaseVector<? extends K.KBase> column = model.getColumn(col);
+                            if (!column.isNull(index[r - 1]))
+                                column.formatTo(index[r - 1], builder, KFormatContext.NO_TYPE);
                         }
+                        fw.append(builder);
                         fw.write(lineSeparator);
                         if (pm.isCanceled()) break;
                         int progress = (100 * r) / maxRow;
@@ -298,7 +308,7 @@ public class StudioPanel extends JPanel implements WindowListener {
         t.start();
     }
 
-    private void exportAsXml(final TableModel model,final String filename) {
+    private void exportAsXml(final KTableModel model,final String filename) {
         UIManager.put("ProgressMonitor.progressText","Studio for kdb+");
         final ProgressMonitor pm = new ProgressMonitor(frame,"Exporting data to " + filename,
                 "0% complete",0,100);
@@ -319,18 +329,22 @@ public class StudioPanel extends JPanel implements WindowListener {
                     for (int col = 0; col < model.getColumnCount(); col++)
                         columns[col] = model.getColumnName(col);
 
+                    int[] index = model.getIndex();
+                    StringBuilder builder = new StringBuilder();
                     for (int r = 1; r <= maxRow; r++) {
-                        fw.write("<r>");
+                        builder.setLength(0);
+                        builder.append("<r>");
                         for (int col = 0; col < columns.length; col++) {
-                            fw.write("<" + columns[col] + ">");
+                            builder.append('<').append(columns[col]).append('>');
 
-                            K.KBase o = (K.KBase) model.getValueAt(r - 1,col);
-                            if (!o.isNull())
-                                fw.write(o.toString(KFormatContext.NO_TYPE));
+                            K.KBaseVector<? extends K.KBase> column = model.getColumn(col);
+                            if (!column.isNull(index[r - 1]))
+                                column.formatTo(index[r - 1], builder, KFormatContext.NO_TYPE);
 
-                            fw.write("</" + columns[col] + ">");
+                            builder.append("</").append(columns[col]).append('>');
                         }
-                        fw.write("</r>");
+                        builder.append("</r>");
+                        fw.append(builder);
                         fw.write(lineSeparator);
 
                         if (pm.isCanceled()) break;
@@ -358,11 +372,11 @@ public class StudioPanel extends JPanel implements WindowListener {
     }
 
     private void exportAsTxt(String filename) {
-        exportAsDelimited(getSelectedTable().getModel(),filename,'\t');
+        exportAsDelimited((KTableModel) getSelectedTable().getModel(),filename,'\t');
     }
 
     private void exportAsCSV(String filename) {
-        exportAsDelimited(getSelectedTable().getModel(),filename,',');
+        exportAsDelimited((KTableModel) getSelectedTable().getModel(),filename,',');
     }
 
     private void export() {
@@ -387,7 +401,7 @@ public class StudioPanel extends JPanel implements WindowListener {
             else if (filename.endsWith(".txt"))
                 exportAsTxt(filename);
             else if (filename.endsWith(".xml"))
-                exportAsXml(getSelectedTable().getModel(),filename);
+                exportAsXml((KTableModel) getSelectedTable().getModel(),filename);
             else
                 StudioOptionPane.showWarning(this,
                         "You did not specify what format to export the file as.\n Cancelling data export",
@@ -561,6 +575,7 @@ public class StudioPanel extends JPanel implements WindowListener {
         editor.setServer(server);
 
         if (!loading) {
+            ConnectionPool.getInstance().prewarm(server);
             CONFIG.addServerToHistory(server);
             serverHistory.add(server);
 
@@ -723,6 +738,12 @@ public class StudioPanel extends JPanel implements WindowListener {
         executeCurrentLineAction = UserAction.create(I18n.getString("ExecuteCurrentLine"), Util.EXECUTE_LINE_ICON, "Execute the current line as a query",
                 KeyEvent.VK_ENTER, KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, menuShortcutKeyMask), e -> executeQueryCurrentLine());
 
+        executeStatementsAction = UserAction.create(I18n.getString("ExecuteStatements"), "Execute every statement of the full or highlighted text and show its result separately",
+                KeyEvent.VK_P, KeyStroke.getKeyStroke(KeyEvent.VK_E, menuShortcutKeyMask | InputEvent.SHIFT_MASK), e -> executeStatements());
+
+        subscribeAction = UserAction.create(I18n.getString("Subscribe"), "Execute the highlighted text or the current line, e.g. .u.sub[`trade;`], on a new connection and show the updates in live tables",
+                KeyEvent.VK_B, e -> subscribe());
+
         refreshAction = UserAction.create(I18n.getString("Refresh"), Util.REFRESH_ICON, "Refresh the result set",
                 KeyEvent.VK_R, KeyStroke.getKeyStroke(KeyEvent.VK_Y, menuShortcutKeyMask | InputEvent.SHIFT_MASK), e -> refreshQuery());
 
@@ -831,6 +852,8 @@ public class StudioPanel extends JPanel implements WindowListener {
         CONFIG.setMaxCharsInTableCell(dialog.getMaxCharsInTableCell());
         CONFIG.setDouble(Config.CELL_RIGHT_PADDING, dialog.getCellRightPadding());
         CONFIG.setInt(Config.CELL_MAX_WIDTH, dialog.getCellMaxWidth());
+        CONFIG.setInt(Config.RESPONSE_SPILL_THRESHOLD_MB, dialog.getResponseSpillThreshold());
+        CONFIG.setInt(Config.OFF_HEAP_VECTOR_THRESHOLD_MB, dialog.getOffHeapVectorThreshold());
         CONFIG.setExecAllOption(dialog.getExecAllOption());
         CONFIG.setBoolean(Config.SAVE_ON_EXIT, dialog.isSaveOnExit());
         CONFIG.setBoolean(Config.FILE_WATCHER_ENABLED, dialog.isFileWatcherEnabled());
@@ -1186,6 +1209,8 @@ public class StudioPanel extends JPanel implements WindowListener {
         menu.setMnemonic(KeyEvent.VK_Q);
         menu.add(new JMenuItem(executeCurrentLineAction));
         menu.add(new JMenuItem(executeAction));
+        menu.add(new JMenuItem(executeStatementsAction));
+        menu.add(new JMenuItem(subscribeAction));
         menu.add(new JMenuItem(stopAction));
         menu.add(new JMenuItem(refreshAction));
         menu.add(new JMenuItem(toggleCommaFormatAction));
@@ -1684,6 +1709,36 @@ public class StudioPanel extends JPanel implements WindowListener {
         executeQuery(getEditorText(editor.getTextArea()));
     }
 
+    public void executeStatements() {
+        String text = getEditorText(editor.getTextArea());
+        if (text == null) return;
+
+        List<String> statements = QScriptSplitter.split(text);
+        if (statements.size() < 2) {
+            executeQuery(text);
+            return;
+        }
+        editor.getTextArea().setCursor(waitCursor);
+        editor.setStatus("Executing " + statements.size() + " statements");
+        editor.getQueryExecutor().execute(statements);
+        refreshActionState();
+    }
+
+    public void subscribe() {
+        String text = editor.getTextArea().getSelectedText();
+        if (text == null) text = getCurrentLineEditorText(editor.getTextArea());
+        if (text == null || text.trim().length() == 0) return;
+        Subscription.subscribe(editor, text.trim());
+    }
+
+    public void addStreamingTable(QueryResult queryResult, StreamingTableModel model, String name, Runnable closeAction) {
+        TabPanel tab = new TabPanel(this, queryResult, model);
+        tab.addInto(tabbedPane);
+        tabbedPane.setTitleAt(tabbedPane.indexOfComponent(tab), name + " [live] ");
+        tab.setToolTipText(editor.getServer().getConnectionString());
+        tab.setCloseAction(closeAction);
+    }
+
     private void executeQuery(String text) {
         if (text == null) {
             return;
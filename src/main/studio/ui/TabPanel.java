@@ -8,8 +8,13 @@ import javax.swing.*;
 import javax.swing.border.EtchedBorder;
 import javax.swing.text.JTextComponent;
 import java.awt.*;
+import java.awt.event.HierarchyEvent;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 public class TabPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+
     private StudioPanel panel;
 
     private JToolBar toolbar = null;
@@ -18,14 +23,23 @@ public class TabPanel extends JPanel {
     private QueryResult queryResult;
     private K.KBase result;
     private JTextComponent textArea = null;
+    private ResultConsole console = null;
     private QGrid grid = null;
     private KFormatContext formatContext = new KFormatContext(KFormatContext.DEFAULT);
     private ResultType type;
+    private Runnable closeAction = null;
+    private boolean closed = false;
+    // the console text is formatted once the tab is shown
+    private boolean textStale = false;
+
+    // the number of open tabs by the result; lazy columns of the result are released once its last tab is closed
+    private static final Map<K.KBase, Integer> openTabs = new IdentityHashMap<>();
 
     public TabPanel(StudioPanel panel, QueryResult queryResult, KTableModel model) {
         this.panel = panel;
         this.queryResult = queryResult;
         this.result = queryResult.getResult();
+        if (result != null) openTabs.merge(result, 1, Integer::sum);
         initComponents(model);
     }
 
@@ -36,6 +50,28 @@ public class TabPanel extends JPanel {
         }
     }
 
+    // the action is run once the tab is closed; dragging the tab into another window doesn't close it
+    public void setCloseAction(Runnable closeAction) {
+        this.closeAction = closeAction;
+    }
+
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        SwingUtilities.invokeLater(() -> {
+            if (closed || isDisplayable()) return;
+            closed = true;
+            if (console != null) console.close();
+            if (closeAction != null) {
+                closeAction.run();
+                closeAction = null;
+            }
+            if (result != null && openTabs.computeIfPresent(result, (k, count) -> count == 1 ? null : count - 1) == null) {
+                LazyColumns.release(result);
+            }
+        });
+    }
+
     public ResultType getType() {
         return type;
     }
@@ -64,10 +100,9 @@ public class TabPanel extends JPanel {
                     type = ResultType.TABLE;
                 }
             } else {
-                EditorPane editor = new EditorPane(false);
-                editor.setLineWrap(true);
-                textArea = editor.getTextArea();
-                component = editor;
+                console = new ResultConsole();
+                textArea = console.getTextArea();
+                component = console;
                 type = ResultType.TEXT;
             }
 
@@ -92,6 +127,14 @@ public class TabPanel extends JPanel {
             toolbar.add(tglBtnComma);
             toolbar.add(Box.createRigidArea(new Dimension(16,16)));
             toolbar.add(uploadBtn);
+            if (console != null) {
+                addHierarchyListener(e -> {
+                    if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && isShowing()) {
+                        // a tab is shown for a moment when it is added before another one is selected
+                        SwingUtilities.invokeLater(this::formatTextIfShown);
+                    }
+                });
+            }
             updateFormatting();
         } else {
             textArea = new JTextPane();
@@ -141,13 +184,19 @@ public class TabPanel extends JPanel {
             grid.setFormatContext(formatContext);
         }
         if (type == ResultType.TEXT) {
-            String text;
-            if ((result instanceof K.UnaryPrimitive) && ((K.UnaryPrimitive)result).isIdentity() ) text = "";
-            else {
-                text = Util.limitString(result.toString(formatContext), Config.getInstance().getMaxCharsInResult());
-            }
-            textArea.setText(text);
+            textStale = true;
+            formatTextIfShown();
+        }
+    }
+
+    private void formatTextIfShown() {
+        if (!textStale || !isShowing()) return;
+        textStale = false;
+        if ((result instanceof K.UnaryPrimitive) && ((K.UnaryPrimitive)result).isIdentity() ) {
+            console.setText("");
+            return;
         }
+        console.setResult(result, formatContext);
     }
 
     public void toggleCommaFormatting() {
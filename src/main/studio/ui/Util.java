@@ -1,5 +1,6 @@
 package studio.ui;
 
+import studio.kdb.KFormatContext;
 import studio.utils.Transferables;
 
 import javax.swing.*;
@@ -113,7 +114,7 @@ public class Util {
 
     public static String limitString(String text, int limit) {
         if (text.length() <= limit) return text;
-        return text.substring(0, limit)  + " ...";
+        return text.substring(0, limit) + KFormatContext.ELLIPSIS;
     }
 
     public static void copyTextToClipboard(String text) {
@@ -4,6 +4,9 @@ import studio.kdb.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 import javax.swing.*;
 import javax.swing.table.*;
 
@@ -16,6 +19,16 @@ public class WidthAdjuster extends MouseAdapter {
 
     private static final int EPSILON = 5;   //boundary sensitivity
     private boolean[] limitWidthState;
+    // columns which are sized by the header only until they are scrolled into view, so that they are not loaded before
+    private final Set<TableColumn> deferredColumns = new HashSet<>();
+
+    // repaints the progress of the sort in the header
+    private final Timer progressTimer = new Timer(100, e -> {
+        getTableHeader().repaint();
+        if (! ((KTableModel) table.getModel()).isSorting()) {
+            ((Timer) e.getSource()).stop();
+        }
+    });
 
     public WidthAdjuster(JTable table, JScrollPane scrollPane) {
         this.table = table;
@@ -27,6 +40,7 @@ public class WidthAdjuster extends MouseAdapter {
         int charWidth = SwingUtilities.computeStringWidth(table.getFontMetrics(UIManager.getFont("Table.font")), "x");
         gap =  (int) Math.round(charWidth * Config.getInstance().getDouble(Config.CELL_RIGHT_PADDING));
         cellMaxWidth = charWidth * Config.getInstance().getInt(Config.CELL_MAX_WIDTH);
+        scrollPane.getViewport().addChangeListener(e -> resizeDeferredColumns());
     }
 
     public void mousePressed(MouseEvent evt) {
@@ -50,7 +64,8 @@ public class WidthAdjuster extends MouseAdapter {
                 final int column = columnModel.getColumn(viewColumn).getModelIndex();
 
                 KTableModel ktm = (KTableModel) table.getModel();
-                ktm.sort(column);
+                ktm.sortInBackground(column, e.isShiftDown());
+                if (ktm.isSorting()) progressTimer.start();
 
                 scrollPane.repaint();
             }
@@ -74,11 +89,46 @@ public class WidthAdjuster extends MouseAdapter {
     }
 
     public void resizeAllColumns(boolean limitWidth) {
-        for (int i = 0;i < table.getColumnCount();i++)
-            resize(i, limitWidth);
+        KTableModel model = (KTableModel) table.getModel();
+        for (int i = 0;i < table.getColumnCount();i++) {
+            TableColumn tc = table.getColumnModel().getColumn(i);
+            if (model.isColumnLoaded(tc.getModelIndex())) {
+                deferredColumns.remove(tc);
+                resize(i, limitWidth);
+            } else {
+                deferredColumns.add(tc);
+                resize(i, limitWidth, 0);
+            }
+        }
+    }
+
+    private void resizeDeferredColumns() {
+        if (deferredColumns.isEmpty()) return;
+        Rectangle visible = table.getVisibleRect();
+        if (visible.width == 0) return;
+        TableColumnModel tcm = table.getColumnModel();
+        int first = tcm.getColumnIndexAtX(visible.x);
+        int last = tcm.getColumnIndexAtX(visible.x + visible.width - 1);
+        if (first == -1) return;
+        if (last == -1) last = tcm.getColumnCount() - 1;
+        for (Iterator<TableColumn> iterator = deferredColumns.iterator(); iterator.hasNext(); ) {
+            TableColumn tc = iterator.next();
+            int col = table.convertColumnIndexToView(tc.getModelIndex());
+            if (col == -1) {
+                iterator.remove();
+            } else if (first <= col && col <= last) {
+                iterator.remove();
+                resize(col, limitWidthState[col]);
+            }
+        }
     }
 
     private void resize(int col, boolean limitWidth) {
+        resize(col, limitWidth, table.getRowCount());
+    }
+
+    // sizes the column by the header and rows up to ub
+    private void resize(int col, boolean limitWidth, int ub) {
         TableColumnModel tcm = table.getColumnModel();
         TableColumn tc = tcm.getColumn(col);
         TableCellRenderer tcr = tc.getHeaderRenderer();
@@ -88,8 +138,6 @@ public class WidthAdjuster extends MouseAdapter {
         Component comp = tcr.getTableCellRendererComponent(table,tc.getHeaderValue(),false,false,0,col);
         int maxWidth = comp.getPreferredSize().width;
 
-        int ub = table.getRowCount();
-
         int stepSize = ub / 1000;
 
         if (stepSize == 0)
@@ -2,6 +2,7 @@ package studio.ui.action;
 
 import studio.kdb.K;
 import studio.kdb.KFormatContext;
+import studio.kdb.KTableModel;
 import studio.ui.StudioOptionPane;
 import studio.ui.Util;
 
@@ -47,6 +48,33 @@ public class CopyTableSelectionAction implements ActionListener {
         else copyHtmlFormat();
     }
 
+    // the cells of a K table are read from the column vectors and their texts are cached by the model
+    private boolean isNull(int row, int col) {
+        if (table.getModel() instanceof KTableModel) {
+            KTableModel model = (KTableModel) table.getModel();
+            return model.getColumn(table.convertColumnIndexToModel(col)).isNull(model.getIndex()[table.convertRowIndexToModel(row)]);
+        }
+        return ((K.KBase) table.getValueAt(row, col)).isNull();
+    }
+
+    private String getText(int row, int col) {
+        if (table.getModel() instanceof KTableModel) {
+            return ((KTableModel) table.getModel()).getCellText(table.convertRowIndexToModel(row),
+                    table.convertColumnIndexToModel(col), KFormatContext.NO_TYPE, 0);
+        }
+        return ((K.KBase) table.getValueAt(row, col)).toString(KFormatContext.NO_TYPE);
+    }
+
+    // dates are copied as Excel dates
+    private String getExcelText(int row, int col) {
+        Class<?> columnClass = table.getColumnClass(col);
+        if (columnClass == K.KDateVector.class || columnClass == K.KList.class) {
+            K.KBase b = (K.KBase) table.getValueAt(row, col);
+            if (b instanceof K.KDate) return ((K.KDate) b).toExcelDate();
+        }
+        return getText(row, col);
+    }
+
     private void copyExcelFormat() {
         if (table.getSelectedRowCount() == table.getRowCount()) {
             for (int col = 0; col < numcols; col++) {
@@ -65,13 +93,8 @@ public class CopyTableSelectionAction implements ActionListener {
                 if (symColumn)
                     sb.append("\"");
 
-                K.KBase b = (K.KBase) table.getValueAt(rowsselected[row], colsselected[col]);
-                if (!b.isNull()) {
-                    if (b instanceof K.KDate) {
-                        sb.append(((K.KDate) b).toExcelDate());
-                    } else {
-                        sb.append(b.toString(KFormatContext.NO_TYPE));
-                    }
+                if (!isNull(rowsselected[row], colsselected[col])) {
+                    sb.append(getExcelText(rowsselected[row], colsselected[col]));
                 }
                 if (symColumn)
                     sb.append("\"");
@@ -97,10 +120,9 @@ public class CopyTableSelectionAction implements ActionListener {
             }
             sb.append("<tr>");
             for (int col = 0; col < numcols; col++) {
-                K.KBase b = (K.KBase) table.getValueAt(rowsselected[row], colsselected[col]);
                 sb.append("<td>");
-                if (!b.isNull())
-                    sb.append(b.toString(KFormatContext.NO_TYPE));
+                if (!isNull(rowsselected[row], colsselected[col]))
+                    sb.append(getText(rowsselected[row], colsselected[col]));
                 sb.append("</td>");
             }
             sb.append("</tr>");
@@ -8,6 +8,8 @@ import studio.ui.EditorTab;
 import studio.ui.StudioPanel;
 
 import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class QueryExecutor implements ProgressCallback {
@@ -21,11 +23,13 @@ public class QueryExecutor implements ProgressCallback {
 
     private volatile ProgressMonitor pm;
     private boolean compressed;
-    private int msgLength;
+    private long msgLength;
 
-    private static final String[] suffix = {"B", "K", "M"};
-    private static final double[] factor = {1, 1024, 1024*1024};
+    private static final String[] suffix = {"B", "K", "M", "G"};
+    private static final double[] factor = {1, 1024, 1024*1024, 1024*1024*1024};
     private int progressNoteIndex = 0;
+    // ProgressMonitor works with int, so the progress of messages over 2 GB is reported in KB
+    private int progressShift = 0;
 
     public QueryExecutor(EditorTab editor) {
         this.editor = editor;
@@ -41,6 +45,12 @@ public class QueryExecutor implements ProgressCallback {
         worker.execute();
     }
 
+    // executes the statements one by one pipelined on a single connection; every result is shown separately
+    public void execute(List<String> statements) {
+        worker = new Worker(queryIndex.getAndIncrement(), editor.getServer(), statements);
+        worker.execute();
+    }
+
     public void cancel() {
         if (worker == null) return;
         if (worker.isDone()) return;
@@ -59,7 +69,7 @@ public class QueryExecutor implements ProgressCallback {
         this.compressed = compressed;
     }
 
-    private String formatProgressNote(int total) {
+    private String formatProgressNote(long total) {
         if (progressNoteIndex == 0) {
             return String.format("%,d of %,d B", total, msgLength);
         } else {
@@ -68,16 +78,19 @@ public class QueryExecutor implements ProgressCallback {
     }
 
     @Override
-    public void setMsgLength(int msgLength) {
+    public void setMsgLength(long msgLength) {
         this.msgLength = msgLength;
 
         if (msgLength < 2*1024) progressNoteIndex = 0;
         else if (msgLength < 2*1024*1024) progressNoteIndex = 1;
-        else progressNoteIndex = 2;
+        else if (msgLength < 2L*1024*1024*1024) progressNoteIndex = 2;
+        else progressNoteIndex = 3;
+
+        progressShift = msgLength > Integer.MAX_VALUE ? 10 : 0;
 
         UIManager.put("ProgressMonitor.progressText", "Studio for kdb+");
         pm = new ProgressMonitor(editor.getTextArea(), "Receiving " + (compressed ? "compressed " : "") + "data ...",
-                                    formatProgressNote(0), 0, msgLength);
+                                    formatProgressNote(0), 0, (int) (msgLength >> progressShift));
         SwingUtilities.invokeLater( () -> {
             pm.setMillisToDecideToPopup(300);
             pm.setMillisToPopup(100);
@@ -86,9 +99,9 @@ public class QueryExecutor implements ProgressCallback {
     }
 
     @Override
-    public void setCurrentProgress(int total) {
+    public void setCurrentProgress(long total) {
         SwingUtilities.invokeLater( () -> {
-            pm.setProgress(total);
+            pm.setProgress((int) (total >> progressShift));
             pm.setNote(formatProgressNote(total));
         });
 
@@ -104,6 +117,7 @@ public class QueryExecutor implements ProgressCallback {
         private volatile String queryText;
         private volatile kx.c c = null;
         private final int queryIndex;
+        private volatile List<String> statements = null;
 
         public Worker(int queryIndex, Server server, K.KBase query) {
             this.queryIndex = queryIndex;
@@ -119,14 +133,23 @@ public class QueryExecutor implements ProgressCallback {
             this.queryText = query;
         }
 
+        public Worker(int queryIndex, Server server, List<String> statements) {
+            this(queryIndex, server, String.join("\n", statements));
+            this.statements = statements;
+        }
+
+        // c is null while the worker waits for a connection; cancel(true) interrupts the wait then
         void closeConnection() {
-            if (c!=null) {
-                c.close();
+            kx.c conn = c;
+            if (conn != null) {
+                conn.close();
             }
         }
 
         @Override
         protected QueryResult doInBackground() {
+            if (statements != null) return executeStatements();
+
             QueryResult result = new QueryResult(server, queryText);
             queryLog.info("#{}: query {}({})\n{}",queryIndex, server.getFullName(), server.getConnectionString(), queryText);
             long startTime = System.currentTimeMillis();
@@ -137,7 +160,7 @@ public class QueryExecutor implements ProgressCallback {
                 result.setResult(response);
             } catch (Throwable e) {
                 if (! (e instanceof kx.c.K4Exception)) {
-                    log.error("Error occurred during query execution",e);
+                    logError(e);
                     if (c != null) c.close();
                 }
                 result.setError(e);
@@ -147,6 +170,21 @@ public class QueryExecutor implements ProgressCallback {
                 }
             }
             result.setExecutionTime(System.currentTimeMillis() - startTime);
+            logResult(result);
+            return result;
+        }
+
+        // cancel closes the connection or interrupts the wait for one, which isn't an error
+        private void logError(Throwable e) {
+            kx.c conn = c;
+            if (isCancelled() || conn != null && conn.isCancelled()) {
+                queryLog.info("#{}: cancelled", queryIndex);
+            } else {
+                log.error("Error occurred during query execution", e);
+            }
+        }
+
+        private void logResult(QueryResult result) {
             if (result.getError() != null) {
                 if (result.getError() instanceof kx.c.K4Exception) {
                     queryLog.info("#{}: server returns error {}", queryIndex, result.getError().getMessage());
@@ -156,11 +194,58 @@ public class QueryExecutor implements ProgressCallback {
             } else {
                 queryLog.info("#{}: type={}, count={}, time={}", queryIndex, result.getResult().getType(), result.getResult().count(), result.getExecutionTime());
             }
-            return result;
+        }
+
+        // All results but the last one are passed to the EDT as soon as they arrive; invokeLater() keeps them
+        // ahead of done() which shows the last one.
+        private QueryResult executeStatements() {
+            queryLog.info("#{}: {} statements {}({})\n{}",queryIndex, statements.size(), server.getFullName(), server.getConnectionString(), queryText);
+            List<K.KBase> queries = new ArrayList<>();
+            for (String statement: statements) {
+                queries.add(new K.KCharacterVector(statement));
+            }
+            QueryResult[] last = new QueryResult[1];
+            long[] time = new long[] {System.currentTimeMillis()};
+            int[] next = new int[1];
+            try {
+                c = ConnectionPool.getInstance().leaseConnection(server);
+                if (c == null) throw new RuntimeException("Not connected to server");
+                c.k(queries, QueryExecutor.this, (index, response, error) -> {
+                    QueryResult result = new QueryResult(server, statements.get(index));
+                    if (error == null) result.setResult(response);
+                    else result.setError(error);
+                    long now = System.currentTimeMillis();
+                    result.setExecutionTime(now - time[0]);
+                    time[0] = now;
+                    next[0] = index + 1;
+                    logResult(result);
+                    if (index < statements.size() - 1) {
+                        SwingUtilities.invokeLater(() -> StudioPanel.queryExecutionComplete(editor, result));
+                    } else {
+                        last[0] = result;
+                    }
+                });
+            } catch (Throwable e) {
+                logError(e);
+                if (c != null) c.close();
+                QueryResult result = new QueryResult(server, statements.get(Math.min(next[0], statements.size() - 1)));
+                result.setError(e);
+                result.setExecutionTime(System.currentTimeMillis() - time[0]);
+                logResult(result);
+                last[0] = result;
+            } finally {
+                if (c!=null) {
+                    ConnectionPool.getInstance().freeConnection(server, c);
+                }
+            }
+            return last[0];
         }
 
         public void cancelQuery() {
-            c.cancel();
+            kx.c conn = c;
+            if (conn != null) {
+                conn.cancel();
+            }
         }
 
         @Override
@@ -0,0 +1,153 @@
+package studio.ui.action;
+
+import kx.MessageListener;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import studio.kdb.ConnectionPool;
+import studio.kdb.K;
+import studio.kdb.Server;
+import studio.kdb.StreamingTableModel;
+import studio.ui.EditorTab;
+import studio.ui.StudioPanel;
+
+import javax.swing.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runs the query (e.g. .u.sub[`trade;`]) on a dedicated connection and shows the tables of the following
+ * .u.upd-style async messages (fn; `table; table) in live result tabs. The subscription stops when
+ * all its tabs are closed.
+ */
+public class Subscription implements MessageListener {
+
+    private static final Logger log = LogManager.getLogger();
+    private static final Logger queryLog = LogManager.getLogger("Query");
+
+    // rows kept in every live table
+    private static final int MAX_ROWS = 100_000;
+    // messages which are decoded ahead of the dispatcher
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int REFRESH_INTERVAL = 100;
+
+    private final EditorTab editor;
+    private final Server server;
+    private final String query;
+    private volatile kx.c c;
+
+    // accessed on the dispatcher thread
+    private final Map<String, StreamingTableModel> tables = new HashMap<>();
+    private final List<StreamingTableModel> openTables = new CopyOnWriteArrayList<>();
+    private final Timer timer;
+
+    private Subscription(EditorTab editor, String query) {
+        this.editor = editor;
+        this.server = editor.getServer();
+        this.query = query;
+        timer = new Timer(REFRESH_INTERVAL, e -> {
+            for (StreamingTableModel model: openTables) {
+                model.refresh();
+            }
+        });
+    }
+
+    public static void subscribe(EditorTab editor, String query) {
+        Subscription subscription = new Subscription(editor, query);
+        Thread thread = new Thread(subscription::start, "Subscription to " + subscription.server.getFullName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void start() {
+        queryLog.info("subscribe {}({})\n{}", server.getFullName(), server.getConnectionString(), query);
+        QueryResult result = new QueryResult(server, query);
+        long startTime = System.currentTimeMillis();
+        try {
+            c = ConnectionPool.getInstance().createConnection(server);
+            if (c == null) throw new RuntimeException("Not connected to server");
+            K.KBase response = c.k(new K.KCharacterVector(query));
+            // tickerplant's .u.sub returns (`table; schema) or a list of such pairs
+            addTables(response);
+            if (response instanceof K.KList && ((K.KList) response).getLength() > 0 && !isUpdate(response)) {
+                for (K.KBase item: (K.KBase[]) ((K.KList) response).getArray()) {
+                    addTables(item);
+                }
+            }
+            c.listen(this, QUEUE_CAPACITY);
+            SwingUtilities.invokeLater(() -> editor.setStatus("Subscribed to " + server.getFullName()));
+        } catch (Throwable e) {
+            if (! (e instanceof kx.c.K4Exception)) {
+                log.error("Error occurred during subscription", e);
+            }
+            if (c != null) c.close();
+            result.setError(e);
+            result.setExecutionTime(System.currentTimeMillis() - startTime);
+            SwingUtilities.invokeLater(() -> StudioPanel.queryExecutionComplete(editor, result));
+        }
+    }
+
+    private static boolean isUpdate(K.KBase message) {
+        if (! (message instanceof K.KList)) return false;
+        K.KList list = (K.KList) message;
+        int count = list.getLength();
+        return count >= 2 && list.at(count - 2) instanceof K.KSymbol && list.at(count - 1) instanceof K.Flip;
+    }
+
+    private void addTables(K.KBase message) {
+        if (!isUpdate(message)) return;
+        K.KList list = (K.KList) message;
+        int count = list.getLength();
+        String name = ((K.KSymbol) list.at(count - 2)).s;
+        K.Flip table = (K.Flip) list.at(count - 1);
+
+        StreamingTableModel model = tables.get(name);
+        if (model != null) {
+            model.append(table);
+            return;
+        }
+        StreamingTableModel newModel = new StreamingTableModel(table, MAX_ROWS);
+        tables.put(name, newModel);
+        SwingUtilities.invokeLater(() -> {
+            QueryResult result = new QueryResult(server, query);
+            result.setResult(table);
+            newModel.refresh();
+            editor.getPanel().addStreamingTable(result, newModel, name, () -> {
+                openTables.remove(newModel);
+                if (openTables.isEmpty()) close();
+            });
+            openTables.add(newModel);
+            timer.start();
+        });
+    }
+
+    @Override
+    public void message(K.KBase message) {
+        try {
+            addTables(message);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignore update which doesn't match the table: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void closed(Throwable error) {
+        queryLog.info("subscription to {} is closed", server.getFullName());
+        SwingUtilities.invokeLater(() -> {
+            timer.stop();
+            // show the last updates
+            for (StreamingTableModel model: openTables) {
+                model.refresh();
+            }
+            if (error != null) {
+                log.error("Subscription failed", error);
+                editor.setStatus("Subscription to " + server.getFullName() + " failed: " + error.getMessage());
+            }
+        });
+    }
+
+    private void close() {
+        if (c != null) c.close();
+    }
+}
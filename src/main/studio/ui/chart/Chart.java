@@ -24,7 +24,6 @@ import org.jfree.data.xy.XYSeriesCollection;
 import studio.kdb.Config;
 import studio.kdb.K;
 import studio.kdb.KTableModel;
-import studio.kdb.ToDouble;
 import studio.ui.StudioOptionPane;
 import studio.ui.Util;
 import studio.utils.WindowsAppUserMode;
@@ -297,18 +296,18 @@ public class Chart implements ComponentListener {
 
         Class xClazz = table.getColumnClass(xIndex);
         KBase2RegularTimePeriod converter = regularTimePeriodConverters.get(xClazz);
+        K.KBaseVector<? extends K.KBase> xColumn = table.getColumn(xIndex);
+        K.KBaseVector<? extends K.KBase> yColumn = table.getColumn(col);
+        int[] index = table.getIndex();
         if (converter == null) {
             XYSeriesCollection collection = new XYSeriesCollection();
             collection.setAutoWidth(true);
             XYSeries series = new XYSeries(table.getColumnName(col));
             for (int row = 0; row < table.getRowCount(); row++) {
-                K.KBase xValue = (K.KBase)table.getValueAt(row, xIndex);
-                K.KBase yValue = (K.KBase)table.getValueAt(row, col);
-                if (xValue.isNull() || yValue.isNull()) continue;
+                int i = index[row];
+                if (xColumn.isNull(i) || yColumn.isNull(i)) continue;
 
-                double x = ((ToDouble)xValue).toDouble();
-                double y = ((ToDouble)yValue).toDouble();
-                series.add(x, y);
+                series.add(xColumn.getDouble(i), yColumn.getDouble(i));
             }
             collection.addSeries(series);
             return collection;
@@ -316,14 +315,11 @@ public class Chart implements ComponentListener {
             TimeSeriesCollection collection = new TimeSeriesCollection();
             TimeSeries series = new TimeSeries(table.getColumnName(col));
             for (int row = 0; row < table.getRowCount(); row++) {
-                K.KBase xValue = (K.KBase) table.getValueAt(row, xIndex);
-                if (xValue.isNull()) continue;
+                int i = index[row];
+                if (xColumn.isNull(i) || yColumn.isNull(i)) continue;
 
-                RegularTimePeriod period = converter.convert(xValue);
-                K.KBase value = (K.KBase) table.getValueAt(row, col);
-                if (value.isNull()) continue;
-
-                series.addOrUpdate(period, ((ToDouble)value).toDouble());
+                RegularTimePeriod period = converter.convert(xColumn.at(i));
+                series.addOrUpdate(period, yColumn.getDouble(i));
             }
             collection.addSeries(series);
 
@@ -0,0 +1,51 @@
+package studio.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Splits a q script into top-level statements the same way as q loads a script:
+// a statement continues on the following lines which start with a whitespace.
+public class QScriptSplitter {
+
+    public static List<String> split(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder statement = null;
+        boolean blockComment = false;
+        for (String line: script.split("\r\n|\n|\r", -1)) {
+            String trimmed = trimRight(line);
+            if (blockComment) {
+                if (trimmed.equals("\\")) blockComment = false;
+                continue;
+            }
+            if (trimmed.equals("/")) {
+                blockComment = true;
+                continue;
+            }
+            // the rest of the script is a comment
+            if (trimmed.equals("\\")) break;
+
+            if (trimmed.isEmpty() || trimmed.startsWith("/")) continue;
+
+            if (statement != null && Character.isWhitespace(line.charAt(0))) {
+                statement.append('\n').append(trimmed);
+            } else {
+                add(statements, statement);
+                statement = new StringBuilder(trimmed);
+            }
+        }
+        add(statements, statement);
+        return statements;
+    }
+
+    private static void add(List<String> statements, StringBuilder statement) {
+        if (statement == null) return;
+        String text = statement.toString().trim();
+        if (! text.isEmpty()) statements.add(text);
+    }
+
+    private static String trimRight(String line) {
+        int end = line.length();
+        while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) end--;
+        return line.substring(0, end);
+    }
+}
@@ -2,6 +2,7 @@ package studio.utils;
 
 import studio.kdb.K;
 import studio.kdb.KFormatContext;
+import studio.kdb.KTableModel;
 
 import javax.swing.table.TableModel;
 import java.util.ArrayList;
@@ -63,6 +64,9 @@ public class TableConnExtractor {
     }
 
     private static String getValue(TableModel model, int row, int col) {
+        if (model instanceof KTableModel) {
+            return ((KTableModel) model).getCellText(row, col, KFormatContext.NO_TYPE, 0);
+        }
         return ((K.KBase)model.getValueAt(row, col)).toString(KFormatContext.NO_TYPE);
     }
 
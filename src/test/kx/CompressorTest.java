@@ -0,0 +1,170 @@
+package kx;
+
+import org.junit.jupiter.api.Test;
+import studio.kdb.K;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressorTest {
+
+    private static byte[] message(byte[] body) {
+        byte[] msg = new byte[8 + body.length];
+        msg[1] = 1;
+        ByteBuffer.wrap(msg).putInt(4, msg.length);
+        System.arraycopy(body, 0, msg, 8, body.length);
+        return msg;
+    }
+
+    private static byte[] message(K.KBase x) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        x.serialise(out);
+        return message(out.toByteArray());
+    }
+
+    private static CompressedDeserialiser decompressor(byte[] compressed) throws IOException {
+        return decompressor(compressed, 0);
+    }
+
+    private static CompressedDeserialiser decompressor(byte[] compressed, long spillThreshold) throws IOException {
+        assertEquals(1, compressed[2]);
+        assertEquals(compressed.length, ByteBuffer.wrap(compressed).getInt(4));
+        Deserialiser in = new Deserialiser(ByteBuffer.wrap(compressed, 8, compressed.length - 8), false, "UTF-8");
+        return new CompressedDeserialiser(in, "UTF-8", spillThreshold);
+    }
+
+    private static void checkBytes(byte[] msg) throws IOException {
+        byte[] compressed = Compressor.compress(msg, msg.length);
+        assertNotNull(compressed);
+        assertTrue(compressed.length <= msg.length / 2);
+
+        CompressedDeserialiser d = decompressor(compressed);
+        d.fill(msg.length - 8);
+        byte[] body = new byte[msg.length - 8];
+        d.b.get(body);
+        for (int i = 0; i < body.length; i++) {
+            assertEquals(msg[8 + i], body[i], "byte " + (8 + i));
+        }
+    }
+
+    @Test
+    public void testRoundTripOfKObjects() throws Exception {
+        long[] longs = new long[100_000];
+        double[] doubles = new double[longs.length];
+        String[] syms = new String[longs.length];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = i / 7;
+            doubles[i] = i % 100 / 4.0;
+            syms[i] = "sym" + (i % 13);
+        }
+        K.KBase table = new K.Flip(new K.KSymbolVector("a", "b", "c"),
+                new K.KList(new K.KLongVector(longs), new K.KDoubleVector(doubles), new K.KSymbolVector(syms)));
+
+        for (K.KBase x: new K.KBase[] {table, new K.KCharacterVector(new String(new char[10_000]).replace('\0', 'x')),
+                                        new K.KList(table, new K.KLongVector(new long[50_000]))} ) {
+            byte[] msg = message(x);
+            byte[] compressed = Compressor.compress(msg, msg.length);
+            assertNotNull(compressed);
+            assertEquals(x, decompressor(compressed).readResponse());
+        }
+    }
+
+    @Test
+    public void testRoundTripThroughSpillFile() throws Exception {
+        long[] longs = new long[200_000];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = i / 5;
+        }
+        K.KBase x = new K.KList(new K.KLongVector(longs), new K.KSymbolVector("a", "b", "a"),
+                new K.KCharacterVector(new String(new char[70_000]).replace('\0', 'y')));
+        byte[] msg = message(x);
+        byte[] compressed = Compressor.compress(msg, msg.length);
+        assertNotNull(compressed);
+
+        CompressedDeserialiser d = decompressor(compressed, 1);
+        // decompressed into the mapped file rather than an array on the heap
+        assertFalse(d.b.hasArray());
+        try {
+            assertEquals(x, d.readResponse());
+        } finally {
+            d.close();
+        }
+    }
+
+    // chunks of 4 KB which overlap by 64 bytes, so that values cross the chunks and the overlaps
+    @Test
+    public void testChunkedSpillFile() throws Exception {
+        Random random = new Random(2);
+        K.KBase[] items = new K.KBase[300];
+        for (int i = 0; i < items.length; i++) {
+            switch (i % 3) {
+                case 0: items[i] = new K.KCharacterVector(new String(new char[random.nextInt(300)]).replace('\0', (char) ('a' + i % 26))); break;
+                case 1: items[i] = new K.KSymbol("sym" + random.nextInt(50)); break;
+                default: items[i] = new K.KLongVector(random.nextInt(10), random.nextInt(1000), 7, 7, 7);
+            }
+        }
+        K.KBase x = new K.KList(new K.KList(items), new K.KLongVector(new long[20_000]));
+        byte[] msg = message(x);
+        byte[] compressed = Compressor.compress(msg, msg.length);
+        assertNotNull(compressed);
+        Deserialiser in = new Deserialiser(ByteBuffer.wrap(compressed, 8, compressed.length - 8), false, "UTF-8");
+        CompressedDeserialiser d = new CompressedDeserialiser(in, "UTF-8", 1, 12, 64);
+        try {
+            assertEquals(x, d.readResponse());
+        } finally {
+            d.close();
+        }
+
+        // byte by byte with reads of random sizes
+        in = new Deserialiser(ByteBuffer.wrap(compressed, 8, compressed.length - 8), false, "UTF-8");
+        d = new CompressedDeserialiser(in, "UTF-8", 1, 12, 64);
+        try {
+            for (int i = 8; i < msg.length; ) {
+                int n = Math.min(msg.length - i, 1 + random.nextInt(random.nextBoolean() ? 16 : 200));
+                d.fill(n);
+                for (int j = 0; j < n; j++, i++) {
+                    assertEquals(msg[i], d.b.get(), "byte " + i);
+                }
+            }
+        } finally {
+            d.close();
+        }
+    }
+
+    @Test
+    public void testRoundTripOfBytes() throws Exception {
+        Random random = new Random(0);
+        for (int n = 0; n < 20; n++) {
+            byte[] body = new byte[3000 + random.nextInt(200_000)];
+            // runs of repeated and copied fragments with some noise
+            for (int i = 0; i < body.length; ) {
+                int len = 1 + random.nextInt(n % 2 == 0 ? 20 : 600);
+                int kind = random.nextInt(8);
+                for (int j = 0; j < len && i < body.length; j++, i++) {
+                    if (kind == 0) body[i] = (byte) random.nextInt(4);
+                    else if (kind < 4 || i < 100) body[i] = (byte) n;
+                    else body[i] = body[i - 1 - random.nextInt(3) * 33];
+                }
+            }
+            checkBytes(message(body));
+        }
+    }
+
+    @Test
+    public void testLongMatches() throws Exception {
+        checkBytes(message(new byte[100_000]));
+    }
+
+    @Test
+    public void testIncompressible() {
+        byte[] body = new byte[100_000];
+        new Random(1).nextBytes(body);
+        byte[] msg = message(body);
+        assertNull(Compressor.compress(msg, msg.length));
+        assertNull(Compressor.compress(new byte[8], 8));
+    }
+}
@@ -0,0 +1,64 @@
+package kx;
+
+import studio.kdb.K;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Decoding throughput of primitive vectors through the streaming deserialiser with a 1 MB window, as when a
+ * response is read from a socket. Not run with the tests; start it with the number of elements as an optional
+ * argument, e.g. java -Xmx2g kx.DeserialiserBenchmark 10000000
+ */
+public class DeserialiserBenchmark {
+
+    private final static int WINDOW = 1 << 20;
+    private final static int RUNS = 7;
+
+    // through the stream, so that the benchmark also runs on the trees before the bulk decoding
+    private static byte[] serialise(K.KBase x) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        x.serialise(out);
+        return out.toByteArray();
+    }
+
+    private static double bestMBps(byte[] msg) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            new StreamDeserialiser(new ByteArrayInputStream(msg), msg.length, WINDOW, false, "UTF-8", null).readResponse();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return msg.length / 1e6 / (best / 1e9);
+    }
+
+    public static void main(String... args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        Random random = new Random(0);
+        long[] longs = new long[n];
+        int[] ints = new int[n];
+        short[] shorts = new short[n];
+        double[] doubles = new double[n];
+        for (int i = 0; i < n; i++) {
+            longs[i] = random.nextLong();
+            ints[i] = random.nextInt();
+            shorts[i] = (short) random.nextInt();
+            doubles[i] = random.nextDouble();
+        }
+
+        Object[][] vectors = {
+                {"long", new K.KLongVector(longs)},
+                {"float", new K.KDoubleVector(doubles)},
+                {"int", new K.KIntVector(ints)},
+                {"short", new K.KShortVector(shorts)},
+                {"timestamp", new K.KTimestampVector(longs)}
+        };
+        System.out.printf("%-10s %10s%n", "type", "MB/s");
+        for (Object[] vector : vectors) {
+            byte[] msg = serialise((K.KBase) vector[1]);
+            System.out.printf("%-10s %10.0f%n", vector[0], bestMBps(msg));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package kx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LargeMessageTest {
+
+    private static byte[] header(boolean littleEndian, int length, int upper) {
+        byte[] header = new byte[8];
+        header[0] = (byte) (littleEndian ? 1 : 0);
+        header[1] = 2;
+        header[3] = (byte) upper;
+        for (int i = 0; i < 4; i++) {
+            int shift = 8 * (littleEndian ? i : 3 - i);
+            header[4 + i] = (byte) (length >>> shift);
+        }
+        return header;
+    }
+
+    @Test
+    public void testMsgLength() {
+        assertEquals(100 - 8, c.getMsgLength(header(true, 100, 0)));
+        assertEquals(100 - 8, c.getMsgLength(header(false, 100, 0)));
+        // the length in the header is unsigned
+        assertEquals(0x90000000L - 8, c.getMsgLength(header(true, 0x90000000, 0)));
+        assertEquals(0x90000000L - 8, c.getMsgLength(header(false, 0x90000000, 0)));
+        // the 4th byte keeps the upper bits of messages over 4 GB
+        assertEquals((1L << 32) + 100 - 8, c.getMsgLength(header(true, 100, 1)));
+        assertEquals((3L << 32) + 0xffffffffL - 8, c.getMsgLength(header(false, 0xffffffff, 3)));
+    }
+
+    // a stream of zeros which doesn't touch the buffer
+    private static class ZeroStream extends InputStream {
+        private long remaining;
+
+        ZeroStream(long length) {
+            remaining = length;
+        }
+
+        @Override
+        public int read() {
+            if (remaining == 0) return -1;
+            remaining--;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining == 0) return -1;
+            int count = (int) Math.min(len, remaining);
+            remaining -= count;
+            return count;
+        }
+    }
+
+    @Test
+    public void testProgressOver2GB() throws Exception {
+        long length = 5L << 30;
+        List<Long> totals = new ArrayList<>();
+        ProgressCallback progress = new ProgressCallback() {
+            @Override
+            public void setCompressed(boolean compressed) {
+            }
+
+            @Override
+            public void setMsgLength(long msgLength) {
+            }
+
+            @Override
+            public void setCurrentProgress(long total) {
+                totals.add(total);
+            }
+        };
+        new StreamDeserialiser(new ZeroStream(length), length, 1 << 20, false, "UTF-8", progress).skipRemaining();
+
+        assertTrue(totals.size() > 90 && totals.size() <= 101, "Progress steps: " + totals.size());
+        for (int i = 1; i < totals.size(); i++) {
+            assertTrue(totals.get(i) > totals.get(i - 1));
+        }
+        assertTrue(totals.stream().anyMatch(total -> total > Integer.MAX_VALUE && total < 4L << 30));
+        assertEquals(length, (long) totals.get(totals.size() - 1));
+    }
+}
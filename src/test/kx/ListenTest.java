@@ -0,0 +1,196 @@
+package kx;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import studio.kdb.K;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ListenTest {
+
+    private ServerSocket serverSocket;
+    private Socket peer;
+    private c connection;
+
+    private final BlockingQueue<K.KBase> messages = new LinkedBlockingQueue<>();
+    private final CompletableFuture<Throwable> closed = new CompletableFuture<>();
+    private final List<String> threads = new CopyOnWriteArrayList<>();
+
+    private class Listener implements MessageListener {
+        @Override
+        public void message(K.KBase message) {
+            threads.add(Thread.currentThread().getName());
+            messages.add(message);
+        }
+
+        @Override
+        public void closed(Throwable error) {
+            closed.complete(error);
+        }
+    }
+
+    @BeforeEach
+    public void connect() throws Exception {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        connection = new c(InetAddress.getLoopbackAddress().getHostAddress(), serverSocket.getLocalPort(), "user:pwd", false);
+        CompletableFuture<Void> connected = CompletableFuture.runAsync(() -> {
+            try {
+                connection.connect();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        peer = serverSocket.accept();
+        InputStream in = peer.getInputStream();
+        while (in.read() > 0) {
+            // user and password up to the capability and 0
+        }
+        peer.getOutputStream().write(3);
+        connected.get(10, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    public void close() throws IOException {
+        connection.close();
+        peer.close();
+        serverSocket.close();
+    }
+
+    private static byte[] async(K.KBase x) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (8 + x.getSerialisedSize()));
+        buffer.position(8);
+        x.serialise(buffer);
+        buffer.put(0, (byte) 0).put(1, (byte) 0).putInt(4, buffer.capacity());
+        return buffer.array();
+    }
+
+    private void send(K.KBase... values) throws IOException {
+        OutputStream out = peer.getOutputStream();
+        for (K.KBase value : values) {
+            out.write(async(value));
+        }
+        out.flush();
+    }
+
+    @Test
+    public void testMessages() throws Exception {
+        connection.listen(new Listener(), 4);
+        K.KBase large = new K.KLongVector(new long[3 * NioChannel.BUFFER_SIZE / 8]);
+        send(new K.KLong(1), new K.KSymbol("a"), large, new K.KCharacterVector("last"));
+        // a message split between writes
+        byte[] split = async(new K.KLong(2));
+        peer.getOutputStream().write(split, 0, 5);
+        Thread.sleep(100);
+        peer.getOutputStream().write(split, 5, split.length - 5);
+
+        assertEquals(new K.KLong(1), messages.poll(10, TimeUnit.SECONDS));
+        assertEquals(new K.KSymbol("a"), messages.poll(10, TimeUnit.SECONDS));
+        assertEquals(large, messages.poll(10, TimeUnit.SECONDS));
+        assertEquals(new K.KCharacterVector("last"), messages.poll(10, TimeUnit.SECONDS));
+        assertEquals(new K.KLong(2), messages.poll(10, TimeUnit.SECONDS));
+        assertThrows(IllegalStateException.class, () -> connection.k(new K.KLong(1)));
+
+        // no thread of its own
+        for (String name : threads) {
+            assertEquals("kdb+ dispatcher", name);
+        }
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertFalse(thread.getName().startsWith("kdb+ reader"), thread.getName());
+        }
+
+        connection.close();
+        assertNull(closed.get(10, TimeUnit.SECONDS));
+    }
+
+    // a blocked listener stops the reading, so the server can't write more than the socket buffers hold
+    @Test
+    public void testSlowListener() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        connection.listen(new Listener() {
+            @Override
+            public void message(K.KBase message) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                super.message(message);
+            }
+        }, 2);
+
+        int count = 100;
+        K.KBase[] values = new K.KBase[count];
+        for (int i = 0; i < count; i++) {
+            long[] longs = new long[128 * 1024];
+            longs[0] = i;
+            values[i] = new K.KLongVector(longs);
+        }
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try {
+                send(values);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(500);
+        assertFalse(writer.isDone());
+
+        release.countDown();
+        for (int i = 0; i < count; i++) {
+            assertEquals(values[i], messages.poll(10, TimeUnit.SECONDS), "message " + i);
+        }
+        writer.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testEndOfStream() throws Exception {
+        connection.listen(new Listener(), 4);
+        send(new K.KLong(1));
+        peer.close();
+        assertEquals(new K.KLong(1), messages.poll(10, TimeUnit.SECONDS));
+        assertTrue(closed.get(10, TimeUnit.SECONDS) instanceof EOFException);
+        assertTrue(connection.isClosed() || !connection.isAlive());
+    }
+
+    @Test
+    public void testFailureOfListener() throws Exception {
+        RuntimeException failure = new RuntimeException("Failure for the test");
+        connection.listen(new Listener() {
+            @Override
+            public void message(K.KBase message) {
+                super.message(message);
+                throw failure;
+            }
+        }, 4);
+        send(new K.KLong(1), new K.KLong(2));
+        assertSame(failure, closed.get(10, TimeUnit.SECONDS));
+        assertEquals(new K.KLong(1), messages.poll(10, TimeUnit.SECONDS));
+        // the rest is dropped
+        Thread.sleep(100);
+        assertTrue(messages.isEmpty());
+        assertTrue(connection.isClosed());
+    }
+
+    @Test
+    public void testSyncMessage() throws Exception {
+        connection.listen(new Listener(), 4);
+        byte[] message = async(new K.KLong(1));
+        message[1] = 1;
+        peer.getOutputStream().write(message);
+        Throwable error = closed.get(10, TimeUnit.SECONDS);
+        assertEquals("Cannot process sync msg from remote", error.getMessage());
+        assertTrue(messages.isEmpty());
+    }
+}
@@ -0,0 +1,147 @@
+package kx;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NioChannelTest {
+
+    private ServerSocket serverSocket;
+    // the server side of the connection uses a blocking socket
+    private Socket peer;
+    private NioChannel channel;
+
+    @BeforeEach
+    public void connect() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        SocketChannel socketChannel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()));
+        peer = serverSocket.accept();
+        channel = NioTransport.getInstance().register(socketChannel);
+    }
+
+    @AfterEach
+    public void close() throws IOException {
+        channel.close();
+        peer.close();
+        serverSocket.close();
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31 + i / 256);
+        }
+        return bytes;
+    }
+
+    private static void waitFor(InputStream in, int available) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (in.available() < available && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testReadPausesAtFullBuffer() throws Exception {
+        byte[] sent = bytes(4 * NioChannel.BUFFER_SIZE + 123);
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try {
+                peer.getOutputStream().write(sent);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // the selector stops reading once the buffer is full; the rest waits in the socket
+        waitFor(channel.in, NioChannel.BUFFER_SIZE);
+        Thread.sleep(100);
+        assertEquals(NioChannel.BUFFER_SIZE, channel.in.available());
+
+        byte[] received = new byte[sent.length];
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> new DataInputStream(channel.in).readFully(received));
+        assertArrayEquals(sent, received);
+        writer.get(10, TimeUnit.SECONDS);
+    }
+
+    // a write larger than the socket buffers waits for the peer to read and is done in chunks
+    @Test
+    public void testLargeWrite() throws Exception {
+        byte[] sent = bytes(64 * NioChannel.BUFFER_SIZE + 5);
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try {
+                channel.out.write(sent, 0, sent.length);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(writer.isDone());
+
+        byte[] received = new byte[sent.length];
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> new DataInputStream(peer.getInputStream()).readFully(received));
+        assertArrayEquals(sent, received);
+        writer.get(10, TimeUnit.SECONDS);
+    }
+
+    private CompletableFuture<Integer> blockedRead() throws Exception {
+        CompletableFuture<Integer> reader = CompletableFuture.supplyAsync(() -> {
+            try {
+                return channel.in.read(new byte[10], 0, 10);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(reader.isDone());
+        return reader;
+    }
+
+    private static IOException readError(CompletableFuture<Integer> reader) throws Exception {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> reader.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause().getCause() instanceof IOException, "Unexpected error " + e.getCause());
+        return (IOException) e.getCause().getCause();
+    }
+
+    @Test
+    public void testCloseWakesReader() throws Exception {
+        CompletableFuture<Integer> reader = blockedRead();
+        channel.close();
+        assertEquals("Connection is closed", readError(reader).getMessage());
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void testEndOfStream() throws Exception {
+        CompletableFuture<Integer> reader = blockedRead();
+        peer.close();
+        assertEquals(-1, (int) reader.get(10, TimeUnit.SECONDS));
+        assertFalse(channel.isOpen());
+    }
+
+    // an unexpected exception on the selector thread fails the channel instead of leaving its reader blocked
+    @Test
+    public void testFailureOfTask() throws Exception {
+        CompletableFuture<Integer> reader = blockedRead();
+        NioTransport.getInstance().execute(channel, () -> {
+            throw new IllegalStateException("Failure for the test");
+        });
+        IOException error = readError(reader);
+        assertTrue(error.getCause() instanceof IllegalStateException);
+        assertFalse(channel.isOpen());
+    }
+}
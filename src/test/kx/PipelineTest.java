@@ -0,0 +1,181 @@
+package kx;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import studio.kdb.K;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PipelineTest {
+
+    private ServerSocket serverSocket;
+    private Thread server;
+    private final List<String> received = new ArrayList<>();
+
+    // connections which the server closes right after the handshake, as if they were idle for too long
+    private volatile int connectionsToDrop = 0;
+    private volatile int connectionCount = 0;
+
+    private void serve() {
+        while (true) {
+            try (Socket socket = serverSocket.accept()) {
+                serve(socket);
+            } catch (Exception e) {
+                if (serverSocket.isClosed()) return;
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // the response to a query "<id> ..." is the id; "error <id>" fails and "big <id>" returns a large vector
+    private void serve(Socket socket) throws Exception {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        while (in.read() > 0) {
+            // user and password up to the capability and 0
+        }
+        out.write(3);
+        if (connectionCount++ < connectionsToDrop) return;
+        while (true) {
+            byte[] header = new byte[8];
+            try {
+                in.readFully(header);
+            } catch (EOFException e) {
+                return;
+            }
+            boolean a = header[0] == 1;
+            byte[] body = new byte[(int) c.getMsgLength(header)];
+            in.readFully(body);
+            String query = ((K.KCharacterVector) new Deserialiser(ByteBuffer.wrap(body), a, "UTF-8").readResponse()).getString();
+            synchronized (received) {
+                received.add(query);
+            }
+            String[] words = query.split(" ");
+
+            ByteBuffer response;
+            if (words[0].equals("error")) {
+                byte[] message = ("failed " + words[1]).getBytes(StandardCharsets.UTF_8);
+                response = ByteBuffer.allocate(8 + 1 + message.length + 1);
+                response.position(8);
+                response.put((byte) -128).put(message).put((byte) 0);
+            } else {
+                K.KBase result = words[0].equals("big") ? new K.KLongVector(new long[4_000_000]) : new K.KCharacterVector(words[0]);
+                response = ByteBuffer.allocate((int) (8 + result.getSerialisedSize()));
+                response.position(8);
+                result.serialise(response);
+            }
+            response.put(0, (byte) 0).put(1, (byte) 2).putInt(4, response.capacity());
+            out.write(response.array());
+        }
+    }
+
+    @BeforeEach
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        server = new Thread(this::serve, "fake kdb+");
+        server.setDaemon(true);
+        server.start();
+    }
+
+    @AfterEach
+    public void stop() throws Exception {
+        serverSocket.close();
+        server.join(10_000);
+    }
+
+    private static K.KBase query(String text, int padding) {
+        char[] chars = Arrays.copyOf(text.toCharArray(), text.length() + padding);
+        Arrays.fill(chars, text.length(), chars.length, ' ');
+        return new K.KCharacterVector(new String(chars));
+    }
+
+    private K.KBase[] results;
+    private String[] errors;
+
+    private void run(List<K.KBase> queries) throws Exception {
+        results = new K.KBase[queries.size()];
+        errors = new String[queries.size()];
+        c connection = new c(InetAddress.getLoopbackAddress().getHostAddress(), serverSocket.getLocalPort(), "user:pwd", false);
+        try {
+            connection.k(queries, null, (index, result, error) -> {
+                assertNull(results[index]);
+                assertNull(errors[index]);
+                results[index] = result;
+                errors[index] = error == null ? null : error.getMessage();
+            });
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testResponsesByPosition() throws Exception {
+        List<K.KBase> queries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            queries.add(query(i == 17 ? "error 17" : "" + i, i % 7 * 100));
+        }
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> run(queries));
+
+        for (int i = 0; i < queries.size(); i++) {
+            if (i == 17) {
+                assertNull(results[i]);
+                assertEquals("failed 17", errors[i]);
+            } else {
+                assertEquals(new K.KCharacterVector("" + i), results[i], "response " + i);
+                assertNull(errors[i]);
+            }
+        }
+        assertEquals(queries.size(), received.size());
+    }
+
+    // the server writes a large response before it reads the next query while the client has large queries to write
+    @Test
+    public void testLargeQueriesAndResponses() throws Exception {
+        List<K.KBase> queries = new ArrayList<>();
+        queries.add(query("big 0", 0));
+        for (int i = 1; i < 30; i++) {
+            queries.add(query(i % 10 == 0 ? "big " + i : "" + i, 512 * 1024));
+        }
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> run(queries));
+
+        for (int i = 0; i < queries.size(); i++) {
+            K.KBase expected = i % 10 == 0 ? new K.KLongVector(new long[4_000_000]) : new K.KCharacterVector("" + i);
+            assertEquals(expected, results[i], "response " + i);
+        }
+    }
+
+    // the server closed the idle connection; the batch is sent again on a new one as a single query would be
+    @Test
+    public void testStaleConnection() throws Exception {
+        connectionsToDrop = 1;
+        c connection = new c(InetAddress.getLoopbackAddress().getHostAddress(), serverSocket.getLocalPort(), "user:pwd", false);
+        try {
+            connection.connect();
+            while (connectionCount == 0) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            List<K.KBase> responses = new ArrayList<>();
+            connection.k(Arrays.asList(query("1", 0), query("2", 0)), null, (index, result, error) -> responses.add(result));
+            assertEquals(Arrays.asList(new K.KCharacterVector("1"), new K.KCharacterVector("2")), responses);
+            assertEquals(2, connectionCount);
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package kx;
+
+import org.junit.jupiter.api.Test;
+import studio.kdb.K;
+import studio.kdb.LazyColumns;
+import studio.kdb.Sorter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SerialisationTest {
+
+    private ByteBuffer serialise(K.KBase x) throws Exception {
+        int size = (int) x.getSerialisedSize();
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        x.serialise(buffer);
+        assertEquals(size, buffer.position(), "Size of " + x);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        x.serialise(out);
+        assertArrayEquals(buffer.array(), out.toByteArray());
+        return buffer;
+    }
+
+    private void check(K.KBase x) throws Exception {
+        ByteBuffer buffer = serialise(x);
+        buffer.flip();
+        assertEquals(x, new Deserialiser(buffer, false, "UTF-8").readResponse());
+    }
+
+    @Test
+    public void testAtoms() throws Exception {
+        check(new K.KBoolean(true));
+        check(new K.KByte((byte) -3));
+        check(new K.KShort((short) -300));
+        check(new K.KInteger(Integer.MIN_VALUE));
+        check(new K.KLong(1234567890123L));
+        check(new K.KFloat(1.5f));
+        check(new K.KDouble(-2.25));
+        check(new K.KCharacter('x'));
+        check(new K.KSymbol("abc"));
+        check(new K.KGuid(new UUID(1234567890123456L, -9876543210123456L)));
+        check(new K.KTimestamp(123456789));
+        check(new K.KTimespan(-5));
+        check(new K.KDate(7000));
+        check(new K.KDatetime(123.5));
+        check(new K.Month(13));
+        check(new K.Minute(61));
+        check(new K.Second(3601));
+        check(new K.KTime(86399999));
+    }
+
+    @Test
+    public void testVectors() throws Exception {
+        check(new K.KBooleanVector(true, false, true));
+        check(new K.KByteVector((byte) 0, (byte) -128, (byte) 127));
+        check(new K.KShortVector((short) 1, Short.MIN_VALUE));
+        check(new K.KIntVector(1, 2, Integer.MAX_VALUE));
+        check(new K.KLongVector(Long.MIN_VALUE, 0, Long.MAX_VALUE));
+        check(new K.KFloatVector(1.5f, Float.NaN));
+        check(new K.KDoubleVector(Double.NEGATIVE_INFINITY, 0.1));
+        check(new K.KGuidVector(new UUID(0, 0), new UUID(-1, 1)));
+        check(new K.KTimestampVector(1, 2));
+        check(new K.KTimespanVector(3, 4));
+        check(new K.KDateVector(5, 6));
+        check(new K.KDatetimeVector(7.5, 8.5));
+        check(new K.KMonthVector(9));
+        check(new K.KMinuteVector(10));
+        check(new K.KSecondVector(11));
+        check(new K.KTimeVector(12));
+        check(new K.KSymbolVector("a", "", "long symbol"));
+        check(new K.KCharacterVector("hello"));
+        check(new K.KCharacterVector(""));
+        check(new K.KLongVector());
+        check(new K.KSymbolVector());
+    }
+
+    @Test
+    public void testGuidsAndBooleans() throws Exception {
+        boolean[] values = new boolean[130];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 3 == 0 || i == 127;
+        }
+        check(new K.KBooleanVector(values));
+        check(new K.KGuidVector(new UUID(0x0123456789abcdefL, 0xfedcba9876543210L), UUID.randomUUID()));
+
+        // guids are big endian in a little endian message
+        UUID uuid = new UUID(0x0123456789abcdefL, 0xfedcba9876543210L);
+        ByteBuffer buffer = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 2).put((byte) 0).putInt(1);
+        buffer.order(ByteOrder.BIG_ENDIAN).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+        buffer.flip();
+        assertEquals(new K.KGuidVector(uuid), new Deserialiser(buffer, true, "UTF-8").readResponse());
+    }
+
+    @Test
+    public void testOffHeapVectors() throws Exception {
+        K.KBaseVector<?>[] vectors = {
+                new K.KByteVector((byte) 0, (byte) -128, (byte) 127),
+                new K.KShortVector((short) 1, Short.MIN_VALUE, (short) -3),
+                new K.KIntVector(1, Integer.MIN_VALUE, -3),
+                new K.KLongVector(Long.MIN_VALUE, 5, -3),
+                new K.KFloatVector(1.5f, Float.NaN, -3),
+                new K.KDoubleVector(Double.NEGATIVE_INFINITY, 0.1, Double.NaN),
+                new K.KTimestampVector(1, Long.MIN_VALUE, -2),
+                new K.KMonthVector(9, -1),
+                new K.KDateVector(5, Integer.MIN_VALUE),
+                new K.KDatetimeVector(7.5, -8.5),
+                new K.KTimespanVector(3, -4),
+                new K.KMinuteVector(10, -10),
+                new K.KSecondVector(11, -11),
+                new K.KTimeVector(12, -12),
+                new K.KGuidVector(new UUID(0, 0), new UUID(0x0123456789abcdefL, -1))
+        };
+        for (K.KBaseVector<?> vector: vectors) {
+            // guids are always big endian, so a little endian message can't be serialised here
+            for (boolean a: vector instanceof K.KGuidVector ? new boolean[] {false} : new boolean[] {false, true}) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) vector.getSerialisedSize()).order(Deserialiser.order(a));
+                vector.serialise(buffer);
+                buffer.flip();
+                Deserialiser deserialiser = new Deserialiser(buffer, a, "UTF-8");
+                deserialiser.offHeapThreshold = 1;
+                K.KBaseVector<?> offHeap = (K.KBaseVector<?>) deserialiser.readResponse();
+
+                assertTrue(offHeap.isOffHeap(), vector.getDataType());
+                assertEquals(vector, offHeap);
+                assertEquals(offHeap, vector);
+                assertEquals(vector.toString(), offHeap.toString());
+                int[] index = {0, 1, vector.getLength() - 1};
+                assertArrayEquals(Sorter.sort(vector, index), Sorter.sort(offHeap, index));
+                // serialised in big endian
+                check(offHeap);
+            }
+        }
+
+        ByteBuffer buffer = serialise(new K.KLongVector(1, 2));
+        buffer.flip();
+        Deserialiser deserialiser = new Deserialiser(buffer, false, "UTF-8");
+        deserialiser.offHeapThreshold = 16;
+        assertFalse(((K.KBaseVector<?>) deserialiser.readResponse()).isOffHeap());
+    }
+
+    private StreamDeserialiser streamDeserialiser(K.KBase x, int bufferSize) throws Exception {
+        ByteBuffer buffer = serialise(x);
+        StreamDeserialiser deserialiser = new StreamDeserialiser(new ByteArrayInputStream(buffer.array()),
+                buffer.capacity(), bufferSize, false, "UTF-8", null);
+        deserialiser.symbols = new SymbolInterner("UTF-8");
+        return deserialiser;
+    }
+
+    private K.KBase decodeLazily(K.KBase x, int bufferSize, long offHeapThreshold) throws Exception {
+        StreamDeserialiser deserialiser = streamDeserialiser(x, bufferSize);
+        deserialiser.lazyColumnThreshold = 3;
+        deserialiser.offHeapThreshold = offHeapThreshold;
+        return deserialiser.readResponse();
+    }
+
+    @Test
+    public void testLazyColumns() throws Exception {
+        K.KBase[] columns = {
+                new K.KLongVector(1, 2, 3),
+                new K.KSymbolVector("a", "", "long symbol"),
+                new K.KList(new K.KCharacterVector("ab"), new K.KCharacterVector(""), new K.KCharacterVector("c")),
+                new K.KGuidVector(new UUID(1, 2), new UUID(0, 0), new UUID(-1, 3)),
+                new K.KBooleanVector(true, false, true),
+                new K.KList(new K.KSymbol("x"), new K.KList(new K.KLong(1), new K.KDouble(0.5)),
+                        new K.Dict(new K.KSymbolVector("k"), new K.KIntVector(1))),
+                new K.KList(new K.UnaryPrimitive(0), new K.KCharacter('z'), new K.KGuid(new UUID(5, 6))),
+                new K.KTimestampVector(1, 2, 3)
+        };
+        String[] names = new String[columns.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "c" + i;
+        }
+        K.Flip table = new K.Flip(new K.KSymbolVector(names), new K.KList(columns));
+
+        for (int bufferSize: new int[] {16, 37, 4096}) {
+            K.Flip lazy = (K.Flip) decodeLazily(table, bufferSize, 0);
+            LazyColumns y = (LazyColumns) lazy.y;
+            assertFalse(y.isDecoded(3));
+            assertEquals(columns[3], y.at(3));
+            assertTrue(y.isDecoded(3));
+            assertFalse(y.isDecoded(0));
+            assertEquals(table, lazy);
+            assertEquals(table.toString(), lazy.toString());
+            for (int i = 0; i < columns.length; i++) {
+                assertTrue(y.isDecoded(i));
+            }
+        }
+
+        // functions are skimmed too, though they don't implement equals()
+        K.Flip functions = new K.Flip(new K.KSymbolVector("f", "g", "h"), new K.KList(
+                new K.KList(new K.Function("{x+y}"), new K.BinaryPrimitive(1), new K.Projection(new K.KLong(1), new K.KLong(2))),
+                columns[0], columns[1]));
+        assertEquals(functions.toString(), decodeLazily(functions, 16, 0).toString());
+
+        // keyed table, which tables are not wide
+        check(new K.Dict(table, table));
+        K.Dict keyed = (K.Dict) decodeLazily(new K.Dict(table, table), 64, 0);
+        assertTrue(((K.Flip) keyed.x).y instanceof LazyColumns);
+        assertEquals(new K.Dict(table, table), keyed);
+
+        K.Flip lazy = (K.Flip) decodeLazily(table, 64, 16);
+        LazyColumns y = (LazyColumns) lazy.y;
+        // large vectors are decoded off-heap right away
+        assertTrue(y.isDecoded(0));
+        assertTrue(((K.KBaseVector<?>) y.at(0)).isOffHeap());
+        assertTrue(y.isDecoded(3));
+        assertFalse(y.isDecoded(4));
+        y.at(1);
+        LazyColumns.release(lazy);
+        assertEquals(columns[1], y.at(1));
+        assertThrows(IllegalStateException.class, () -> y.at(2));
+
+        // narrow tables are decoded eagerly
+        K.Flip narrow = new K.Flip(new K.KSymbolVector("a", "b"), new K.KList(columns[0], columns[1]));
+        assertFalse(((K.Flip) decodeLazily(narrow, 64, 0)).y instanceof LazyColumns);
+        assertEquals(narrow, decodeLazily(narrow, 64, 0));
+    }
+
+    @Test
+    public void testParallelColumns() throws Exception {
+        int rows = 1000;
+        String[] syms = new String[rows];
+        K.KBase[] strings = new K.KBase[rows];
+        long[] longs = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            syms[i] = "s" + (i % 10);
+            strings[i] = new K.KCharacterVector("str" + i);
+            longs[i] = i;
+        }
+        K.Flip table = new K.Flip(new K.KSymbolVector("sym", "str", "long", "sym2", "char"),
+                new K.KList(new K.KSymbolVector(syms), new K.KList(strings), new K.KLongVector(longs),
+                        new K.KSymbolVector(syms), new K.KCharacterVector(new String(new char[rows]).replace('\0', 'x'))));
+
+        for (int threshold: new int[] {rows, rows + 1}) {
+            for (int bufferSize: new int[] {16, 4096}) {
+                StreamDeserialiser deserialiser = streamDeserialiser(new K.Dict(table, table), bufferSize);
+                deserialiser.parallelRowThreshold = threshold;
+                K.Dict keyed = (K.Dict) deserialiser.readResponse();
+                assertEquals(new K.Dict(table, table), keyed);
+                K.Flip decoded = (K.Flip) keyed.y;
+                assertFalse(decoded.y instanceof LazyColumns);
+                assertTrue(((K.KSymbolVector) decoded.y.at(3)).isEncoded());
+                assertEquals(10, ((K.KSymbolVector) decoded.y.at(3)).getSymbols().length);
+            }
+        }
+
+        // wide tables stay lazy
+        StreamDeserialiser deserialiser = streamDeserialiser(table, 64);
+        deserialiser.parallelRowThreshold = 1;
+        deserialiser.lazyColumnThreshold = 5;
+        K.Flip lazy = (K.Flip) deserialiser.readResponse();
+        assertTrue(lazy.y instanceof LazyColumns);
+        assertEquals(table, lazy);
+    }
+
+    @Test
+    public void testNestedLazyTables() throws Exception {
+        K.Flip inner = new K.Flip(new K.KSymbolVector("s", "l", "c"), new K.KList(new K.KSymbolVector("a", "b"),
+                new K.KLongVector(1, 2), new K.KList(new K.KCharacterVector("x"), new K.KCharacterVector("yz"))));
+        K.Flip table = new K.Flip(new K.KSymbolVector("s", "t", "l"), new K.KList(new K.KSymbolVector("sym1", "sym2", "sym3"),
+                new K.KList(inner, inner, new K.KLong(0)), new K.KLongVector(1, 2, 3)));
+
+        for (int bufferSize: new int[] {16, 4096}) {
+            // the list of tables is decoded right away after the first column
+            StreamDeserialiser deserialiser = streamDeserialiser(table, bufferSize);
+            deserialiser.lazyColumnThreshold = 3;
+            deserialiser.maxRawSize = 16;
+            K.Flip lazy = (K.Flip) deserialiser.readResponse();
+            assertTrue(((K.Flip) ((K.KList) lazy.y.at(1)).at(0)).y instanceof LazyColumns);
+            assertEquals(table, lazy);
+
+            deserialiser = streamDeserialiser(table, bufferSize);
+            deserialiser.parallelRowThreshold = 2;
+            deserialiser.maxRawSize = 16;
+            assertEquals(table, deserialiser.readResponse());
+        }
+    }
+
+    @Test
+    public void testComposite() throws Exception {
+        K.KBase table = new K.Flip(new K.KSymbolVector("a", "b"),
+                new K.KList(new K.KLongVector(1, 2), new K.KSymbolVector("x", "y")));
+        check(table);
+        check(new K.KList(new K.KLong(1), new K.KCharacterVector("abc"), table, new K.KList()));
+        check(new K.Dict(new K.KSymbolVector("k"), new K.KIntVector(1)));
+        K.Dict sorted = new K.Dict(new K.KSymbolVector("k"), new K.KIntVector(1));
+        sorted.setAttr((byte) 1);
+        check(sorted);
+        check(new K.Function("{x+y}"));
+    }
+
+    @Test
+    public void testNonAsciiSize() throws Exception {
+        String[] values = {"café", "日本", "😀", "a\ud83dz", "\ude00"};
+        for (String value: values) {
+            serialise(new K.KSymbol(value));
+            serialise(new K.KCharacterVector(value));
+        }
+        serialise(new K.KSymbolVector(values));
+        check(new K.KSymbolVector("café", "日本", "😀"));
+    }
+
+    private K.KBase decodeWithSymbols(K.KBase x, SymbolInterner symbols) throws Exception {
+        ByteBuffer buffer = serialise(x);
+        buffer.flip();
+        Deserialiser deserialiser = new Deserialiser(buffer, false, "UTF-8");
+        deserialiser.symbols = symbols;
+        return deserialiser.readResponse();
+    }
+
+    @Test
+    public void testEncodedSymbols() throws Exception {
+        SymbolInterner symbols = new SymbolInterner("UTF-8");
+        String[] values = new String[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 7 == 0 ? "" : "sym" + (i % 500);
+        }
+        K.KSymbolVector plain = new K.KSymbolVector(values);
+        K.KSymbolVector encoded = (K.KSymbolVector) decodeWithSymbols(plain, symbols);
+        assertTrue(encoded.isEncoded());
+        assertEquals(501, encoded.getSymbols().length);
+        assertEquals(plain, encoded);
+        assertEquals(encoded, plain);
+        assertEquals(plain.toString(), encoded.toString());
+
+        // the encoded vector is serialised as a plain one
+        check(encoded);
+        K.KSymbolVector again = (K.KSymbolVector) decodeWithSymbols(encoded, symbols);
+        assertEquals(plain, again);
+        // the strings are shared by the messages of the connection
+        assertSame(encoded.getString(1), again.getString(1));
+
+        K.KBase table = new K.Flip(new K.KSymbolVector("a", "b"),
+                new K.KList(new K.KLongVector(1, 2), new K.KSymbolVector("café", "日本")));
+        assertEquals(table, decodeWithSymbols(table, symbols));
+    }
+
+    @Test
+    public void testSymbolsKeptBetweenMessages() throws Exception {
+        SymbolInterner symbols = new SymbolInterner("UTF-8");
+        K.KSymbolVector few = (K.KSymbolVector) decodeWithSymbols(new K.KSymbolVector("a", "b"), symbols);
+        symbols.endMessage();
+        assertSame(few.getString(1), ((K.KSymbolVector) decodeWithSymbols(new K.KSymbolVector("b"), symbols)).getString(0));
+
+        String[] values = new String[20000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = "sym" + i;
+        }
+        K.KSymbolVector many = (K.KSymbolVector) decodeWithSymbols(new K.KSymbolVector(values), symbols);
+        symbols.endMessage();
+        // a large table is dropped with the message
+        K.KSymbolVector again = (K.KSymbolVector) decodeWithSymbols(new K.KSymbolVector(values), symbols);
+        assertEquals(many, again);
+        assertNotSame(many.getString(1), again.getString(1));
+    }
+}
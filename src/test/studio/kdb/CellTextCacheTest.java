@@ -0,0 +1,73 @@
+package studio.kdb;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CellTextCacheTest {
+
+    private static KTableModel model(int rows) {
+        long[] ids = new long[rows];
+        double[] prices = new double[rows];
+        K.KBase[] items = new K.KBase[rows];
+        for (int i = 0; i < rows; i++) {
+            ids[i] = rows - i;
+            prices[i] = i % 7 == 0 ? Double.NaN : 1000.5 * i;
+            items[i] = i % 2 == 0 ? new K.KLongVector(i, 12345 * i) : new K.KSymbol("s" + i);
+        }
+        return KTableModel.getModel(new K.Flip(new K.KSymbolVector("id", "price", "item"),
+                new K.KList(new K.KLongVector(ids), new K.KDoubleVector(prices), new K.KList(items))));
+    }
+
+    private static String expected(KTableModel model, int row, int col, KFormatContext context) {
+        K.KBase value = (K.KBase) model.getValueAt(row, col);
+        return value.toString(new KFormatContext(context).setShowType(context.showType() && value instanceof K.KBaseVector));
+    }
+
+    @Test
+    public void testCells() {
+        KTableModel model = model(1000);
+        model.sort(0);
+        KFormatContext comma = new KFormatContext(true, true);
+        for (KFormatContext context : new KFormatContext[] {KFormatContext.DEFAULT, KFormatContext.NO_TYPE, comma}) {
+            for (int row = 0; row < model.getRowCount(); row++) {
+                for (int col = 0; col < model.getColumnCount(); col++) {
+                    assertEquals(expected(model, row, col, context), model.getCellText(row, col, context, 0));
+                }
+            }
+        }
+        // the rows are sorted by id, so the row 1 is 998
+        assertEquals("998,499", model.getCellText(1, 1, comma, 0));
+        assertEquals("998 12,320,310", model.getCellText(1, 2, comma, 0));
+        assertEquals("998 123 ...", model.getCellText(1, 2, KFormatContext.NO_TYPE, 7));
+        assertEquals("998 ...", model.getCellText(1, 1, KFormatContext.NO_TYPE, 3));
+    }
+
+    @Test
+    public void testCached() {
+        KTableModel model = model(10);
+        String text = model.getCellText(3, 1, KFormatContext.DEFAULT, 0);
+        model.getCellText(3, 1, KFormatContext.NO_TYPE, 10);
+        assertSame(text, model.getCellText(3, 1, new KFormatContext(KFormatContext.DEFAULT), 0));
+
+        int maxFractionDigits = KFormatContext.getMaxFractionDigits();
+        try {
+            KFormatContext.setMaxFractionDigits(maxFractionDigits + 1);
+            assertNotSame(text, model.getCellText(3, 1, KFormatContext.DEFAULT, 0));
+        } finally {
+            KFormatContext.setMaxFractionDigits(maxFractionDigits);
+        }
+    }
+
+    @Test
+    public void testNewRows() {
+        StreamingTableModel model = new StreamingTableModel(new K.Flip(new K.KSymbolVector("id"),
+                new K.KList(new K.KLongVector(1, 2))), 2);
+        model.refresh();
+        assertEquals("2", model.getCellText(1, 0, KFormatContext.NO_TYPE, 0));
+        model.append(new K.Flip(new K.KSymbolVector("id"), new K.KList(new K.KLongVector(3))));
+        assertEquals("2", model.getCellText(1, 0, KFormatContext.NO_TYPE, 0));
+        model.refresh();
+        assertEquals("3", model.getCellText(1, 0, KFormatContext.NO_TYPE, 0));
+    }
+}
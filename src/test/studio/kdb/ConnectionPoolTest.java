@@ -0,0 +1,178 @@
+package studio.kdb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionPoolTest {
+
+    // a connection which is open until it is closed, without a server
+    private static class FakeConnection extends kx.c {
+        private volatile boolean open = true;
+
+        FakeConnection() {
+            super("localhost", 1, "", false);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return !open;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    private ConnectionPool.ServerPool pool;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void init() {
+        Server server = new Server("test", "localhost", 1, "", "", null, "", false);
+        pool = new ConnectionPool.ServerPool(server, () -> 2);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private kx.c leaseNew() throws Exception {
+        assertNull(pool.lease());
+        kx.c c = new FakeConnection();
+        pool.leased(c);
+        return c;
+    }
+
+    private void assertWaiting(Future<?> future) {
+        assertThrows(TimeoutException.class, () -> future.get(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testSizeLimit() throws Exception {
+        kx.c c1 = leaseNew();
+        kx.c c2 = leaseNew();
+        Future<kx.c> third = executor.submit(pool::lease);
+        assertWaiting(third);
+
+        pool.release(c1);
+        assertSame(c1, third.get(5, TimeUnit.SECONDS));
+
+        // a released closed connection frees its slot
+        Future<kx.c> fourth = executor.submit(pool::lease);
+        assertWaiting(fourth);
+        c2.close();
+        pool.release(c2);
+        assertNull(fourth.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReservedSlot() throws Exception {
+        leaseNew();
+        assertNull(pool.lease());
+        Future<kx.c> waiting = executor.submit(pool::lease);
+        assertWaiting(waiting);
+
+        // the creation of the connection failed
+        pool.release(null);
+        assertNull(waiting.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReuseOfFreeConnection() throws Exception {
+        kx.c c1 = leaseNew();
+        kx.c c2 = leaseNew();
+        pool.release(c1);
+        pool.release(c2);
+        // the most recently freed one first
+        assertSame(c2, pool.lease());
+        assertSame(c1, pool.lease());
+    }
+
+    @Test
+    public void testInterrupt() throws Exception {
+        leaseNew();
+        leaseNew();
+        BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+        Thread thread = new Thread(() -> {
+            try {
+                pool.lease();
+            } catch (Throwable e) {
+                if (!Thread.currentThread().isInterrupted()) errors.add(new AssertionError("Interrupt is lost"));
+                errors.add(e);
+            }
+        });
+        thread.start();
+        Thread.sleep(200);
+        assertTrue(thread.isAlive());
+
+        thread.interrupt();
+        Throwable e = errors.poll(5, TimeUnit.SECONDS);
+        assertTrue(e instanceof InterruptedIOException, "Unexpected " + e);
+
+        // the interrupted lease doesn't take a slot
+        Future<kx.c> next = executor.submit(pool::lease);
+        assertWaiting(next);
+    }
+
+    @Test
+    public void testPurge() throws Exception {
+        kx.c c1 = leaseNew();
+        kx.c c2 = leaseNew();
+        pool.release(c1);
+        pool.purge();
+        // free connections are closed, busy ones are left to their users
+        assertTrue(c1.isClosed());
+        assertFalse(c2.isClosed());
+
+        kx.c c3 = leaseNew();
+        leaseNew();
+        Future<kx.c> waiting = executor.submit(pool::lease);
+        assertWaiting(waiting);
+        pool.purge();
+        // the waiting lease gets a new slot
+        assertNull(waiting.get(5, TimeUnit.SECONDS));
+
+        // purged busy connections are closed when they are released
+        pool.release(c2);
+        assertTrue(c2.isClosed());
+        pool.release(c3);
+        assertTrue(c3.isClosed());
+    }
+
+    @Test
+    public void testEvict() throws Exception {
+        kx.c c1 = leaseNew();
+        kx.c c2 = leaseNew();
+        pool.release(c1);
+        long time = System.currentTimeMillis();
+        Thread.sleep(20);
+        pool.release(c2);
+
+        assertEquals(0, pool.evict(time - 1000));
+        assertEquals(1, pool.evict(time + 1));
+        assertTrue(c1.isClosed());
+        assertFalse(c2.isClosed());
+
+        // connections closed by the server are evicted at once
+        ((FakeConnection) c2).open = false;
+        assertEquals(1, pool.evict(time - 1000));
+
+        // the slots are free again
+        assertNull(pool.lease());
+        assertNull(pool.lease());
+    }
+}
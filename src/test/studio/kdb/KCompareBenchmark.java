@@ -0,0 +1,67 @@
+package studio.kdb;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Sorting of a mixed list column by the structural compareTo against the former comparison of the formatted
+ * values. Not run with the tests; start it with the number of rows as an optional argument,
+ * e.g. java studio.kdb.KCompareBenchmark 200000
+ */
+public class KCompareBenchmark {
+
+    private final static int RUNS = 5;
+
+    private static K.KList mixedList(int rows) {
+        Random random = new Random(0);
+        K.KBase[] items = new K.KBase[rows];
+        for (int i = 0; i < rows; i++) {
+            switch (i % 4) {
+                case 0: items[i] = new K.KLong(random.nextInt(1000)); break;
+                case 1: items[i] = new K.KSymbol("sym" + random.nextInt(1000)); break;
+                case 2: items[i] = new K.KLongVector(random.nextInt(100), random.nextInt(100), random.nextInt(100)); break;
+                default: items[i] = new K.KList(new K.KLong(random.nextInt(100)), new K.KDouble(random.nextDouble()));
+            }
+        }
+        return new K.KList(items);
+    }
+
+    // the comparison of K values before it compared them structurally
+    private static int[] sortByText(K.KList list, int[] origIndex) {
+        Integer[] index = new Integer[origIndex.length];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = origIndex[i];
+        }
+        Comparator<Integer> comparator = (i, j) -> list.at(i).toString(KFormatContext.NO_TYPE)
+                .compareTo(list.at(j).toString(KFormatContext.NO_TYPE));
+        Arrays.sort(index, comparator);
+        return Arrays.stream(index).mapToInt(Integer::intValue).toArray();
+    }
+
+    private interface Sort {
+        int[] sort(K.KList list, int[] index);
+    }
+
+    private static long bestMillis(Sort sort, K.KList list, int[] index) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            sort.sort(list, index);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1_000_000;
+    }
+
+    public static void main(String... args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        K.KList list = mixedList(rows);
+        int[] index = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            index[i] = i;
+        }
+        System.out.printf("%-10s %10s%n", "compare", "ms");
+        System.out.printf("%-10s %10d%n", "text", bestMillis(KCompareBenchmark::sortByText, list, index));
+        System.out.printf("%-10s %10d%n", "compareTo", bestMillis(Sorter::sort, list, index));
+    }
+}
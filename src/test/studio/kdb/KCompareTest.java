@@ -4,6 +4,8 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.util.UUID;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class KCompareTest {
@@ -125,5 +127,74 @@ public class KCompareTest {
 
     }
 
-    //@TODO: need tests for Flip and Dict
+    @Test
+    public void testTypeOrder() {
+        testLess(new K.KLong(10), new K.KInteger(2));
+        testLess(new K.KTimestamp(10), new K.KLong(2));
+        testLess(new K.KByte((byte) 10), new K.UnaryPrimitive(2));
+        testLess(new K.KSymbol("z"), new K.KLong(1));
+        testLess(new K.KLong(1), new K.KList());
+        testLess(new K.KList(), new K.KLongVector());
+        testLess(new K.KLongVector(1), new K.Flip(new K.KSymbolVector(), new K.KList()));
+        testLess(new K.Flip(new K.KSymbolVector(), new K.KList()), new K.Dict(new K.KList(), new K.KList()));
+        testLess(new K.Dict(new K.KList(), new K.KList()), new K.Function("{x}"));
+    }
+
+    @Test
+    public void testVector() {
+        testLess(new K.KLongVector(1, 2), new K.KLongVector(1, 3));
+        testLess(new K.KLongVector(1, 2), new K.KLongVector(1, 2, 0));
+        testLess(new K.KLongVector(Long.MIN_VALUE), new K.KLongVector(-1));
+        testLess(new K.KDoubleVector(1.5), new K.KDoubleVector(Double.NaN));
+        testLess(new K.KBooleanVector(false, true), new K.KBooleanVector(true));
+        testLess(new K.KSymbolVector("a", "b"), new K.KSymbolVector("a", "c"));
+        testLess(new K.KSymbolVector(new int[] {0, 1}, new String[] {"a", "b"}), new K.KSymbolVector("a", "c"));
+        testLess(new K.KGuidVector(new UUID(1, 2)), new K.KGuidVector(new UUID(-1, 0)));
+        testLess(new K.KGuid(new UUID(1, 2)), new K.KGuid(new UUID(-1, 0)));
+
+        K.KLongVector sorted = new K.KLongVector(1, 2);
+        sorted.setAttr((byte) 1);
+        testLess(new K.KLongVector(1, 2), sorted);
+    }
+
+    @Test
+    public void testList() {
+        testLess(new K.KList(new K.KLong(1), new K.KSymbol("b")), new K.KList(new K.KLong(1), new K.KSymbol("c")));
+        testLess(new K.KList(new K.KLong(1)), new K.KList(new K.KLong(1), new K.KLong(0)));
+        testLess(new K.KList(new K.KLongVector(1, 2)), new K.KList(new K.KLongVector(1, 3)));
+        assertEquals(0, new K.KList(new K.KLongVector(1, 2), new K.KCharacterVector("ab"))
+                .compareTo(new K.KList(new K.KLongVector(1, 2), new K.KCharacterVector("ab"))));
+
+        // elements which aren't decoded are null and ordered first
+        testLess(new K.KList(new K.KLong(1), null), new K.KList(new K.KLong(1), new K.KLong(0)));
+        testLess(new K.KList(null, new K.KLong(1)), new K.KList(null, new K.KLong(2)));
+        assertEquals(0, new K.KList((K.KBase) null).compareTo(new K.KList((K.KBase) null)));
+        assertTrue(new K.KList(new K.KSymbol("a")).compareTo(new K.KList((K.KBase) null)) > 0);
+        assertArrayEquals(new int[] {1, 2, 0}, Sorter.sort(new K.KList(new K.KLong(2), null, new K.KLong(1)), new int[] {0, 1, 2}));
+    }
+
+    @Test
+    public void testDict() {
+        K.KBase keys = new K.KSymbolVector("a", "b");
+        testLess(new K.Dict(keys, new K.KLongVector(1, 2)), new K.Dict(keys, new K.KLongVector(1, 3)));
+        testLess(new K.Dict(new K.KSymbolVector("a", "a"), new K.KLongVector(1, 3)),
+                new K.Dict(keys, new K.KLongVector(1, 2)));
+    }
+
+    @Test
+    public void testFlip() {
+        K.KSymbolVector names = new K.KSymbolVector("a", "b");
+        K.Flip t1 = new K.Flip(names, new K.KList(new K.KLongVector(1, 2), new K.KSymbolVector("x", "y")));
+        K.Flip t2 = new K.Flip(names, new K.KList(new K.KLongVector(1, 2), new K.KSymbolVector("x", "z")));
+        testLess(t1, t2);
+        assertEquals(0, t1.compareTo(new K.MappedTable(new K.Dict(t1.x, t1.y))));
+    }
+
+    @Test
+    public void testFunction() {
+        testLess(new K.Function("{x+y}"), new K.Function("{x-y}"));
+        testLess(new K.Feach(new K.Function("{x+y}")), new K.Feach(new K.Function("{x-y}")));
+        testLess(new K.Projection(new K.KList(new K.BinaryPrimitive(1), new K.KLong(1))),
+                new K.Projection(new K.KList(new K.BinaryPrimitive(1), new K.KLong(2))));
+    }
 }
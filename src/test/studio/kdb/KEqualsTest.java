@@ -231,5 +231,50 @@ public class KEqualsTest {
         testNotEquals(p1, p3);
     }
 
-    //@TODO: need tests for Flip and Dict
+    @Test
+    public void testVectors() {
+        testEquals(new K.KLongVector(1, 2, 3), new K.KLongVector(1, 2, 3));
+        testNotEquals(new K.KLongVector(1, 2, 3), new K.KLongVector(1, 2, 4));
+        assertNotEquals(new K.KLongVector(1, 2, 3).hashCode(), new K.KLongVector(3, 2, 1).hashCode());
+        testEquals(new K.KDoubleVector(1.5, Double.NaN), new K.KDoubleVector(1.5, Double.NaN));
+        testEquals(new K.KBooleanVector(true, false), new K.KBooleanVector(true, false));
+        testEquals(new K.KGuidVector(new UUID(1, 2)), new K.KGuidVector(new UUID(1, 2)));
+        testEquals(new K.KCharacterVector("abc"), new K.KCharacterVector("abc"));
+        testEquals(new K.KSymbolVector("a", "b", "a"), new K.KSymbolVector(new int[] {0, 1, 0}, new String[] {"a", "b"}));
+        testNotEquals(new K.KSymbolVector("a", "b"), new K.KSymbolVector("b", "a"));
+    }
+
+    @Test
+    public void testList() {
+        K.KList l1 = new K.KList(new K.KLong(1), new K.KSymbolVector("a", "b"), new K.Function("{x}"));
+        K.KList l2 = new K.KList(new K.KLong(1), new K.KSymbolVector("a", "b"), new K.Function("{x}"));
+        K.KList l3 = new K.KList(new K.KLong(1), new K.KSymbolVector("a", "c"), new K.Function("{x}"));
+        testEquals(l1, l2);
+        testNotEquals(l1, l3);
+
+        // elements which aren't decoded are null
+        testEquals(new K.KList(new K.KLong(1), null), new K.KList(new K.KLong(1), null));
+        testNotEquals(new K.KList(new K.KLong(1), null), new K.KList(new K.KLong(1), new K.KLong(0)));
+    }
+
+    @Test
+    public void testDict() {
+        K.Dict d1 = new K.Dict(new K.KSymbolVector("a", "b"), new K.KLongVector(1, 2));
+        K.Dict d2 = new K.Dict(new K.KSymbolVector("a", "b"), new K.KLongVector(1, 2));
+        K.Dict d3 = new K.Dict(new K.KSymbolVector("a", "b"), new K.KLongVector(2, 1));
+        testEquals(d1, d2);
+        testNotEquals(d1, d3);
+    }
+
+    @Test
+    public void testFlip() {
+        K.Flip t1 = new K.Flip(new K.KSymbolVector("a", "b"),
+                new K.KList(new K.KLongVector(1, 2), new K.KSymbolVector("x", "y")));
+        K.Flip t2 = new K.Flip(new K.KSymbolVector("a", "b"),
+                new K.KList(new K.KLongVector(1, 2), new K.KSymbolVector("x", "y")));
+        K.Flip t3 = new K.Flip(new K.KSymbolVector("a", "b"),
+                new K.KList(new K.KLongVector(1, 2), new K.KSymbolVector("x", "z")));
+        testEquals(t1, t2);
+        testNotEquals(t1, t3);
+    }
 }
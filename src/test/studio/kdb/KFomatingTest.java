@@ -3,6 +3,11 @@ package studio.kdb;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class KFomatingTest {
@@ -50,4 +55,101 @@ public class KFomatingTest {
         assertEquals("123456789", new K.KSymbol("123456789").toString(comma));
         assertEquals("2020.12.09", new K.KDate(7648).toString(comma));
     }
+
+    @Test
+    public void numbersAsDecimalFormat() {
+        Random random = new Random(1);
+        int maxFractionDigits = Config.getInstance().getInt(Config.MAX_FRACTION_DIGITS);
+        try {
+            for (int digits : new int[] {0, 2, 7, 16}) {
+                KFormatContext.setMaxFractionDigits(digits);
+                DecimalFormat raw = new DecimalFormat("#.#######");
+                DecimalFormat comma = new DecimalFormat("#,###.#######");
+                raw.setMaximumFractionDigits(digits);
+                comma.setMaximumFractionDigits(digits);
+                for (int i = 0; i < 100000; i++) {
+                    long l = random.nextInt(4) == 0 ? random.nextLong() : random.nextInt(2000000) - 1000000;
+                    assertEquals(raw.format(l), KFormatContext.NO_TYPE.formatNumber(new StringBuilder(), l).toString());
+                    assertEquals(comma.format(l), this.comma.formatNumber(new StringBuilder(), l).toString());
+
+                    double d = Math.round(random.nextGaussian() * 1e6) / Math.pow(10, random.nextInt(12)) +
+                            (random.nextBoolean() ? 0 : random.nextGaussian() * Math.pow(10, random.nextInt(30) - 12));
+                    assertEquals(raw.format(d), KFormatContext.NO_TYPE.formatNumber(new StringBuilder(), d).toString());
+                    assertEquals(comma.format(d), this.comma.formatNumber(new StringBuilder(), d).toString());
+                }
+                for (double d : new double[] {0.0, -0.0, -1e-20, 0.5, 1.5, 2.5, -2.5, 0.125, 1e15, 1e20, -1e300, 4.35}) {
+                    assertEquals(raw.format(d), KFormatContext.NO_TYPE.formatNumber(new StringBuilder(), d).toString());
+                }
+            }
+        } finally {
+            KFormatContext.setMaxFractionDigits(maxFractionDigits);
+        }
+    }
+
+    @Test
+    public void temporalAsSimpleDateFormat() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy.MM.dd");
+        SimpleDateFormat datetimeFormat = new SimpleDateFormat("yyyy.MM.dd'T'HH:mm:ss.SSS");
+        SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy.MM.dd'D'HH:mm:ss.");
+        TimeZone gmt = TimeZone.getTimeZone("GMT");
+        dateFormat.setTimeZone(gmt);
+        datetimeFormat.setTimeZone(gmt);
+        timestampFormat.setTimeZone(gmt);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            // after the switch to the Gregorian calendar in 1582
+            int date = random.nextInt(3000000) - 150000;
+            K.KDate kDate = new K.KDate(date);
+            assertEquals(dateFormat.format(kDate.toDate()), kDate.toString(comma));
+
+            double datetime = random.nextDouble() * 200000 - 100000;
+            K.KDatetime kDatetime = new K.KDatetime(datetime);
+            assertEquals(datetimeFormat.format(kDatetime.toTimestamp()), kDatetime.toString(comma));
+
+            long timestamp = random.nextLong() / 2;
+            K.KTimestamp kTimestamp = new K.KTimestamp(timestamp);
+            java.sql.Timestamp ts = kTimestamp.toTimestamp();
+            assertEquals(timestampFormat.format(ts) + String.format("%09d", ts.getNanos()), kTimestamp.toString(comma));
+        }
+    }
+
+    private void checkLimit(K.KBase value) {
+        for (KFormatContext context : new KFormatContext[] {KFormatContext.DEFAULT, KFormatContext.NO_TYPE, comma}) {
+            String text = value.toString(context);
+            for (int maxChars = 0; maxChars <= text.length() + 1; maxChars++) {
+                String expected = text.length() <= maxChars ? text : text.substring(0, maxChars) + KFormatContext.ELLIPSIS;
+                assertEquals(expected, value.formatLimited(null, context, maxChars).toString());
+            }
+            assertEquals("prefix" + text, value.formatLimited(new StringBuilder("prefix"), context, text.length()).toString());
+        }
+    }
+
+    @Test
+    public void formatWithLimit() {
+        checkLimit(new K.KLong(1234567));
+        checkLimit(new K.KLongVector(1, 1234, Long.MAX_VALUE, Long.MIN_VALUE));
+        checkLimit(new K.KDoubleVector(1.5, 12345.67));
+        checkLimit(new K.KBooleanVector(true, false, true));
+        checkLimit(new K.KByteVector((byte) 1, (byte) 255));
+        checkLimit(new K.KCharacterVector("some string"));
+        checkLimit(new K.KSymbolVector("a", "bc", "def"));
+        checkLimit(new K.KList(new K.KLong(12345), new K.KSymbol("12345"),
+                new K.KCharacterVector("12345"), new K.KList(new K.KDouble(1.5), new K.KLongVector(1, 2))));
+        checkLimit(new K.Dict(new K.KSymbolVector("a", "b"), new K.KLongVector(1, 2)));
+        checkLimit(new K.Flip(new K.KSymbolVector("a", "b"),
+                new K.KList(new K.KLongVector(1, 2), new K.KSymbolVector("x", "y"))));
+        checkLimit(new K.Function("{x+y}"));
+        checkLimit(new K.Feach(new K.Function("{x+y}")));
+        checkLimit(new K.Projection(new K.BinaryPrimitive(1), new K.KLong(1), new K.KLong(2)));
+    }
+
+    @Test
+    public void formatHugeVectorWithLimit() {
+        K.KLongVector vector = new K.KLongVector(new long[5_000_000]);
+        StringBuilder builder = vector.formatLimited(null, KFormatContext.DEFAULT, 100);
+        assertEquals(100 + KFormatContext.ELLIPSIS.length(), builder.length());
+        assertEquals(1 + KFormatContext.ELLIPSIS.length(),
+                new K.KList(vector, vector).formatLimited(null, KFormatContext.DEFAULT, 1).length());
+    }
 }
@@ -0,0 +1,69 @@
+package studio.kdb;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Formatting of timestamp and float cells, one value at a time as the table renders them, with
+ * SimpleDateFormat as the reference. Not run with the tests; start it with the number of values as an optional
+ * argument, e.g. java studio.kdb.KFormatBenchmark 1000000
+ */
+public class KFormatBenchmark {
+
+    private final static int RUNS = 7;
+    // 2000.01.01 in milliseconds since 1970.01.01
+    private final static long EPOCH_MILLIS = 946684800000L;
+
+    private interface Format {
+        void format(int i, StringBuilder builder);
+    }
+
+    // the length of the formatted values keeps the work from being optimised away
+    private static long bestMillis(Format format, int n) {
+        StringBuilder builder = new StringBuilder();
+        long best = Long.MAX_VALUE;
+        long length = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                builder.setLength(0);
+                format.format(i, builder);
+                length += builder.length();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (length == 0) throw new IllegalStateException("Nothing was formatted");
+        return best / 1_000_000;
+    }
+
+    public static void main(String... args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(0);
+        long[] times = new long[n];
+        K.KTimestamp[] timestamps = new K.KTimestamp[n];
+        K.KDouble[] doubles = new K.KDouble[n];
+        for (int i = 0; i < n; i++) {
+            // within about 30 years of 2000
+            times[i] = (long) (random.nextDouble() * 2e18) - 1_000_000_000_000_000_000L;
+            timestamps[i] = new K.KTimestamp(times[i]);
+            doubles[i] = new K.KDouble(random.nextDouble() * Math.pow(10, random.nextInt(12) - 4));
+        }
+
+        KFormatContext context = new KFormatContext(false, false);
+        SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy.MM.dd'D'HH:mm:ss.");
+        timestampFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+        System.out.printf("%-28s %10s%n", "values", "ms");
+        System.out.printf("%-28s %10d%n", "timestamp", bestMillis((i, builder) -> timestamps[i].format(builder, context), n));
+        System.out.printf("%-28s %10d%n", "timestamp SimpleDateFormat", bestMillis((i, builder) -> {
+            long nanos = times[i];
+            long millis = Math.floorDiv(nanos, 1_000_000L);
+            builder.append(timestampFormat.format(new Date(EPOCH_MILLIS + millis)));
+            String fraction = Long.toString(1_000_000_000L + Math.floorMod(nanos, 1_000_000_000L));
+            builder.append(fraction, 1, fraction.length());
+        }, n));
+        System.out.printf("%-28s %10d%n", "float", bestMillis((i, builder) -> doubles[i].format(builder, context), n));
+    }
+}
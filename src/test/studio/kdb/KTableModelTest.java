@@ -0,0 +1,70 @@
+package studio.kdb;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KTableModelTest {
+
+    private static KTableModel model() {
+        return KTableModel.getModel(new K.Flip(new K.KSymbolVector("a", "b"),
+                new K.KList(new K.KLongVector(2, 1, 2, 1), new K.KLongVector(1, 2, 3, 4))));
+    }
+
+    private static void checkOrder(KTableModel model, int... rows) {
+        assertArrayEquals(rows, model.getIndex());
+    }
+
+    @Test
+    public void testSortCycle() {
+        KTableModel model = model();
+        model.sort(0);
+        assertTrue(model.isSortedAsc(0));
+        checkOrder(model, 1, 3, 0, 2);
+        model.sort(0);
+        assertTrue(model.isSortedDesc(0));
+        checkOrder(model, 0, 2, 1, 3);
+        model.sort(0);
+        assertFalse(model.isSortedAsc(0) || model.isSortedDesc(0));
+        assertTrue(model.isSortedAsc(-1));
+        checkOrder(model, 0, 1, 2, 3);
+        model.sort(-1);
+        assertTrue(model.isSortedDesc(-1));
+        checkOrder(model, 3, 2, 1, 0);
+    }
+
+    @Test
+    public void testAddToSort() {
+        KTableModel model = model();
+        model.sort(0);
+        model.sort(1, true);
+        assertEquals(2, model.getSortColumnCount());
+        assertEquals(1, model.getSortPriority(0));
+        assertEquals(2, model.getSortPriority(1));
+        checkOrder(model, 1, 3, 0, 2);
+
+        model.sort(1, true);
+        assertTrue(model.isSortedDesc(1));
+        checkOrder(model, 3, 1, 2, 0);
+
+        model.sort(0, true);
+        assertTrue(model.isSortedDesc(0));
+        checkOrder(model, 2, 0, 3, 1);
+
+        // the column is removed from the sort after descending order
+        model.sort(0, true);
+        assertEquals(1, model.getSortColumnCount());
+        assertEquals(0, model.getSortPriority(0));
+        assertEquals(1, model.getSortPriority(1));
+        checkOrder(model, 3, 2, 1, 0);
+
+        // a click without shift replaces the sort columns
+        model.sort(1, true);
+        assertEquals(0, model.getSortColumnCount());
+        model.sort(1, true);
+        model.sort(0, true);
+        model.sort(0);
+        assertEquals(1, model.getSortColumnCount());
+        checkOrder(model, 1, 3, 0, 2);
+    }
+}
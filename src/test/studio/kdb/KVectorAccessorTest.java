@@ -0,0 +1,102 @@
+package studio.kdb;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KVectorAccessorTest {
+
+    private static void check(K.KBaseVector<? extends K.KBase> vector) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < vector.getLength(); i++) {
+            K.KBase atom = vector.at(i);
+            assertEquals(atom.isNull(), vector.isNull(i), "isNull at " + i);
+
+            for (KFormatContext context: new KFormatContext[] {KFormatContext.NO_TYPE, KFormatContext.DEFAULT}) {
+                builder.setLength(0);
+                builder.append('>');
+                vector.formatTo(i, builder, context);
+                assertEquals(">" + atom.toString(context), builder.toString(), "formatTo at " + i);
+            }
+
+            if (atom instanceof ToDouble && !atom.isNull()) {
+                assertEquals(((ToDouble) atom).toDouble(), vector.getDouble(i), "getDouble at " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testNumericVectors() {
+        check(new K.KBooleanVector(true, false));
+        check(new K.KByteVector((byte) 0, (byte) 0xff));
+        check(new K.KShortVector((short) 1, Short.MIN_VALUE, Short.MAX_VALUE, (short) -Short.MAX_VALUE));
+        check(new K.KIntVector(1, Integer.MIN_VALUE, Integer.MAX_VALUE, -Integer.MAX_VALUE));
+        check(new K.KLongVector(1, Long.MIN_VALUE, Long.MAX_VALUE, -Long.MAX_VALUE));
+        check(new K.KDoubleVector(1.5, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY));
+        check(new K.KFloatVector(1.5f, Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    public void testTemporalVectors() {
+        check(new K.KDateVector(-10, 0, 7000, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        check(new K.KMonthVector(-10, 0, 250, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        check(new K.KMinuteVector(-10, 0, 100, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        check(new K.KSecondVector(-10, 0, 10000, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        check(new K.KTimeVector(-10, 0, 12345678, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        check(new K.KDatetimeVector(-10.25, 0, 7000.5, Double.NaN, Double.POSITIVE_INFINITY));
+        check(new K.KTimestampVector(-10, 0, 123456789012345L, Long.MIN_VALUE, Long.MAX_VALUE));
+        check(new K.KTimespanVector(-10, 0, 123456789012345L, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testOtherVectors() {
+        check(new K.KSymbolVector("a", "", "bc"));
+        check(new K.KCharacterVector("a b"));
+        check(new K.KGuidVector(UUID.randomUUID(), new UUID(0, 0)));
+        check(new K.KList(new K.KLong(1), new K.KCharacterVector("ab"), new K.KSymbol("")));
+    }
+
+    @Test
+    public void testFootprint() {
+        UUID[] uuids = new UUID[1000];
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = i == 10 ? new UUID(0, 0) : UUID.randomUUID();
+        }
+        K.KGuidVector guids = new K.KGuidVector(uuids);
+        // 16 bytes per guid without an object per element
+        assertEquals(2 * uuids.length, ((long[]) guids.getArray()).length);
+        assertEquals(uuids.length, guids.getLength());
+        for (int i = 0; i < uuids.length; i++) {
+            assertEquals(uuids[i], guids.at(i).uuid);
+            assertEquals(i == 10, guids.isNull(i));
+        }
+
+        boolean[] values = new boolean[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Integer.bitCount(i) % 2 == 1;
+        }
+        K.KBooleanVector booleans = new K.KBooleanVector(values);
+        // a bit per boolean
+        assertEquals(16, ((long[]) booleans.getArray()).length);
+        assertEquals(values.length, booleans.getLength());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], booleans.get(i));
+        }
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> booleans.get(values.length));
+        // vectors of the same bits but different length
+        assertNotEquals(new K.KBooleanVector(true, false), new K.KBooleanVector(true, false, false));
+    }
+
+    @Test
+    public void testPrimitiveValues() {
+        assertEquals(-5, new K.KShortVector((short) -5).getLong(0));
+        assertEquals(Long.MIN_VALUE, new K.KLongVector(Long.MIN_VALUE).getLong(0));
+        assertEquals(1, new K.KBooleanVector(true).getLong(0));
+        assertEquals(7000, new K.KDateVector(7000).getLong(0));
+        assertEquals("bc", new K.KSymbolVector("a", "bc").getString(1));
+        assertThrows(UnsupportedOperationException.class, () -> new K.KSymbolVector("a").getLong(0));
+        assertThrows(UnsupportedOperationException.class, () -> new K.KList(new K.KSymbol("a")).getDouble(0));
+    }
+}
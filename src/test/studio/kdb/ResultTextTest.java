@@ -0,0 +1,86 @@
+package studio.kdb;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultTextTest {
+
+    private static K.KBase value;
+    private static String text;
+
+    @BeforeAll
+    public static void init() {
+        Random random = new Random(1);
+        K.KBase[] items = new K.KBase[20000];
+        for (int i = 0; i < items.length; i++) {
+            switch (i % 4) {
+                case 0: items[i] = new K.KLongVector(random.nextLong(), random.nextLong()); break;
+                case 1: items[i] = new K.KSymbol("Sym" + random.nextInt(1000)); break;
+                case 2: items[i] = new K.KCharacterVector("text " + random.nextInt()); break;
+                default: items[i] = new K.Dict(new K.KSymbolVector("a", "b"), new K.KDoubleVector(random.nextDouble(), 1));
+            }
+        }
+        value = new K.KList(items);
+        text = value.toString(KFormatContext.DEFAULT);
+    }
+
+    @Test
+    public void testText() {
+        ResultText resultText = new ResultText(value, KFormatContext.DEFAULT);
+        assertEquals(text.length(), resultText.getLength());
+        for (long start : new long[] {0, 1, 65535, 65536, 100000, 200001, text.length() - 10, text.length(), text.length() + 5}) {
+            for (int maxChars : new int[] {0, 1, 1000, 70000}) {
+                int begin = (int) Math.min(start, text.length());
+                String expected = text.substring(begin, (int) Math.min(text.length(), begin + (long) maxChars));
+                assertEquals(expected, resultText.getText(start, maxChars), "start " + start + ", maxChars " + maxChars);
+            }
+        }
+    }
+
+    @Test
+    public void testIndexOf() {
+        ResultText resultText = new ResultText(value, KFormatContext.DEFAULT);
+        String[] words = {"Sym42", "sym42", "`a`b!", text.substring(65530, 65545), text.substring(text.length() - 7), "absent"};
+        for (String word : words) {
+            for (long from : new long[] {0, 100, 65536, 131000, text.length() - 3}) {
+                assertEquals(text.indexOf(word, (int) from), resultText.indexOf(word, true, from), word + " from " + from);
+                assertEquals(text.toLowerCase().indexOf(word.toLowerCase(), (int) from),
+                        resultText.indexOf(word, false, from), word + " from " + from);
+            }
+        }
+    }
+
+    // cancelled after the given number of checks
+    private static BooleanSupplier cancelAfter(int count) {
+        AtomicInteger checks = new AtomicInteger();
+        return () -> checks.incrementAndGet() > count;
+    }
+
+    @Test
+    public void testCancel() {
+        ResultText resultText = new ResultText(value, KFormatContext.DEFAULT);
+        assertThrows(CancellationException.class, () -> resultText.getLength(cancelAfter(1)));
+        assertThrows(CancellationException.class, () -> resultText.getText(text.length() - 10, 10, cancelAfter(1)));
+        assertThrows(CancellationException.class, () -> resultText.indexOf("absent", true, 0, cancelAfter(1)));
+
+        // a cancelled count doesn't leave a wrong length
+        assertEquals(text.length(), resultText.getLength(() -> false));
+        assertEquals(text.substring(text.length() - 10), resultText.getText(text.length() - 10, 10, cancelAfter(1000)));
+        assertEquals(-1, resultText.indexOf("absent", true, 0, cancelAfter(1000)));
+    }
+
+    @Test
+    public void testFormatRange() {
+        K.KBase vector = new K.KCharacterVector("0123456789");
+        assertEquals("345", vector.formatRange(null, KFormatContext.NO_TYPE, 3, 3).toString());
+        assertEquals(">\"0", vector.formatRange(new StringBuilder(">"), KFormatContext.DEFAULT, 0, 2).toString());
+        assertEquals("", vector.formatRange(null, KFormatContext.NO_TYPE, 20, 3).toString());
+    }
+}
@@ -2,7 +2,14 @@ package studio.kdb;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class SorterTest {
 
@@ -27,4 +34,183 @@ public class SorterTest {
         assertArrayEquals(new int[] {2, 1, 0, 3, 4},
                 Sorter.reverse(array, new int[]{4, 0, 3, 2, 1}) );
     }
+
+    // stable sort of the rows in origIndex order with K.KBase.compareTo()
+    private static int[] expectedSort(K.KBaseVector<? extends K.KBase> array, int[] origIndex) {
+        Integer[] index = Arrays.stream(origIndex).boxed().toArray(Integer[]::new);
+        Arrays.sort(index, (i1, i2) -> array.at(i1).compareTo(array.at(i2)));
+        return Arrays.stream(index).mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void checkSort(K.KBaseVector<? extends K.KBase> array, Random random) {
+        int[] origIndex = new int[array.getLength()];
+        for (int i = 0; i < origIndex.length; i++) {
+            origIndex[i] = i;
+        }
+        for (int i = origIndex.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = origIndex[i];
+            origIndex[i] = origIndex[j];
+            origIndex[j] = tmp;
+        }
+        int[] sorted = Sorter.sort(array, origIndex);
+        assertArrayEquals(expectedSort(array, origIndex), sorted, array.getDataType());
+
+        // descending order with the same order of equal values
+        Integer[] expectedReversed = Arrays.stream(origIndex).boxed().toArray(Integer[]::new);
+        Arrays.sort(expectedReversed, (i1, i2) -> array.at(i2).compareTo(array.at(i1)));
+        assertArrayEquals(Arrays.stream(expectedReversed).mapToInt(Integer::intValue).toArray(),
+                Sorter.reverse(array, sorted), array.getDataType());
+    }
+
+    @Test
+    public void testSortTypes() {
+        Random random = new Random(1);
+        int count = 1000;
+        int[] ints = new int[count];
+        long[] longs = new long[count];
+        long[] smallLongs = new long[count];
+        double[] doubles = new double[count];
+        float[] floats = new float[count];
+        short[] shorts = new short[count];
+        byte[] bytes = new byte[count];
+        boolean[] booleans = new boolean[count];
+        char[] chars = new char[count];
+        String[] symbols = new String[count];
+        UUID[] uuids = new UUID[count];
+        K.KBase[] list = new K.KBase[count];
+        int[] intSpecial = {Integer.MIN_VALUE, Integer.MAX_VALUE, -Integer.MAX_VALUE, 0};
+        long[] longSpecial = {Long.MIN_VALUE, Long.MAX_VALUE, -Long.MAX_VALUE, 0};
+        double[] doubleSpecial = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.0, -0.0};
+        for (int i = 0; i < count; i++) {
+            ints[i] = random.nextInt(10) == 0 ? intSpecial[random.nextInt(4)] : random.nextInt(100) - 50;
+            longs[i] = random.nextInt(10) == 0 ? longSpecial[random.nextInt(4)] : random.nextLong() / (1 + random.nextInt(1000));
+            smallLongs[i] = 1_000_000_000_000L + random.nextInt(50);
+            doubles[i] = random.nextInt(10) == 0 ? doubleSpecial[random.nextInt(5)] : random.nextInt(100) / 4.0 - 10;
+            floats[i] = random.nextInt(10) == 0 ? (float) doubleSpecial[random.nextInt(5)] : random.nextInt(100) / 4.0f - 10;
+            shorts[i] = (short) (random.nextInt(10) == 0 ? Short.MIN_VALUE : random.nextInt(20) - 10);
+            bytes[i] = (byte) random.nextInt(256);
+            booleans[i] = random.nextBoolean();
+            chars[i] = (char) (' ' + random.nextInt(60));
+            symbols[i] = random.nextInt(10) == 0 ? "" : "s" + random.nextInt(30);
+            uuids[i] = random.nextInt(10) == 0 ? new UUID(0, 0) : new UUID(random.nextInt(3) - 1, random.nextLong());
+            list[i] = random.nextBoolean() ? new K.KLong(random.nextInt(20)) : new K.KSymbol("s" + random.nextInt(20));
+        }
+
+        checkSort(new K.KIntVector(ints), random);
+        checkSort(new K.KDateVector(ints), random);
+        checkSort(new K.KMonthVector(ints), random);
+        checkSort(new K.KMinuteVector(ints), random);
+        checkSort(new K.KSecondVector(ints), random);
+        checkSort(new K.KTimeVector(ints), random);
+        checkSort(new K.KLongVector(longs), random);
+        checkSort(new K.KLongVector(smallLongs), random);
+        checkSort(new K.KTimestampVector(longs), random);
+        checkSort(new K.KTimespanVector(longs), random);
+        checkSort(new K.KDoubleVector(doubles), random);
+        checkSort(new K.KDatetimeVector(doubles), random);
+        checkSort(new K.KFloatVector(floats), random);
+        checkSort(new K.KShortVector(shorts), random);
+        checkSort(new K.KByteVector(bytes), random);
+        checkSort(new K.KBooleanVector(booleans), random);
+        checkSort(new K.KCharacterVector(new String(chars)), random);
+        checkSort(new K.KSymbolVector(symbols), random);
+        int[] codes = new int[count];
+        for (int i = 0; i < count; i++) {
+            codes[i] = random.nextInt(4);
+        }
+        checkSort(new K.KSymbolVector(codes, new String[] {"b", "", "a", "ab"}), random);
+        checkSort(new K.KGuidVector(uuids), random);
+        checkSort(new K.KList(list), random);
+    }
+
+    @Test
+    public void testSortEdgeCases() {
+        assertArrayEquals(new int[0], Sorter.sort(new K.KLongVector(), new int[0]));
+        assertArrayEquals(new int[] {0}, Sorter.sort(new K.KLongVector(5), new int[] {0}));
+        assertArrayEquals(new int[] {2, 0, 1},
+                Sorter.sort(new K.KDoubleVector(1.0, Double.NaN, Double.NEGATIVE_INFINITY), new int[] {0, 1, 2}));
+        assertArrayEquals(new int[] {1, 2, 0},
+                Sorter.sort(new K.KLongVector(Long.MAX_VALUE, Long.MIN_VALUE, 0), new int[] {0, 1, 2}));
+    }
+
+    @Test
+    public void testParallelSort() {
+        Random random = new Random(2);
+        int count = 1_000_000;
+        long[] longs = new long[count];
+        double[] doubles = new double[count];
+        String[] symbols = new String[count];
+        for (int i = 0; i < count; i++) {
+            longs[i] = random.nextInt(1000) == 0 ? Long.MIN_VALUE : random.nextInt(10000);
+            doubles[i] = random.nextInt(1000) == 0 ? Double.NaN : random.nextInt(10000) / 8.0;
+            symbols[i] = "s" + random.nextInt(10000);
+        }
+        int[] origIndex = new int[count];
+        for (int i = 0; i < count; i++) {
+            origIndex[i] = count - 1 - i;
+        }
+
+        for (K.KBaseVector<? extends K.KBase> array: new K.KBaseVector[] {
+                new K.KLongVector(longs), new K.KDoubleVector(doubles), new K.KSymbolVector(symbols)}) {
+            Sorter.Progress progress = new Sorter.Progress();
+            assertArrayEquals(Sorter.sort(array, origIndex), Sorter.parallelSort(array, origIndex, progress));
+            assertEquals(1.0, progress.getFraction());
+        }
+    }
+
+    @Test
+    public void testCancelledSort() {
+        Sorter.Progress progress = new Sorter.Progress();
+        progress.cancel();
+        assertThrows(CancellationException.class,
+                () -> Sorter.parallelSort(new K.KIntVector(new int[1_000_000]), new int[1_000_000], progress));
+    }
+
+    private static void checkMultiSort(K.KBaseVector<? extends K.KBase>[] arrays, boolean[] asc) {
+        int count = arrays[0].getLength();
+        int[] origIndex = new int[count];
+        for (int i = 0; i < count; i++) {
+            origIndex[i] = (i * 7) % count;
+        }
+        Integer[] expected = Arrays.stream(origIndex).boxed().toArray(Integer[]::new);
+        Arrays.sort(expected, (i1, i2) -> {
+            for (int col = 0; col < arrays.length; col++) {
+                int res = arrays[col].at(i1).compareTo(arrays[col].at(i2));
+                if (res != 0) return asc[col] ? res : -res;
+            }
+            return 0;
+        });
+        assertArrayEquals(Arrays.stream(expected).mapToInt(Integer::intValue).toArray(),
+                Sorter.sort(arrays, asc, origIndex, new Sorter.Progress()));
+    }
+
+    @Test
+    public void testMultiColumnSort() {
+        Random random = new Random(3);
+        int count = 1001;
+        String[] syms = new String[count];
+        long[] times = new long[count];
+        double[] prices = new double[count];
+        long[] wide = new long[count];
+        K.KBase[] list = new K.KBase[count];
+        for (int i = 0; i < count; i++) {
+            syms[i] = random.nextInt(10) == 0 ? "" : "s" + random.nextInt(5);
+            times[i] = random.nextInt(10) == 0 ? Long.MIN_VALUE : random.nextInt(20) * 1_000_000_000L;
+            prices[i] = random.nextInt(10) == 0 ? Double.NaN : random.nextInt(8) / 4.0;
+            wide[i] = random.nextBoolean() ? Long.MAX_VALUE - random.nextInt(3) : Long.MIN_VALUE + random.nextInt(3);
+            list[i] = new K.KLong(random.nextInt(3));
+        }
+        K.KSymbolVector sym = new K.KSymbolVector(syms);
+        K.KTimestampVector time = new K.KTimestampVector(times);
+        K.KDoubleVector price = new K.KDoubleVector(prices);
+        K.KLongVector wideLong = new K.KLongVector(wide);
+        K.KTimespanVector wideSpan = new K.KTimespanVector(wide);
+
+        checkMultiSort(new K.KBaseVector[] {sym, time, price}, new boolean[] {true, true, true});
+        checkMultiSort(new K.KBaseVector[] {sym, time, price}, new boolean[] {false, true, false});
+        checkMultiSort(new K.KBaseVector[] {price, sym}, new boolean[] {false, false});
+        checkMultiSort(new K.KBaseVector[] {time}, new boolean[] {false});
+        checkMultiSort(new K.KBaseVector[] {wideLong, wideSpan, price, new K.KList(list)}, new boolean[] {true, false, true, false});
+    }
 }
@@ -0,0 +1,100 @@
+package studio.kdb;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingTableModelTest {
+
+    private static K.Flip table(long from, int count) {
+        long[] ids = new long[count];
+        String[] syms = new String[count];
+        K.KBase[] strings = new K.KBase[count];
+        char[] chars = new char[count];
+        boolean[] flags = new boolean[count];
+        UUID[] guids = new UUID[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = from + i;
+            syms[i] = "s" + (from + i);
+            strings[i] = new K.KCharacterVector("" + (from + i));
+            chars[i] = (char) ('a' + (from + i) % 26);
+            flags[i] = (from + i) % 3 == 0;
+            guids[i] = new UUID(from + i, -1);
+        }
+        return new K.Flip(new K.KSymbolVector("id", "sym", "str", "c", "flag", "guid"),
+                new K.KList(new K.KLongVector(ids), new K.KSymbolVector(syms), new K.KList(strings), new K.KCharacterVector(new String(chars)),
+                        new K.KBooleanVector(flags), new K.KGuidVector(guids)));
+    }
+
+    private static void checkRows(StreamingTableModel model, long from, int count) {
+        assertEquals(count, model.getRowCount());
+        for (int row = 0; row < count; row++) {
+            assertEquals(new K.KLong(from + row), model.getValueAt(row, 0));
+            assertEquals(new K.KSymbol("s" + (from + row)), model.getValueAt(row, 1));
+            assertEquals(new K.KCharacterVector("" + (from + row)), model.getValueAt(row, 2));
+            assertEquals(new K.KCharacter((char) ('a' + (from + row) % 26)), model.getValueAt(row, 3));
+            assertEquals(new K.KBoolean((from + row) % 3 == 0), model.getValueAt(row, 4));
+            assertEquals(new K.KGuid(new UUID(from + row, -1)), model.getValueAt(row, 5));
+        }
+    }
+
+    @Test
+    public void testAppend() {
+        StreamingTableModel model = new StreamingTableModel(table(0, 3), 10);
+        assertEquals(6, model.getColumnCount());
+        assertEquals("sym", model.getColumnName(1));
+        assertEquals(0, model.getRowCount());
+
+        assertTrue(model.refresh());
+        checkRows(model, 0, 3);
+        assertFalse(model.refresh());
+
+        model.append(table(3, 4));
+        model.append(table(7, 0));
+        assertTrue(model.refresh());
+        checkRows(model, 0, 7);
+    }
+
+    @Test
+    public void testWrapAround() {
+        StreamingTableModel model = new StreamingTableModel(table(0, 0), 10);
+        model.refresh();
+        assertEquals(0, model.getRowCount());
+
+        long from = 0;
+        for (int count: new int[] {6, 7, 3, 9, 25, 1}) {
+            model.append(table(from, count));
+            from += count;
+        }
+        model.refresh();
+        checkRows(model, from - 10, 10);
+    }
+
+    @Test
+    public void testSortIsKept() {
+        StreamingTableModel model = new StreamingTableModel(table(5, 3), 10);
+        model.refresh();
+        model.sort(0);
+        model.sort(0);
+        assertTrue(model.isSortedDesc(0));
+        model.append(table(0, 3));
+        model.refresh();
+        long[] expected = {7, 6, 5, 2, 1, 0};
+        assertEquals(expected.length, model.getRowCount());
+        for (int row = 0; row < expected.length; row++) {
+            assertEquals(new K.KLong(expected[row]), model.getValueAt(row, 0));
+        }
+    }
+
+    @Test
+    public void testDifferentColumns() {
+        StreamingTableModel model = new StreamingTableModel(table(0, 1), 10);
+        assertThrows(IllegalArgumentException.class, () -> model.append(
+                new K.Flip(new K.KSymbolVector("id"), new K.KList(new K.KLongVector(1)))));
+        assertThrows(IllegalArgumentException.class, () -> model.append(
+                new K.Flip(new K.KSymbolVector("id", "sym", "str", "c"),
+                        new K.KList(new K.KIntVector(1), new K.KSymbolVector("a"), new K.KList(new K.KLong(1)), new K.KCharacterVector("a")))));
+    }
+}
@@ -0,0 +1,37 @@
+package studio.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class QScriptSplitterTest {
+
+    private void check(String script, String... statements) {
+        assertEquals(Arrays.asList(statements), QScriptSplitter.split(script));
+    }
+
+    @Test
+    public void testSingleLines() {
+        check("a:1\nb:2\r\nc:3\rd", "a:1", "b:2", "c:3", "d");
+        check("a:1; b:2", "a:1; b:2");
+        check("\\l script.q\nx", "\\l script.q", "x");
+    }
+
+    @Test
+    public void testContinuationLines() {
+        check("f:{[x]\n  x+1\n  }\ng:2", "f:{[x]\n  x+1\n  }", "g:2");
+        check("  1+\n  2\n3", "1+\n  2", "3");
+    }
+
+    @Test
+    public void testEmptyLinesAndComments() {
+        check("a\n\n  \n/comment\nb  / trailing comment", "a", "b  / trailing comment");
+        check("a\n/\nblock\ncomment\n\\\nb", "a", "b");
+        check("a\n\\\nb\nc", "a");
+        assertEquals(Collections.emptyList(), QScriptSplitter.split(""));
+        assertEquals(Collections.emptyList(), QScriptSplitter.split("/ only comment\n\n"));
+    }
+}